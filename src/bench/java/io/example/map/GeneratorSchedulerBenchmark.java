@@ -0,0 +1,89 @@
+package io.example.map;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.example.map.GeneratorEntity.GenerateCommand;
+import io.example.map.GeneratorEntity.GeneratedEvent;
+import io.example.map.GeneratorEntity.GeoOrdersResolvedEvent;
+import io.example.map.WorldMap.LatLng;
+
+// Each operation is one simulated second of a generator at the given rate, on a virtual clock.
+//
+// busy - the old loop, generate is called again as soon as the previous call returns, busyTurnaroundMs later,
+//        and every call persists a GeneratedEvent, even when no geo orders are due
+// paced - the tick loop in GeneratorTickAction, generate is called when the next geo order is due, no sooner than
+//         the minimum tick interval, and calls with no geo orders due persist nothing
+//
+// The journalEvents and geoOrders counters give the journal events per geo order, and the time per operation divided
+// by the geo orders per operation gives the CPU time per geo order spent in the generator entity.
+//
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorSchedulerBenchmark {
+  static final long busyTurnaroundMs = 5;
+
+  @Param({ "1", "10", "1000" })
+  int ratePerSecond;
+
+  @Param({ "busy", "paced" })
+  String scheduler;
+
+  private GeneratorEntity.State state;
+  private long nowMs;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Journal {
+    public long journalEvents;
+    public long geoOrders;
+    public long generateCalls;
+  }
+
+  @Setup
+  public void setup() {
+    state = new GeneratorEntity.State("generator-1", new LatLng(51.5, -0.12), 10, ratePerSecond, 0, Integer.MAX_VALUE, 0, null, 0, 0);
+    nowMs = 0;
+  }
+
+  @Benchmark
+  public GeneratorEntity.State simulatedSecond(Journal journal) {
+    var endMs = nowMs + 1000;
+    while (nowMs < endMs) {
+      var events = state.eventsFor(new GenerateCommand(state.generatorId()), nowMs);
+      journal.generateCalls++;
+      journal.journalEvents += events.size();
+      for (var event : events) {
+        if (event instanceof GeneratedEvent generatedEvent) {
+          journal.geoOrders += generatedEvent.geoOrdersGenerated();
+          state = state.on(generatedEvent);
+          // the pipeline keeps up, the geo orders are resolved right away
+          state = state.on(new GeoOrdersResolvedEvent(state.generatorId(), generatedEvent.geoOrdersGenerated()));
+        }
+      }
+      if (scheduler.equals("busy")) {
+        journal.journalEvents += events.isEmpty() ? 1 : 0;
+        nowMs += busyTurnaroundMs;
+      } else {
+        nowMs += GeneratorTickAction.delayUntil(state.nextGeoOrderAtMs(), nowMs).toMillis();
+      }
+    }
+    return state;
+  }
+}
@@ -0,0 +1,93 @@
+package io.example.map;
+
+import static io.example.map.WorldMap.earthRadiusKm;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.example.map.WorldMap.LatLng;
+
+// Positions only, without the geo order IDs. perPoint is the original sampler, one LatLng per point from a Random
+// shared by all threads, Math trig and the centre trig recomputed per point.
+//
+// The shared Random contention only shows with more than one thread, for example -Djmh.args="GeoOrderSampler -t 4".
+//
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class GeoOrderSamplerBenchmark {
+  private static final Random sharedRandom = new Random();
+  private static final LatLng centre = new LatLng(51.5, -0.12);
+
+  @Param({ "32", "1000", "100000" })
+  int batchSize;
+
+  @Param({ "10" })
+  double radiusKm;
+
+  @State(Scope.Thread)
+  public static class Batch {
+    double[] lats;
+    double[] lngs;
+    LatLng[] positions;
+    SplittableRandom random;
+
+    @Setup
+    public void setup(GeoOrderSamplerBenchmark benchmark) {
+      lats = new double[benchmark.batchSize];
+      lngs = new double[benchmark.batchSize];
+      positions = new LatLng[benchmark.batchSize];
+      random = new SplittableRandom(Thread.currentThread().getId());
+    }
+  }
+
+  @Benchmark
+  public LatLng[] perPoint(Batch batch) {
+    for (int i = 0; i < batchSize; i++) {
+      batch.positions[i] = perPointSample(centre, radiusKm);
+    }
+    return batch.positions;
+  }
+
+  @Benchmark
+  public double[] spherical(Batch batch) {
+    GeoOrderSampler.sampleSpherical(centre, radiusKm, batch.random.split(), batch.lats, batch.lngs, batchSize);
+    return batch.lats;
+  }
+
+  @Benchmark
+  public double[] planar(Batch batch) {
+    GeoOrderSampler.samplePlanar(centre, radiusKm, batch.random.split(), batch.lats, batch.lngs, batchSize);
+    return batch.lats;
+  }
+
+  private static LatLng perPointSample(LatLng position, double radiusKm) {
+    final var angle = sharedRandom.nextDouble() * 2 * Math.PI;
+    final var distance = sharedRandom.nextDouble() * radiusKm;
+    final var lat = Math.toRadians(position.lat());
+    final var lng = Math.toRadians(position.lng());
+    final var lat2 = Math.asin(Math.sin(lat) * Math.cos(distance / earthRadiusKm) +
+        Math.cos(lat) * Math.sin(distance / earthRadiusKm) * Math.cos(angle));
+    final var lng2 = lng + Math.atan2(Math.sin(angle) * Math.sin(distance / earthRadiusKm) * Math.cos(lat),
+        Math.cos(distance / earthRadiusKm) - Math.sin(lat) * Math.sin(lat2));
+    return LatLng.fromRadians(lat2, lng2);
+  }
+}
@@ -0,0 +1,79 @@
+package io.example.map;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.example.map.WorldMap.LatLng;
+import io.example.map.WorldMap.Region;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegionKeyBenchmark {
+  @Param({ "3", "10", "18" })
+  int zoom;
+
+  private Region[] regions;
+  private long[] regionKeys;
+  private String[] regionIds;
+  private int next;
+
+  @Setup
+  public void setup() {
+    var random = new Random(42);
+    regions = new Region[1024];
+    regionKeys = new long[regions.length];
+    regionIds = new String[regions.length];
+    for (int i = 0; i < regions.length; i++) {
+      regions[i] = WorldMap.regionAtLatLng(zoom, new LatLng(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+      regionKeys[i] = WorldMapTiles.regionKeyFor(regions[i]);
+      regionIds[i] = WorldMapTiles.regionIdFor(regionKeys[i]);
+    }
+  }
+
+  @Benchmark
+  public String legacyRegionIdFor() {
+    return WorldMap.legacyRegionIdFor(regions[next()]);
+  }
+
+  @Benchmark
+  public String regionIdForRegion() {
+    return WorldMap.regionIdFor(regions[next()]);
+  }
+
+  @Benchmark
+  public String regionIdForKey() {
+    return WorldMapTiles.regionIdFor(regionKeys[next()]);
+  }
+
+  // One rollup hop in RegionToRegionAction, the sub-region key, its parent key and the parent ID
+  @Benchmark
+  public String regionRollupHop() {
+    return WorldMapTiles.regionIdFor(WorldMapTiles.parentKeyOf(WorldMapTiles.regionKeyFor(regions[next()])));
+  }
+
+  @Benchmark
+  public long parseRegionId() {
+    return WorldMapTiles.regionKeyFor(regionIds[next()]);
+  }
+
+  private int next() {
+    next = (next + 1) & (regions.length - 1);
+    return next;
+  }
+}
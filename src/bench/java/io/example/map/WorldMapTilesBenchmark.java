@@ -0,0 +1,57 @@
+package io.example.map;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.example.map.WorldMap.LatLng;
+import io.example.map.WorldMap.Region;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldMapTilesBenchmark {
+  @Param({ "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15", "16", "17", "18" })
+  int zoom;
+
+  private LatLng[] latLngs;
+  private int next;
+
+  @Setup
+  public void setup() {
+    var random = new Random(42);
+    latLngs = new LatLng[1024];
+    for (int i = 0; i < latLngs.length; i++) {
+      latLngs[i] = new LatLng(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+    }
+  }
+
+  @Benchmark
+  public Region subRegions() {
+    return WorldMap.regionAtLatLngBySubRegions(zoom, nextLatLng());
+  }
+
+  @Benchmark
+  public Region arithmetic() {
+    return WorldMap.regionAtLatLng(zoom, nextLatLng());
+  }
+
+  private LatLng nextLatLng() {
+    next = (next + 1) & (latLngs.length - 1);
+    return latLngs[next];
+  }
+}
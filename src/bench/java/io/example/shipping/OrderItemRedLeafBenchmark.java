@@ -0,0 +1,86 @@
+package io.example.shipping;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.example.shipping.OrderItemRedLeafEntity.Consumed;
+import io.example.shipping.OrderItemRedLeafEntity.Event;
+import io.example.shipping.OrderItemRedLeafEntity.OrderItemConsumedStockSkuItemsCommand;
+import io.example.shipping.OrderItemRedLeafEntity.OrderItemRedLeafId;
+import io.example.shipping.OrderItemRedLeafEntity.OrderSkuItemId;
+import io.example.shipping.OrderItemRedLeafEntity.OrderSkuItemToStockSkuItem;
+import io.example.shipping.OrderItemRedLeafEntity.StockOrderRequestsOrderSkuItemsCommand;
+import io.example.shipping.OrderItemRedTreeEntity.OrderItemRedTreeId;
+import io.example.stock.StockOrderRedLeafEntity.StockOrderRedLeafId;
+import io.example.stock.StockOrderRedLeafEntity.StockSkuItemId;
+
+// eventsFor of a back ordered order item leaf with half of its items consumed, one item per stock order leaf, and a
+// new stock order leaf that supplies the other half.
+//
+// stockOrderRequests - the order item allocates its available items to the stock order leaf's offer
+// orderItemConsumed - the stock order leaf allocated the order item's available items, and the order item checks they
+//                     are available
+//
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderItemRedLeafBenchmark {
+
+  @Param({ "10", "100", "1000" })
+  int leafSize;
+
+  private OrderItemRedLeafEntity.State state;
+  private StockOrderRequestsOrderSkuItemsCommand requestsCommand;
+  private OrderItemConsumedStockSkuItemsCommand consumedCommand;
+
+  @Setup
+  public void setup() {
+    var orderItemRedLeafId = OrderItemRedLeafId.genId("orderId", "skuId");
+    var orderSkuItemIds = IntStream.range(0, leafSize)
+        .mapToObj(i -> OrderSkuItemId.genId(orderItemRedLeafId))
+        .toList();
+    var consumed = orderSkuItemIds.subList(0, leafSize / 2).stream()
+        .map(orderSkuItemId -> {
+          var stockOrderRedLeafId = StockOrderRedLeafId.genId("stockOrderId", "skuId", 128, 32);
+          return new Consumed(stockOrderRedLeafId, List.of(new OrderSkuItemToStockSkuItem(orderSkuItemId, StockSkuItemId.of(stockOrderRedLeafId))));
+        })
+        .toList();
+    var available = orderSkuItemIds.subList(leafSize / 2, leafSize);
+    state = new OrderItemRedLeafEntity.State(orderItemRedLeafId, OrderItemRedTreeId.of(orderItemRedLeafId), leafSize, null, Instant.now(), available, consumed);
+
+    var stockOrderRedLeafId = StockOrderRedLeafId.genId("stockOrderId", "skuId", 128, 32);
+    var stockSkuItemIds = available.stream().map(__ -> StockSkuItemId.of(stockOrderRedLeafId)).toList();
+    requestsCommand = new StockOrderRequestsOrderSkuItemsCommand(orderItemRedLeafId, stockOrderRedLeafId, stockSkuItemIds);
+    var orderSkuItemsConsumed = IntStream.range(0, available.size())
+        .mapToObj(i -> new OrderSkuItemToStockSkuItem(available.get(i), stockSkuItemIds.get(i)))
+        .toList();
+    consumedCommand = new OrderItemConsumedStockSkuItemsCommand(orderItemRedLeafId, stockOrderRedLeafId, orderSkuItemsConsumed);
+  }
+
+  @Benchmark
+  public List<Event> stockOrderRequests() {
+    return state.eventsFor(requestsCommand);
+  }
+
+  @Benchmark
+  public List<Event> orderItemConsumed() {
+    return state.eventsFor(consumedCommand);
+  }
+}
@@ -0,0 +1,83 @@
+package io.example.stock;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.example.shipping.OrderItemRedLeafEntity.OrderItemRedLeafId;
+import io.example.shipping.OrderItemRedLeafEntity.OrderSkuItemId;
+import io.example.stock.StockOrderRedLeafEntity.Consumed;
+import io.example.stock.StockOrderRedLeafEntity.Event;
+import io.example.stock.StockOrderRedLeafEntity.OrderItemRequestsStockSkuItemsCommand;
+import io.example.stock.StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsCommand;
+import io.example.stock.StockOrderRedLeafEntity.StockOrderRedLeafId;
+import io.example.stock.StockOrderRedLeafEntity.StockSkuItemId;
+import io.example.stock.StockOrderRedLeafEntity.StockSkuItemToOrderSkuItem;
+
+// eventsFor of a stock order leaf with half of its items consumed, one item per order item, and a new order item that
+// takes the other half.
+//
+// orderItemRequests - the leaf allocates its available items to the order item's request
+// stockOrderConsumed - the order item allocated the leaf's available items, and the leaf checks they are available
+//
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockOrderRedLeafBenchmark {
+
+  @Param({ "10", "100", "1000" })
+  int leafSize;
+
+  private StockOrderRedLeafEntity.State state;
+  private OrderItemRequestsStockSkuItemsCommand requestsCommand;
+  private StockOrderConsumedOrderSkuItemsCommand consumedCommand;
+
+  @Setup
+  public void setup() {
+    var stockOrderRedLeafId = StockOrderRedLeafId.genId("stockOrderId", "skuId", 128, 32);
+    var stockSkuItemIds = IntStream.range(0, leafSize)
+        .mapToObj(i -> StockSkuItemId.of(stockOrderRedLeafId))
+        .toList();
+    var consumed = stockSkuItemIds.subList(0, leafSize / 2).stream()
+        .map(stockSkuItemId -> {
+          var orderItemRedLeafId = OrderItemRedLeafId.genId("orderId", "skuId");
+          return new Consumed(orderItemRedLeafId, List.of(new StockSkuItemToOrderSkuItem(stockSkuItemId, OrderSkuItemId.genId(orderItemRedLeafId))));
+        })
+        .toList();
+    var available = stockSkuItemIds.subList(leafSize / 2, leafSize);
+    state = new StockOrderRedLeafEntity.State(stockOrderRedLeafId, leafSize, true, available, consumed);
+
+    var orderItemRedLeafId = OrderItemRedLeafId.genId("orderId", "skuId");
+    var orderSkuItemIds = available.stream().map(__ -> OrderSkuItemId.genId(orderItemRedLeafId)).toList();
+    requestsCommand = new OrderItemRequestsStockSkuItemsCommand(stockOrderRedLeafId, orderItemRedLeafId, orderSkuItemIds);
+    var stockSkuItemsConsumed = IntStream.range(0, available.size())
+        .mapToObj(i -> new StockSkuItemToOrderSkuItem(available.get(i), orderSkuItemIds.get(i)))
+        .toList();
+    consumedCommand = new StockOrderConsumedOrderSkuItemsCommand(stockOrderRedLeafId, orderItemRedLeafId, stockSkuItemsConsumed);
+  }
+
+  @Benchmark
+  public List<Event> orderItemRequests() {
+    return state.eventsFor(requestsCommand);
+  }
+
+  @Benchmark
+  public List<Event> stockOrderConsumed() {
+    return state.eventsFor(consumedCommand);
+  }
+}
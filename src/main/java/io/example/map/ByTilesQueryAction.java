@@ -0,0 +1,112 @@
+package io.example.map;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.google.protobuf.any.Any;
+import com.typesafe.config.ConfigFactory;
+
+import kalix.javasdk.DeferredCall;
+import kalix.javasdk.HttpResponse;
+import kalix.javasdk.action.Action;
+import kalix.javasdk.client.ComponentClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Viewport queries of the geo order and generator location views by covering regions.
+//
+// Each view row holds the canonical IDs of the regions that contain it at a few tile zooms. A viewport is covered by
+// the regions of the finest tile zoom that needs no more than the max covering regions, and the view is queried with
+// an equality match on that zoom's region ID column, instead of the range scan on lat and lng. Viewports that need
+// more regions than that at every tile zoom fall back to the range query.
+//
+// Geo orders are replied in the packed map format when the request accepts it, see PackedMapFormat, else as JSON.
+//
+// The geo orders stream follows the page tokens itself and streams every geo order in the viewport in one response,
+// one JSON row per server sent event, so clients draw geo orders as they arrive instead of waiting a round trip for
+// each page. Each page is still an offset query on the view.
+//
+public class ByTilesQueryAction extends Action {
+  private static final Logger log = LoggerFactory.getLogger(ByTilesQueryAction.class);
+  static final int maxCoveringRegions = ConfigFactory.load().getInt("earth-ship.location-views.max-covering-regions");
+  private final ComponentClient componentClient;
+
+  public ByTilesQueryAction(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  @GetMapping("/geo-orders/by-tiles/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  public Effect<HttpResponse> getGeoOrders(
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng,
+      @RequestParam(required = false) String nextPageToken) {
+    var zoom = WorldMapTiles.coveringZoom(GeoOrdersByLocationView.tileZooms, topLeftLat, topLeftLng, botRightLat, botRightLng, maxCoveringRegions);
+    var regionIds = zoom < 0 ? null : WorldMapTiles.coveringRegionIds(zoom, topLeftLat, topLeftLng, botRightLat, botRightLng, maxCoveringRegions);
+    log.debug("Geo orders by tiles, zoom: {}, regions: {}", zoom, regionIds == null ? 0 : regionIds.size());
+
+    var call = geoOrdersCall(zoom, regionIds, topLeftLat, topLeftLng, botRightLat, botRightLng, nextPageToken);
+    var packed = PackedMapFormat.isAccepted(actionContext().metadata().get("Accept"));
+    return effects().asyncReply(call.execute().thenApply(geoOrders -> packed
+        ? PackedMapFormat.response(PackedMapFormat.packGeoOrders(geoOrders.geoOrders(), geoOrders.nextPageToken(), geoOrders.hasMore()))
+        : HttpResponse.ok(geoOrders)));
+  }
+
+  @GetMapping("/geo-orders/by-tiles-stream/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  public Flux<Effect<GeoOrdersByLocationView.GeoOrderViewRow>> streamGeoOrders(
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng) {
+    var zoom = WorldMapTiles.coveringZoom(GeoOrdersByLocationView.tileZooms, topLeftLat, topLeftLng, botRightLat, botRightLng, maxCoveringRegions);
+    var regionIds = zoom < 0 ? null : WorldMapTiles.coveringRegionIds(zoom, topLeftLat, topLeftLng, botRightLat, botRightLng, maxCoveringRegions);
+    log.debug("Geo orders stream by tiles, zoom: {}, regions: {}", zoom, regionIds == null ? 0 : regionIds.size());
+
+    return pageFor(geoOrdersCall(zoom, regionIds, topLeftLat, topLeftLng, botRightLat, botRightLng, null))
+        .expand(page -> page.hasMore()
+            ? pageFor(geoOrdersCall(zoom, regionIds, topLeftLat, topLeftLng, botRightLat, botRightLng, page.nextPageToken()))
+            : Mono.empty())
+        .flatMapIterable(GeoOrdersByLocationView.GeoOrders::geoOrders)
+        .map(geoOrder -> effects().reply(geoOrder));
+  }
+
+  @GetMapping("/generators/by-tiles/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  public Effect<GeneratorsByLocationView.Generators> getGenerators(
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng) {
+    var zoom = WorldMapTiles.coveringZoom(GeneratorsByLocationView.tileZooms, topLeftLat, topLeftLng, botRightLat, botRightLng, maxCoveringRegions);
+    var regionIds = zoom < 0 ? null : WorldMapTiles.coveringRegionIds(zoom, topLeftLat, topLeftLng, botRightLat, botRightLng, maxCoveringRegions);
+    log.debug("Generators by tiles, zoom: {}, regions: {}", zoom, regionIds == null ? 0 : regionIds.size());
+
+    var view = componentClient.forView();
+    var call = switch (zoom) {
+      case 4 -> view.call(GeneratorsByLocationView::getGeneratorsByTiles4).params(regionIds, topLeftLat, topLeftLng, botRightLat, botRightLng);
+      case 8 -> view.call(GeneratorsByLocationView::getGeneratorsByTiles8).params(regionIds, topLeftLat, topLeftLng, botRightLat, botRightLng);
+      case 12 -> view.call(GeneratorsByLocationView::getGeneratorsByTiles12).params(regionIds, topLeftLat, topLeftLng, botRightLat, botRightLng);
+      default -> view.call(GeneratorsByLocationView::getGeneratorsByLocation).params(topLeftLat, topLeftLng, botRightLat, botRightLng);
+    };
+    return effects().forward(call);
+  }
+
+  private DeferredCall<Any, GeoOrdersByLocationView.GeoOrders> geoOrdersCall(int zoom, List<String> regionIds, double topLeftLat, double topLeftLng, double botRightLat, double botRightLng, String nextPageToken) {
+    var view = componentClient.forView();
+    return switch (zoom) {
+      case 10 -> view.call(GeoOrdersByLocationView::getGeoOrdersByTiles10).params(regionIds, topLeftLat, topLeftLng, botRightLat, botRightLng, nextPageToken);
+      case 13 -> view.call(GeoOrdersByLocationView::getGeoOrdersByTiles13).params(regionIds, topLeftLat, topLeftLng, botRightLat, botRightLng, nextPageToken);
+      case 16 -> view.call(GeoOrdersByLocationView::getGeoOrdersByTiles16).params(regionIds, topLeftLat, topLeftLng, botRightLat, botRightLng, nextPageToken);
+      default -> view.call(GeoOrdersByLocationView::getGeoOrdersByLocation).params(topLeftLat, topLeftLng, botRightLat, botRightLng, nextPageToken);
+    };
+  }
+
+  private static Mono<GeoOrdersByLocationView.GeoOrders> pageFor(DeferredCall<Any, GeoOrdersByLocationView.GeoOrders> call) {
+    return Mono.fromCompletionStage(call::execute);
+  }
+}
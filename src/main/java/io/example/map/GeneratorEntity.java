@@ -1,10 +1,8 @@
 package io.example.map;
 
-import static io.example.map.WorldMap.earthRadiusKm;
-
 import java.time.Instant;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -17,10 +15,16 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.typesafe.config.ConfigFactory;
+
 import io.example.map.WorldMap.LatLng;
 import kalix.javasdk.annotations.Id;
 import kalix.javasdk.annotations.TypeId;
 import kalix.javasdk.annotations.EventHandler;
+import kalix.javasdk.annotations.Migration;
 import kalix.javasdk.eventsourcedentity.EventSourcedEntity;
 import kalix.javasdk.eventsourcedentity.EventSourcedEntityContext;
 
@@ -29,7 +33,6 @@ import kalix.javasdk.eventsourcedentity.EventSourcedEntityContext;
 @RequestMapping("/generator")
 public class GeneratorEntity extends EventSourcedEntity<GeneratorEntity.State, GeneratorEntity.Event> {
   private static final Logger log = LoggerFactory.getLogger(GeneratorEntity.class);
-  private static final Random random = new Random();
   private final String entityId;
 
   public GeneratorEntity(EventSourcedEntityContext context) {
@@ -37,6 +40,8 @@ public class GeneratorEntity extends EventSourcedEntity<GeneratorEntity.State, G
   }
 
   static int geoOrdersPerGeneratorBatch = 32;
+  static int geoOrdersPerGenerateMax = 32 * geoOrdersPerGeneratorBatch;
+  static int geoOrdersInFlightCeiling = ConfigFactory.load().getInt("earth-ship.generator.in-flight-ceiling");
 
   @Override
   public State emptyState() {
@@ -46,14 +51,42 @@ public class GeneratorEntity extends EventSourcedEntity<GeneratorEntity.State, G
   @PostMapping("/{generatorId}/create")
   public Effect<String> create(@RequestBody CreateGeneratorCommand command) {
     log.info("C-EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+    var distributionError = GeoOrderSampler.distributionError(command.distribution());
+    if (distributionError != null) {
+      return effects().error("Generator: '%s', %s".formatted(command.generatorId(), distributionError));
+    }
     return effects()
         .emitEvents(currentState().eventsFor(command))
         .thenReply(__ -> "OK");
   }
 
   @PutMapping("/{generatorId}/generate")
-  public Effect<String> generate(@RequestBody GenerateCommand command) {
+  public Effect<GenerateResponse> generate(@RequestBody GenerateCommand command) {
+    log.info("C-EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+    return effects()
+        .emitEvents(currentState().eventsFor(command))
+        .thenReply(state -> new GenerateResponse(
+            state.geoOrderCountCurrent(),
+            state.geoOrdersInFlight(),
+            state.effectiveRatePerSecond(),
+            state.nextGeoOrderAtMs(),
+            state.fleetId()));
+  }
+
+  @PutMapping("/{generatorId}/geo-orders-resolved")
+  public Effect<String> geoOrdersResolved(@RequestBody GeoOrdersResolvedCommand command) {
+    log.info("C-EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+    return effects()
+        .emitEvents(currentState().eventsFor(command))
+        .thenReply(__ -> "OK");
+  }
+
+  @PutMapping("/{generatorId}/rate")
+  public Effect<String> changeRate(@RequestBody ChangeRateCommand command) {
     log.info("C-EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+    if (command.ratePerSecond() < 1) {
+      return effects().error("Generator: '%s', rate per second must be at least 1".formatted(command.generatorId()));
+    }
     return effects()
         .emitEvents(currentState().eventsFor(command))
         .thenReply(__ -> "OK");
@@ -86,6 +119,19 @@ public class GeneratorEntity extends EventSourcedEntity<GeneratorEntity.State, G
     return currentState().on(event);
   }
 
+  @EventHandler
+  public State on(GeoOrdersResolvedEvent event) {
+    log.info("E-EntityId: {}\n_State: {}\n_Event: {}", entityId, currentState(), event);
+    return currentState().on(event);
+  }
+
+  @EventHandler
+  public State on(RateChangedEvent event) {
+    log.info("E-EntityId: {}\n_State: {}\n_Event: {}", entityId, currentState(), event);
+    return currentState().on(event);
+  }
+
+  @JsonIgnoreProperties(value = { "targetRatePerSecond", "effectiveRatePerSecond", "geoOrdersInFlight" }, allowGetters = true)
   public record State(
       String generatorId,
       LatLng position,
@@ -93,16 +139,45 @@ public class GeneratorEntity extends EventSourcedEntity<GeneratorEntity.State, G
       int ratePerSecond,
       long startTimeMs,
       int geoOrderCountLimit,
-      int geoOrderCountCurrent) {
+      int geoOrderCountCurrent,
+      Distribution distribution,
+      int geoOrderCountResolved,
+      long scheduledToMs,
+      String fleetId) {
 
     static State empty() {
-      return new State(null, null, 0, 0, epochMsNow(), 0, 0);
+      return new State(null, null, 0, 0, epochMsNow(), 0, 0, null, 0, 0, null);
     }
 
     boolean isEmpty() {
       return generatorId == null;
     }
 
+    @JsonProperty
+    int targetRatePerSecond() {
+      return ratePerSecond;
+    }
+
+    // Created geo orders that are not yet ready to ship or back ordered. Redelivered resolved reports may make the
+    // resolved count run ahead, so this never goes below 0.
+    @JsonProperty
+    int geoOrdersInFlight() {
+      if (scheduledToMs == 0) {
+        return 0;
+      }
+      return Math.max(0, geoOrderCountCurrent - geoOrderCountResolved);
+    }
+
+    // The target rate up to geoOrdersInFlightCeiling geo orders in flight, then down linearly to 0 at twice the ceiling
+    @JsonProperty
+    double effectiveRatePerSecond() {
+      var inFlight = geoOrdersInFlight();
+      if (inFlight <= geoOrdersInFlightCeiling) {
+        return ratePerSecond;
+      }
+      return ratePerSecond * Math.max(0.0, (2.0 * geoOrdersInFlightCeiling - inFlight) / geoOrdersInFlightCeiling);
+    }
+
     List<Event> eventsFor(CreateGeneratorCommand command) {
       if (!isEmpty()) {
         return List.of(new GeneratorCreatedEvent(
@@ -111,50 +186,97 @@ public class GeneratorEntity extends EventSourcedEntity<GeneratorEntity.State, G
             radiusKm,
             ratePerSecond,
             startTimeMs,
-            geoOrderCountLimit));
+            geoOrderCountLimit,
+            distribution,
+            fleetId));
       }
       var generatorCreatedEvent = new GeneratorCreatedEvent(
           command.generatorId,
           command.position,
           command.radiusKm,
           command.ratePerSecond,
-          epochMsNow(),
-          command.geoOrderCountLimit);
-      return Stream.of(List.of(generatorCreatedEvent), createGeoOrdersToGenerateEvents(command.generatorId()))
-          .flatMap(List::stream)
-          .map(event -> (GeneratorEntity.Event) event)
-          .toList();
+          Math.max(command.startTimeMs, epochMsNow()),
+          command.geoOrderCountLimit,
+          command.distribution,
+          command.fleetId);
+      return List.of(generatorCreatedEvent);
     }
 
     List<Event> eventsFor(GenerateCommand command) {
-      if (geoOrderCountCurrent == geoOrderCountLimit) {
+      return eventsFor(command, epochMsNow());
+    }
+
+    // The generator is a token bucket filled at the effective rate. Geo orders have been generated for the time up to
+    // scheduledToMs, and each generate takes the geo orders due from then until now, at most geoOrdersPerGenerateMax.
+    // The bucket holds at most one second of geo orders, so after a pause, or while throttled, the generator does not
+    // burst to catch up. Nothing is persisted when no geo orders are due.
+    List<Event> eventsFor(GenerateCommand command, long nowMs) {
+      var rate = effectiveRatePerSecond();
+      if (geoOrderCountCurrent >= geoOrderCountLimit || rate <= 0) {
+        return List.of();
+      }
+      var fromMs = Math.max(scheduledFromMs(), nowMs - Math.max(1000, (long) Math.ceil(1000 / rate)));
+      var geoOrdersDue = (long) ((nowMs - fromMs) * rate / 1000);
+      var geoOrdersToBeCreated = (int) Math.min(Math.min(geoOrdersDue, geoOrderCountLimit - geoOrderCountCurrent), geoOrdersPerGenerateMax);
+      if (geoOrdersToBeCreated <= 0) {
         return List.of();
       }
-      var geoOrderBatches = createGeoOrdersToGenerateEvents(command.generatorId());
-      var geoOrdersToBeGenerated = geoOrderBatches.stream()
-          .map(e -> e.geoOrders().size())
-          .reduce(0, (a, n) -> a + n);
-      var generatedEvent = new GeneratedEvent(generatorId, geoOrdersToBeGenerated, geoOrderCountCurrent + geoOrdersToBeGenerated);
-      return Stream.of(List.of(generatedEvent), geoOrderBatches)
+      var scheduledToMs = fromMs + Math.round(geoOrdersToBeCreated * 1000 / rate);
+      var generatedEvent = new GeneratedEvent(generatorId, geoOrdersToBeCreated, geoOrderCountCurrent + geoOrdersToBeCreated, scheduledToMs);
+      return Stream.of(List.of(generatedEvent), createGeoOrdersToGenerateEvents(command.generatorId(), geoOrdersToBeCreated))
           .flatMap(List::stream)
           .map(event -> (GeneratorEntity.Event) event)
           .toList();
     }
 
-    List<GeoOrdersToGenerateEvent> createGeoOrdersToGenerateEvents(String generatorId) {
-      var elapsedMs = epochMsNow() - startTimeMs;
+    // When the next geo order is due, 0 when the generator has finished, or Long.MAX_VALUE while it is throttled to 0
+    long nextGeoOrderAtMs() {
+      if (isEmpty() || ratePerSecond <= 0 || geoOrderCountCurrent >= geoOrderCountLimit) {
+        return 0;
+      }
+      var rate = effectiveRatePerSecond();
+      return rate <= 0 ? Long.MAX_VALUE : scheduledFromMs() + (long) Math.ceil(1000 / rate);
+    }
+
+    // Generators created before scheduledToMs was kept generated at ratePerSecond from the start time
+    private long scheduledFromMs() {
+      if (scheduledToMs > 0 || ratePerSecond <= 0) {
+        return Math.max(scheduledToMs, startTimeMs);
+      }
+      return startTimeMs + geoOrderCountCurrent * 1000L / ratePerSecond;
+    }
+
+    List<GeoOrdersToGenerateEvent> createGeoOrdersToGenerateEvents(String generatorId, int geoOrdersToBeCreated) {
       var geoOrdersPerBatch = geoOrdersPerGeneratorBatch;
-      var geoOrdersToBeCreated = (int) Math.min(geoOrderCountLimit - geoOrderCountCurrent, (elapsedMs * ratePerSecond / 1000) - geoOrderCountCurrent);
       var geoOrderBatches = geoOrdersToBeCreated / geoOrdersPerBatch + (geoOrdersToBeCreated % geoOrdersPerBatch > 0 ? 1 : 0);
-      if (geoOrderBatches == 0) {
-        return List.of();
-      }
+      var seed = seedFor(generatorId, startTimeMs);
       return IntStream.range(0, geoOrderBatches)
-          .mapToObj(i -> (i + 1) * geoOrdersPerBatch > geoOrdersToBeCreated ? geoOrdersToBeCreated % geoOrdersPerBatch : geoOrdersPerBatch)
-          .map(i -> GeoOrdersToGenerateEvent.with(generatorId, position, radiusKm, i))
+          .mapToObj(i -> GeoOrdersToGenerateEvent.with(
+              generatorId,
+              position,
+              radiusKm,
+              distribution,
+              seed,
+              geoOrderCountCurrent + i * geoOrdersPerBatch,
+              (i + 1) * geoOrdersPerBatch > geoOrdersToBeCreated ? geoOrdersToBeCreated % geoOrdersPerBatch : geoOrdersPerBatch))
           .toList();
     }
 
+    // The new rate applies to the geo orders that are due after the last generate
+    List<Event> eventsFor(ChangeRateCommand command) {
+      if (isEmpty() || command.ratePerSecond() == ratePerSecond || geoOrderCountCurrent >= geoOrderCountLimit) {
+        return List.of();
+      }
+      return List.of(new RateChangedEvent(generatorId, command.ratePerSecond()));
+    }
+
+    List<Event> eventsFor(GeoOrdersResolvedCommand command) {
+      if (isEmpty() || command.geoOrderCount() <= 0) {
+        return List.of();
+      }
+      return List.of(new GeoOrdersResolvedEvent(generatorId, command.geoOrderCount()));
+    }
+
     State on(GeneratorCreatedEvent event) {
       if (generatorId != null) {
         return this;
@@ -166,10 +288,18 @@ public class GeneratorEntity extends EventSourcedEntity<GeneratorEntity.State, G
           event.ratePerSecond(),
           event.startTimeMs(),
           event.geoOrderCountLimit(),
-          0);
+          0,
+          event.distribution(),
+          0,
+          event.startTimeMs(),
+          event.fleetId());
     }
 
+    // Geo orders generated before scheduledToMs was kept, in older events or snapshots, are not reported back when
+    // they are resolved, so they are not counted as in flight
     State on(GeneratedEvent event) {
+      var resolved = scheduledToMs == 0 ? geoOrderCountCurrent : geoOrderCountResolved;
+      var legacyGeoOrders = event.scheduledToMs() == 0 ? event.geoOrdersGenerated() : 0;
       return new State(
           event.generatorId(),
           position,
@@ -177,13 +307,54 @@ public class GeneratorEntity extends EventSourcedEntity<GeneratorEntity.State, G
           ratePerSecond,
           startTimeMs,
           geoOrderCountLimit,
-          event.geoOrderCountCurrent());
+          event.geoOrderCountCurrent(),
+          distribution,
+          resolved + legacyGeoOrders,
+          event.scheduledToMs(),
+          fleetId);
     }
 
     State on(GeoOrdersToGenerateEvent event) {
       return this;
     }
 
+    State on(GeoOrdersResolvedEvent event) {
+      return new State(
+          generatorId,
+          position,
+          radiusKm,
+          ratePerSecond,
+          startTimeMs,
+          geoOrderCountLimit,
+          geoOrderCountCurrent,
+          distribution,
+          geoOrderCountResolved + event.geoOrderCount(),
+          scheduledToMs,
+          fleetId);
+    }
+
+    // Generators created before scheduledToMs was kept are moved to it first, as in on(GeneratedEvent), as their
+    // schedule was computed from the rate
+    State on(RateChangedEvent event) {
+      var legacy = scheduledToMs == 0;
+      return new State(
+          generatorId,
+          position,
+          radiusKm,
+          event.ratePerSecond(),
+          startTimeMs,
+          geoOrderCountLimit,
+          geoOrderCountCurrent,
+          distribution,
+          legacy ? geoOrderCountCurrent : geoOrderCountResolved,
+          legacy ? scheduledFromMs() : scheduledToMs,
+          fleetId);
+    }
+
+    static long seedFor(String generatorId, long startTimeMs) {
+      return GeoOrdersToGenerateEvent.mix(generatorId.hashCode() * 0x9E3779B97F4A7C15L ^ startTimeMs);
+    }
+
     static long epochMsNow() {
       return Instant.now().toEpochMilli();
     }
@@ -191,40 +362,121 @@ public class GeneratorEntity extends EventSourcedEntity<GeneratorEntity.State, G
 
   public interface Event {}
 
-  public record CreateGeneratorCommand(String generatorId, LatLng position, double radiusKm, int geoOrderCountLimit, int ratePerSecond) {}
+  // startTimeMs is 0 to start now, fleetId is null for generators that are not in a fleet, see GeneratorFleetEntity
+  public record CreateGeneratorCommand(String generatorId, LatLng position, double radiusKm, int geoOrderCountLimit, int ratePerSecond, Distribution distribution, long startTimeMs, String fleetId) {
+    public CreateGeneratorCommand(String generatorId, LatLng position, double radiusKm, int geoOrderCountLimit, int ratePerSecond, Distribution distribution) {
+      this(generatorId, position, radiusKm, geoOrderCountLimit, ratePerSecond, distribution, 0, null);
+    }
+  }
 
   public record GenerateCommand(String generatorId) {}
 
-  public record GeneratorCreatedEvent(String generatorId, LatLng position, double radiusKm, int ratePerSecond, long startTimeMs, int geoOrderCountLimit) implements Event {}
+  public record GenerateResponse(int geoOrderCountCurrent, int geoOrdersInFlight, double effectiveRatePerSecond, long nextGeoOrderAtMs, String fleetId) {}
+
+  public record ChangeRateCommand(String generatorId, int ratePerSecond) {}
 
-  public record GeneratedEvent(String generatorId, int geoOrdersGenerated, int geoOrderCountCurrent) implements Event {}
+  public record RateChangedEvent(String generatorId, int ratePerSecond) implements Event {}
 
-  public record GeoOrdersToGenerateEvent(String generatorId, int geoOrdersToBeGenerated, List<GeoOrder> geoOrders) implements Event {
-    static GeoOrdersToGenerateEvent with(String generatorId, LatLng position, double radiusKm, int geoOrderCount) {
-      var geoOrders = generateGeoOrders(generatorId, position, radiusKm, geoOrderCount);
-      return new GeoOrdersToGenerateEvent(generatorId, geoOrders.size(), geoOrders);
+  public record GeoOrdersResolvedCommand(String generatorId, int geoOrderCount) {}
+
+  public record GeoOrdersResolvedEvent(String generatorId, int geoOrderCount) implements Event {}
+
+  public record GeneratorCreatedEvent(
+      String generatorId,
+      LatLng position,
+      double radiusKm,
+      int ratePerSecond,
+      long startTimeMs,
+      int geoOrderCountLimit,
+      Distribution distribution,
+      @JsonInclude(JsonInclude.Include.NON_NULL) String fleetId) implements Event {
+
+    public GeneratorCreatedEvent(String generatorId, LatLng position, double radiusKm, int ratePerSecond, long startTimeMs, int geoOrderCountLimit, Distribution distribution) {
+      this(generatorId, position, radiusKm, ratePerSecond, startTimeMs, geoOrderCountLimit, distribution, null);
+    }
+  }
+
+  public record GeneratedEvent(String generatorId, int geoOrdersGenerated, int geoOrderCountCurrent, long scheduledToMs) implements Event {}
+
+  // The geo orders are not stored in the event, only what is needed to generate them again. The geo orders of a batch
+  // are drawn from a SplittableRandom seeded by the generator seed and the index of the first geo order in the batch,
+  // and the positions are computed with StrictMath, so every replay or redelivery of the event on any JVM produces the
+  // same positions and geo order IDs. Whether the planar sampler is used is decided when the event is created and
+  // kept in the event, see GeoOrderSampler.
+  //
+  // Events written before this change hold the generated geo orders, and events written before compact geo order IDs
+  // have legacyGeoOrderIds set, see GeoOrdersToGenerateEventMigration.
+  @Migration(GeoOrdersToGenerateEventMigration.class)
+  public record GeoOrdersToGenerateEvent(
+      String generatorId,
+      int geoOrdersToBeGenerated,
+      LatLng position,
+      double radiusKm,
+      long seed,
+      int geoOrderIndex,
+      boolean planar,
+      @JsonInclude(JsonInclude.Include.NON_NULL) Distribution distribution,
+      @JsonInclude(JsonInclude.Include.NON_NULL) List<GeoOrder> legacyGeoOrders,
+      @JsonInclude(JsonInclude.Include.NON_DEFAULT) boolean legacyGeoOrderIds) implements Event {
+
+    static GeoOrdersToGenerateEvent with(String generatorId, LatLng position, double radiusKm, Distribution distribution, long seed, int geoOrderIndex, int geoOrderCount) {
+      var planar = Distribution.isUniform(distribution) && GeoOrderSampler.isPlanar(position, radiusKm);
+      return new GeoOrdersToGenerateEvent(generatorId, geoOrderCount, position, radiusKm, seed, geoOrderIndex, planar, distribution, null, false);
+    }
+
+    List<GeoOrder> geoOrders() {
+      if (legacyGeoOrders != null) {
+        return legacyGeoOrders;
+      }
+      var random = new SplittableRandom(mix(seed ^ geoOrderIndex * 0x9E3779B97F4A7C15L));
+      return generateGeoOrders(generatorId, position, radiusKm, distribution, planar, random, geoOrdersToBeGenerated, legacyGeoOrderIds);
+    }
+
+    static List<GeoOrder> generateGeoOrders(String generatorId, LatLng position, double radiusKm, Distribution distribution, boolean planar, SplittableRandom random, int geoOrderCount) {
+      return generateGeoOrders(generatorId, position, radiusKm, distribution, planar, random, geoOrderCount, false);
     }
 
-    static List<GeoOrder> generateGeoOrders(String generatorId, LatLng position, double radiusKm, int geoOrderCount) {
+    static List<GeoOrder> generateGeoOrders(String generatorId, LatLng position, double radiusKm, Distribution distribution, boolean planar, SplittableRandom random, int geoOrderCount, boolean legacyGeoOrderIds) {
+      var lats = new double[geoOrderCount];
+      var lngs = new double[geoOrderCount];
+      GeoOrderSampler.sample(distribution, position, radiusKm, planar, random, lats, lngs, geoOrderCount);
       return IntStream.range(0, geoOrderCount)
-          .mapToObj(i -> nextGeoOrder(generatorId, position, radiusKm))
+          .mapToObj(i -> new LatLng(lats[i], lngs[i]))
+          .map(geoOrderPosition -> new GeoOrder(
+              legacyGeoOrderIds ? GeoOrderIds.legacyIdFor(geoOrderPosition) : GeoOrderEntity.geoOrderIdFor(geoOrderPosition),
+              generatorId,
+              geoOrderPosition))
           .toList();
     }
 
-    static GeoOrder nextGeoOrder(String generatorId, LatLng position, double radiusKm) {
-      final var angle = random.nextDouble() * 2 * Math.PI;
-      final var distance = random.nextDouble() * radiusKm;
-      final var lat = Math.toRadians(position.lat());
-      final var lng = Math.toRadians(position.lng());
-      final var lat2 = Math.asin(Math.sin(lat) * Math.cos(distance / earthRadiusKm) +
-          Math.cos(lat) * Math.sin(distance / earthRadiusKm) * Math.cos(angle));
-      final var lng2 = lng + Math.atan2(Math.sin(angle) * Math.sin(distance / earthRadiusKm) * Math.cos(lat),
-          Math.cos(distance / earthRadiusKm) - Math.sin(lat) * Math.sin(lat2));
-      var geoOrderPosition = LatLng.fromRadians(lat2, lng2);
-      var geoOrderId = GeoOrderEntity.geoOrderIdFor(geoOrderPosition);
-      return new GeoOrder(geoOrderId, generatorId, geoOrderPosition);
+    // MurmurHash3 fmix64
+    static long mix(long h) {
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb93fe53a85cbL;
+      h ^= h >>> 33;
+      return h;
     }
   }
 
   public record GeoOrder(String geoOrderId, String generatorId, LatLng position) {}
+
+  // Where the geo orders of a generator are placed, null or uniform for the original uniform by angle and distance
+  // placement within radiusKm of the generator position.
+  //
+  // gaussian - around the generator position, with sigmaKm, or radiusKm / 2 when sigmaKm is 0
+  // clusters - around each cluster position with the cluster sigmaKm, clusters picked in proportion to their weight
+  // grid - in the cells of a weighted grid CSV, see GeoOrderGrid, cells picked in proportion to their weight
+  public record Distribution(Type type, double sigmaKm, List<Cluster> clusters, String grid) {
+    public enum Type {
+      uniform, gaussian, clusters, grid
+    }
+
+    static boolean isUniform(Distribution distribution) {
+      return distribution == null || distribution.type() == null || distribution.type() == Type.uniform;
+    }
+  }
+
+  public record Cluster(LatLng position, double sigmaKm, double weight) {}
 }
@@ -0,0 +1,228 @@
+package io.example.map;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import com.typesafe.config.ConfigFactory;
+
+import io.example.map.WorldMap.LatLng;
+import kalix.javasdk.annotations.EventHandler;
+import kalix.javasdk.annotations.Id;
+import kalix.javasdk.annotations.TypeId;
+import kalix.javasdk.eventsourcedentity.EventSourcedEntity;
+import kalix.javasdk.eventsourcedentity.EventSourcedEntityContext;
+
+// A fleet of generators created from one spec, sharing one geo orders per second budget.
+//
+// The members are placed at the given positions, or at random positions inside a bounding box, and their start times
+// are spread evenly over startSpreadMs so they do not all start generating at once. The members are created by
+// GeneratorFleetToGeneratorAction. The budget is split across the members that have not finished, so when a member
+// finishes, see GeneratorTickAction, the rates of the others are raised to keep the fleet at its budget.
+//
+@Id("fleetId")
+@TypeId("generator-fleet")
+@RequestMapping("/generator-fleet")
+public class GeneratorFleetEntity extends EventSourcedEntity<GeneratorFleetEntity.State, GeneratorFleetEntity.Event> {
+  private static final Logger log = LoggerFactory.getLogger(GeneratorFleetEntity.class);
+  static final int generatorsMax = ConfigFactory.load().getInt("earth-ship.generator-fleet.generators-max");
+  private final String entityId;
+
+  public GeneratorFleetEntity(EventSourcedEntityContext context) {
+    entityId = context.entityId();
+  }
+
+  @Override
+  public State emptyState() {
+    return State.empty();
+  }
+
+  @PostMapping("/{fleetId}/create")
+  public Effect<String> create(@RequestBody CreateFleetCommand command) {
+    log.info("C-EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+    var specError = specError(command);
+    if (specError != null) {
+      return effects().error("Fleet: '%s', %s".formatted(command.fleetId(), specError));
+    }
+    return effects()
+        .emitEvents(currentState().eventsFor(command))
+        .thenReply(__ -> "OK");
+  }
+
+  @PutMapping("/{fleetId}/member-finished")
+  public Effect<String> memberFinished(@RequestBody MemberFinishedCommand command) {
+    log.info("C-EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+    return effects()
+        .emitEvents(currentState().eventsFor(command))
+        .thenReply(__ -> "OK");
+  }
+
+  @GetMapping("/{fleetId}")
+  public Effect<GeneratorFleetEntity.State> get(@PathVariable String fleetId) {
+    log.info("EntityId: {}\n_State: {}\n_Get", entityId, currentState());
+    if (currentState().isEmpty()) {
+      return effects().error("Fleet: '%s', not created".formatted(fleetId));
+    }
+    return effects().reply(currentState());
+  }
+
+  @EventHandler
+  public State on(FleetCreatedEvent event) {
+    log.info("E-EntityId: {}\n_State: {}\n_Event: {}", entityId, currentState(), event);
+    return currentState().on(event);
+  }
+
+  @EventHandler
+  public State on(MemberFinishedEvent event) {
+    log.info("E-EntityId: {}\n_State: {}\n_Event: {}", entityId, currentState(), event);
+    return currentState().on(event);
+  }
+
+  static String specError(CreateFleetCommand command) {
+    var hasPositions = command.positions() != null && !command.positions().isEmpty();
+    var generatorCount = hasPositions ? command.positions().size() : command.generatorCount();
+    if (generatorCount < 1 || generatorCount > generatorsMax) {
+      return "generator count must be from 1 to %d".formatted(generatorsMax);
+    }
+    if (!hasPositions && (command.topLeft() == null || command.botRight() == null
+        || command.topLeft().lat() <= command.botRight().lat() || command.topLeft().lng() >= command.botRight().lng())) {
+      return "positions or a topLeft and botRight bounding box are required";
+    }
+    if (command.ratePerSecond() < generatorCount) {
+      return "rate per second must be at least 1 per generator";
+    }
+    if (command.geoOrderCountLimit() < 1 || command.radiusKm() <= 0 || command.startSpreadMs() < 0) {
+      return "geoOrderCountLimit and radiusKm must be > 0 and startSpreadMs >= 0";
+    }
+    return GeoOrderSampler.distributionError(command.distribution());
+  }
+
+  public record State(
+      String fleetId,
+      int ratePerSecond,
+      double radiusKm,
+      int geoOrderCountLimit,
+      GeneratorEntity.Distribution distribution,
+      long createdAtMs,
+      List<Member> members) {
+
+    static State empty() {
+      return new State(null, 0, 0, 0, null, 0, List.of());
+    }
+
+    boolean isEmpty() {
+      return fleetId == null;
+    }
+
+    // Creating an existing fleet again creates its members again, which restarts the members that were lost
+    List<Event> eventsFor(CreateFleetCommand command) {
+      if (!isEmpty()) {
+        return List.of(new FleetCreatedEvent(fleetId, ratePerSecond, radiusKm, geoOrderCountLimit, distribution, createdAtMs, members));
+      }
+      var createdAtMs = Instant.now().toEpochMilli();
+      return List.of(new FleetCreatedEvent(
+          command.fleetId(),
+          command.ratePerSecond(),
+          command.radiusKm(),
+          command.geoOrderCountLimit(),
+          command.distribution(),
+          createdAtMs,
+          membersFor(command, createdAtMs)));
+    }
+
+    List<Event> eventsFor(MemberFinishedCommand command) {
+      if (members.stream().noneMatch(member -> member.generatorId().equals(command.generatorId()) && !member.finished())) {
+        return List.of();
+      }
+      return List.of(new MemberFinishedEvent(fleetId, command.generatorId()));
+    }
+
+    // The budget split evenly across the members that have not finished, the first members get the remainder
+    List<MemberRate> memberRates() {
+      var active = members.stream().filter(member -> !member.finished()).toList();
+      return IntStream.range(0, active.size())
+          .mapToObj(i -> new MemberRate(active.get(i).generatorId(), ratePerSecond / active.size() + (i < ratePerSecond % active.size() ? 1 : 0)))
+          .toList();
+    }
+
+    State on(FleetCreatedEvent event) {
+      if (!isEmpty()) {
+        return this;
+      }
+      return new State(event.fleetId(), event.ratePerSecond(), event.radiusKm(), event.geoOrderCountLimit(), event.distribution(), event.createdAtMs(), event.members());
+    }
+
+    State on(MemberFinishedEvent event) {
+      var members = this.members.stream()
+          .map(member -> member.generatorId().equals(event.generatorId()) ? new Member(member.generatorId(), member.position(), member.startTimeMs(), true) : member)
+          .toList();
+      return new State(fleetId, ratePerSecond, radiusKm, geoOrderCountLimit, distribution, createdAtMs, members);
+    }
+
+    // Random positions are drawn from a generator seeded by the fleet ID and kept in the event
+    static List<Member> membersFor(CreateFleetCommand command, long createdAtMs) {
+      var positions = command.positions() != null && !command.positions().isEmpty()
+          ? command.positions()
+          : randomPositions(command.fleetId(), command.topLeft(), command.botRight(), command.generatorCount());
+      var members = new ArrayList<Member>();
+      for (int i = 0; i < positions.size(); i++) {
+        var startTimeMs = createdAtMs + command.startSpreadMs() * i / positions.size();
+        members.add(new Member("%s_%d".formatted(command.fleetId(), i), positions.get(i), startTimeMs, false));
+      }
+      return members;
+    }
+
+    private static List<LatLng> randomPositions(String fleetId, LatLng topLeft, LatLng botRight, int count) {
+      var random = new SplittableRandom(GeneratorEntity.GeoOrdersToGenerateEvent.mix(fleetId.hashCode()));
+      return IntStream.range(0, count)
+          .mapToObj(__ -> new LatLng(
+              random.nextDouble(botRight.lat(), topLeft.lat()),
+              random.nextDouble(topLeft.lng(), botRight.lng())))
+          .toList();
+    }
+  }
+
+  public interface Event {}
+
+  // positions, when not empty, places one generator at each position, else generatorCount generators are placed at
+  // random inside the topLeft and botRight bounding box. ratePerSecond is the budget of the whole fleet.
+  public record CreateFleetCommand(
+      String fleetId,
+      int generatorCount,
+      LatLng topLeft,
+      LatLng botRight,
+      List<LatLng> positions,
+      double radiusKm,
+      int geoOrderCountLimit,
+      int ratePerSecond,
+      GeneratorEntity.Distribution distribution,
+      long startSpreadMs) {}
+
+  public record MemberFinishedCommand(String fleetId, String generatorId) {}
+
+  public record Member(String generatorId, LatLng position, long startTimeMs, boolean finished) {}
+
+  public record MemberRate(String generatorId, int ratePerSecond) {}
+
+  public record FleetCreatedEvent(
+      String fleetId,
+      int ratePerSecond,
+      double radiusKm,
+      int geoOrderCountLimit,
+      GeneratorEntity.Distribution distribution,
+      long createdAtMs,
+      List<Member> members) implements Event {}
+
+  public record MemberFinishedEvent(String fleetId, String generatorId) implements Event {}
+}
@@ -0,0 +1,68 @@
+package io.example.map;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import kalix.javasdk.action.Action;
+import kalix.javasdk.annotations.Subscribe;
+import kalix.javasdk.client.ComponentClient;
+
+// Creates the generators of a fleet with their share of the fleet budget, and changes the rates of the members that
+// have not finished when a member finishes, see GeneratorFleetEntity. Finished members are not created again when the
+// fleet is created again.
+@Subscribe.EventSourcedEntity(value = GeneratorFleetEntity.class, ignoreUnknown = true)
+public class GeneratorFleetToGeneratorAction extends Action {
+  private static final Logger log = LoggerFactory.getLogger(GeneratorFleetToGeneratorAction.class);
+  private final ComponentClient componentClient;
+
+  public GeneratorFleetToGeneratorAction(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  public Effect<String> on(GeneratorFleetEntity.FleetCreatedEvent event) {
+    log.info("Event: {}", event);
+
+    var rates = new HashMap<String, Integer>();
+    GeneratorFleetEntity.State.empty().on(event).memberRates().forEach(rate -> rates.put(rate.generatorId(), rate.ratePerSecond()));
+    var results = event.members().stream()
+        .filter(member -> rates.containsKey(member.generatorId()))
+        .map(member -> componentClient.forEventSourcedEntity(member.generatorId())
+            .call(GeneratorEntity::create)
+            .params(new GeneratorEntity.CreateGeneratorCommand(
+                member.generatorId(),
+                member.position(),
+                event.radiusKm(),
+                event.geoOrderCountLimit(),
+                rates.get(member.generatorId()),
+                event.distribution(),
+                member.startTimeMs(),
+                event.fleetId()))
+            .execute()
+            .toCompletableFuture())
+        .toArray(CompletableFuture[]::new);
+
+    return effects().asyncReply(CompletableFuture.allOf(results).thenApply(__ -> "OK"));
+  }
+
+  public Effect<String> on(GeneratorFleetEntity.MemberFinishedEvent event) {
+    log.info("Event: {}", event);
+
+    var result = componentClient.forEventSourcedEntity(event.fleetId())
+        .call(GeneratorFleetEntity::get)
+        .params(event.fleetId())
+        .execute()
+        .thenCompose(fleet -> CompletableFuture.allOf(fleet.memberRates().stream()
+            .map(rate -> componentClient.forEventSourcedEntity(rate.generatorId())
+                .call(GeneratorEntity::changeRate)
+                .params(new GeneratorEntity.ChangeRateCommand(rate.generatorId(), rate.ratePerSecond()))
+                .execute()
+                .toCompletableFuture())
+            .toArray(CompletableFuture[]::new)))
+        .thenApply(__ -> "OK");
+
+    return effects().asyncReply(result);
+  }
+}
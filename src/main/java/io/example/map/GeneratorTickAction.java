@@ -0,0 +1,86 @@
+package io.example.map;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import com.google.protobuf.any.Any;
+import com.typesafe.config.ConfigFactory;
+
+import kalix.javasdk.DeferredCall;
+import kalix.javasdk.action.Action;
+import kalix.javasdk.client.ComponentClient;
+
+// Wakes a generator at the cadence of its rate. Each tick calls generate, which persists only the geo orders that are
+// due, then starts a timer for the next tick at the time the next geo order is due, but no sooner than the minimum
+// tick interval and no later than the maximum. Faster generators get fewer, larger ticks. A generator throttled by
+// its geo orders in flight is woken at the maximum interval. The loop ends when the generator has finished.
+//
+// Timer names alternate between two per generator, so the tick that is running never replaces its own timer, and a
+// retried tick replaces the timer its first attempt started.
+//
+@RequestMapping("/generator-tick")
+public class GeneratorTickAction extends Action {
+  private static final Logger log = LoggerFactory.getLogger(GeneratorTickAction.class);
+  static final Duration tickIntervalMin = ConfigFactory.load().getDuration("earth-ship.generator.tick-interval-min");
+  static final Duration tickIntervalMax = ConfigFactory.load().getDuration("earth-ship.generator.tick-interval-max");
+  private final ComponentClient componentClient;
+
+  public GeneratorTickAction(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  @PutMapping("/{generatorId}/{tick}")
+  public Effect<String> tick(@PathVariable String generatorId, @PathVariable int tick) {
+    log.info("Tick: {}, generatorId: {}", tick, generatorId);
+
+    var result = componentClient.forEventSourcedEntity(generatorId)
+        .call(GeneratorEntity::generate)
+        .params(new GeneratorEntity.GenerateCommand(generatorId))
+        .execute()
+        .thenCompose(response -> scheduleNextTick(generatorId, tick, response));
+
+    return effects().asyncReply(result);
+  }
+
+  private CompletionStage<String> scheduleNextTick(String generatorId, int tick, GeneratorEntity.GenerateResponse response) {
+    if (response.nextGeoOrderAtMs() == 0) {
+      log.info("Generator: {}, finished, geo orders: {}", generatorId, response.geoOrderCountCurrent());
+      return fleetMemberFinished(generatorId, response.fleetId());
+    }
+    var delay = delayUntil(response.nextGeoOrderAtMs(), GeneratorEntity.State.epochMsNow());
+    return timers().startSingleTimer(timerName(generatorId, tick + 1), delay, tickCall(componentClient, generatorId, tick + 1))
+        .thenApply(__ -> "OK");
+  }
+
+  // The fleet shares the budget of the finished generator across its other members, see GeneratorFleetEntity
+  private CompletionStage<String> fleetMemberFinished(String generatorId, String fleetId) {
+    if (fleetId == null) {
+      return CompletableFuture.completedFuture("OK");
+    }
+    return componentClient.forEventSourcedEntity(fleetId)
+        .call(GeneratorFleetEntity::memberFinished)
+        .params(new GeneratorFleetEntity.MemberFinishedCommand(fleetId, generatorId))
+        .execute();
+  }
+
+  static Duration delayUntil(long nextGeoOrderAtMs, long nowMs) {
+    return Duration.ofMillis(Math.max(tickIntervalMin.toMillis(), Math.min(tickIntervalMax.toMillis(), nextGeoOrderAtMs - nowMs)));
+  }
+
+  static String timerName(String generatorId, int tick) {
+    return "generator-tick-%s-%d".formatted(generatorId, tick % 2);
+  }
+
+  static DeferredCall<Any, String> tickCall(ComponentClient componentClient, String generatorId, int tick) {
+    return componentClient.forAction()
+        .call(GeneratorTickAction::tick)
+        .params(generatorId, tick);
+  }
+}
@@ -1,5 +1,7 @@
 package io.example.map;
 
+import java.time.Duration;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,31 +18,17 @@ public class GeneratorToGeneratorAction extends Action {
     this.componentClient = componentClient;
   }
 
+  // Starts the generator tick loop, see GeneratorTickAction. Creating an existing generator again restarts the loop.
+  // Generators with a later start time, staggered fleet members, are first woken at their start time.
   public Effect<String> on(GeneratorEntity.GeneratorCreatedEvent event) {
     log.info("Event: {}", event);
 
-    return callFor(event);
-  }
-
-  public Effect<String> on(GeneratorEntity.GeneratedEvent event) {
-    log.info("Event: {}", event);
-
-    return callFor(event);
-  }
-
-  private Effect<String> callFor(GeneratorEntity.GeneratorCreatedEvent event) {
-    var command = new GeneratorEntity.GenerateCommand(event.generatorId());
-    return effects().forward(
-        componentClient.forEventSourcedEntity(event.generatorId())
-            .call(GeneratorEntity::generate)
-            .params(command));
-  }
-
-  private Effect<String> callFor(GeneratorEntity.GeneratedEvent event) {
-    var command = new GeneratorEntity.GenerateCommand(event.generatorId());
-    return effects().forward(
-        componentClient.forEventSourcedEntity(event.generatorId())
-            .call(GeneratorEntity::generate)
-            .params(command));
+    var generatorId = event.generatorId();
+    var timerName = GeneratorTickAction.timerName(generatorId, 0);
+    var tickCall = GeneratorTickAction.tickCall(componentClient, generatorId, 0);
+    var delay = Duration.ofMillis(Math.max(GeneratorTickAction.tickIntervalMin.toMillis(), event.startTimeMs() - GeneratorEntity.State.epochMsNow()));
+    return effects().asyncReply(
+        timers().startSingleTimer(timerName, delay, tickCall)
+            .thenApply(__ -> "OK"));
   }
 }
@@ -37,7 +37,7 @@ public class GeneratorToGeoOrderAction extends Action {
 
   private CreateGeoOrderCommand toCommand(GeneratorEntity.GeoOrdersToGenerateEvent event, GeoOrder geoOrder) {
     LogEvent.log("Generator", event.generatorId(), "GeoOrder", geoOrder.geoOrderId(), "");
-    return new GeoOrderEntity.CreateGeoOrderCommand(geoOrder.geoOrderId(), geoOrder.position());
+    return new GeoOrderEntity.CreateGeoOrderCommand(geoOrder.geoOrderId(), geoOrder.position(), event.generatorId());
   }
 
   private CompletionStage<HttpResponse> callFor(CreateGeoOrderCommand command) {
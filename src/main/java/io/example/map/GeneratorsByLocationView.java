@@ -1,11 +1,13 @@
 package io.example.map;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import io.example.map.WorldMap.LatLng;
 import kalix.javasdk.view.View;
@@ -14,11 +16,12 @@ import kalix.javasdk.annotations.Subscribe;
 import kalix.javasdk.annotations.Table;
 import kalix.javasdk.annotations.ViewId;
 
-@ViewId("generators-by-location")
+@ViewId("generators-by-location-v2")
 @Table("generators_by_location")
 @Subscribe.EventSourcedEntity(value = GeneratorEntity.class, ignoreUnknown = true)
 public class GeneratorsByLocationView extends View<GeneratorsByLocationView.GeneratorViewRow> {
   private static final Logger log = LoggerFactory.getLogger(GeneratorsByLocationView.class);
+  static final int[] tileZooms = { 4, 8, 12 };
 
   @GetMapping("/generators/by-location/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
   @Query("""
@@ -33,16 +36,68 @@ public class GeneratorsByLocationView extends View<GeneratorsByLocationView.Gene
     return null;
   }
 
+  // See ByTilesQueryAction
+
+  @GetMapping("/generators/by-tiles-4/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  @Query("""
+      SELECT * AS generators FROM generators_by_location
+       LIMIT 1000
+       WHERE regionId4 = ANY(:regionIds)
+         AND position.lat <= :topLeftLat
+         AND position.lng >= :topLeftLng
+         AND position.lat >= :botRightLat
+         AND position.lng <= :botRightLng
+      """)
+  public Generators getGeneratorsByTiles4(
+      @RequestParam List<String> regionIds,
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng) {
+    return null;
+  }
+
+  @GetMapping("/generators/by-tiles-8/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  @Query("""
+      SELECT * AS generators FROM generators_by_location
+       LIMIT 1000
+       WHERE regionId8 = ANY(:regionIds)
+         AND position.lat <= :topLeftLat
+         AND position.lng >= :topLeftLng
+         AND position.lat >= :botRightLat
+         AND position.lng <= :botRightLng
+      """)
+  public Generators getGeneratorsByTiles8(
+      @RequestParam List<String> regionIds,
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng) {
+    return null;
+  }
+
+  @GetMapping("/generators/by-tiles-12/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  @Query("""
+      SELECT * AS generators FROM generators_by_location
+       LIMIT 1000
+       WHERE regionId12 = ANY(:regionIds)
+         AND position.lat <= :topLeftLat
+         AND position.lng >= :topLeftLng
+         AND position.lat >= :botRightLat
+         AND position.lng <= :botRightLng
+      """)
+  public Generators getGeneratorsByTiles12(
+      @RequestParam List<String> regionIds,
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng) {
+    return null;
+  }
+
   public UpdateEffect<GeneratorViewRow> on(GeneratorEntity.GeneratorCreatedEvent event) {
     log.debug("State: {}\n_Event: {}", viewState(), event);
-    return effects().updateState(new GeneratorViewRow(
-        event.generatorId(),
-        event.position(),
-        event.radiusKm(),
-        event.ratePerSecond(),
-        event.startTimeMs(),
-        event.geoOrderCountLimit(),
-        0));
+    return effects().updateState(GeneratorViewRow.on(event));
   }
 
   public UpdateEffect<GeneratorViewRow> on(GeneratorEntity.GeneratedEvent event) {
@@ -50,6 +105,11 @@ public class GeneratorsByLocationView extends View<GeneratorsByLocationView.Gene
     return effects().updateState(viewState().on(event));
   }
 
+  public UpdateEffect<GeneratorViewRow> on(GeneratorEntity.RateChangedEvent event) {
+    log.debug("State: {}\n_Event: {}", viewState(), event);
+    return effects().updateState(viewState().on(event));
+  }
+
   public record GeneratorViewRow(
       String generatorId,
       LatLng position,
@@ -57,7 +117,25 @@ public class GeneratorsByLocationView extends View<GeneratorsByLocationView.Gene
       int ratePerSecond,
       long startTimeMs,
       int geoOrderCountLimit,
-      int geoOrderCountCurrent) {
+      int geoOrderCountCurrent,
+      String regionId4,
+      String regionId8,
+      String regionId12) {
+
+    static GeneratorViewRow on(GeneratorEntity.GeneratorCreatedEvent event) {
+      var regionIds = WorldMapTiles.regionIdsAt(tileZooms, event.position().lat(), event.position().lng());
+      return new GeneratorViewRow(
+          event.generatorId(),
+          event.position(),
+          event.radiusKm(),
+          event.ratePerSecond(),
+          event.startTimeMs(),
+          event.geoOrderCountLimit(),
+          0,
+          regionIds[0],
+          regionIds[1],
+          regionIds[2]);
+    }
 
     GeneratorViewRow on(GeneratorEntity.GeneratedEvent event) {
       return new GeneratorViewRow(
@@ -67,7 +145,24 @@ public class GeneratorsByLocationView extends View<GeneratorsByLocationView.Gene
           ratePerSecond,
           startTimeMs,
           geoOrderCountLimit,
-          event.geoOrderCountCurrent());
+          event.geoOrderCountCurrent(),
+          regionId4,
+          regionId8,
+          regionId12);
+    }
+
+    GeneratorViewRow on(GeneratorEntity.RateChangedEvent event) {
+      return new GeneratorViewRow(
+          generatorId,
+          position,
+          radiusKm,
+          event.ratePerSecond(),
+          startTimeMs,
+          geoOrderCountLimit,
+          geoOrderCountCurrent,
+          regionId4,
+          regionId8,
+          regionId12);
     }
   }
 
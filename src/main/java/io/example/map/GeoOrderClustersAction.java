@@ -0,0 +1,92 @@
+package io.example.map;
+
+import static io.example.map.WorldMap.zoomMax;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+
+import com.typesafe.config.ConfigFactory;
+
+import io.example.map.WorldMap.LatLng;
+import kalix.javasdk.action.Action;
+import kalix.javasdk.client.ComponentClient;
+
+// Geo order clusters for drawing a viewport at a low map zoom, one cluster per non-empty region, from the region
+// aggregates in the regions by location view instead of the geo orders themselves.
+//
+// The cluster zoom is the map zoom plus the zoom offset, about 30 pixels per region, made coarser until the viewport is
+// covered by no more than max-clusters regions. So the reply has at most max-clusters clusters, however many geo orders
+// are in the viewport. Each cluster has the geo order centroid and the geo order counts by status.
+//
+public class GeoOrderClustersAction extends Action {
+  private static final Logger log = LoggerFactory.getLogger(GeoOrderClustersAction.class);
+  static final int maxClusters = ConfigFactory.load().getInt("earth-ship.geo-order-clusters.max-clusters");
+  static final int zoomOffset = ConfigFactory.load().getInt("earth-ship.geo-order-clusters.zoom-offset");
+  private final ComponentClient componentClient;
+
+  public GeoOrderClustersAction(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  @GetMapping("/geo-orders/clusters/{zoom}/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  public Effect<Clusters> getClusters(
+      @PathVariable Integer zoom,
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng) {
+    var clusterZoom = clusterZoomFor(zoom, topLeftLat, topLeftLng, botRightLat, botRightLng);
+    log.debug("Clusters, map zoom: {}, cluster zoom: {}", zoom, clusterZoom);
+
+    var result = queryRegions(clusterZoom, topLeftLat, topLeftLng, botRightLat, botRightLng)
+        .thenApply(clusters -> new Clusters(clusterZoom, clusters));
+    return effects().asyncReply(result);
+  }
+
+  static int clusterZoomFor(int mapZoom, double topLeftLat, double topLeftLng, double botRightLat, double botRightLng) {
+    var zooms = IntStream.rangeClosed(0, Math.max(0, Math.min(zoomMax, mapZoom + zoomOffset))).toArray();
+    return Math.max(0, WorldMapTiles.coveringZoom(zooms, topLeftLat, topLeftLng, botRightLat, botRightLng, maxClusters));
+  }
+
+  private CompletionStage<List<Cluster>> queryRegions(int zoom, double topLeftLat, double topLeftLng, double botRightLat, double botRightLng) {
+    if (TopRegions.isTopZoom(zoom)) {
+      return TopRegions.regionsIn(componentClient, zoom, WorldMap.Region.from(zoom, topLeftLat, topLeftLng, botRightLat, botRightLng))
+          .thenApply(rows -> rows.stream().filter(row -> row.geoOrderCount() > 0).map(Cluster::of).toList());
+    }
+    return ViewPages.<RegionByLocationView.RegionViewRow>all(nextPageToken -> componentClient.forView()
+            .call(RegionByLocationView::getRegionsByLocationPaged)
+            .params(zoom, topLeftLat, topLeftLng, botRightLat, botRightLng, nextPageToken)
+            .execute(), maxClusters)
+        .thenApply(rows -> rows.stream().map(Cluster::of).toList());
+  }
+
+  // Created geo orders are neither ready to ship nor back ordered yet. Regions released before ready to ship geo
+  // orders were counted have all their geo orders that are not back ordered as created.
+  public record Cluster(
+      String regionId,
+      LatLng position,
+      int geoOrderCount,
+      int geoOrderCreatedCount,
+      int geoOrderReadyToShipCount,
+      int geoOrderBackOrderedCount) {
+
+    static Cluster of(RegionByLocationView.RegionViewRow row) {
+      var region = row.region();
+      return new Cluster(
+          row.regionId(),
+          region.geoOrderCentroid(),
+          region.geoOrderCount(),
+          region.geoOrderCount() - region.geoOrderReadyCount() - region.geoOrderAlarmCount(),
+          region.geoOrderReadyCount(),
+          region.geoOrderAlarmCount());
+    }
+  }
+
+  public record Clusters(int zoom, List<Cluster> clusters) {}
+}
@@ -101,58 +101,71 @@ public class GeoOrderEntity extends EventSourcedEntity<GeoOrderEntity.State, Geo
       String geoOrderId,
       LatLng position,
       Instant readyToShipAt,
-      Instant backOrderedAt) {
+      Instant backOrderedAt,
+      String generatorId) {
 
     static State empty() {
-      return new State(null, latLng(0, 0), null, null);
+      return new State(null, latLng(0, 0), null, null, null);
     }
 
     boolean isEmpty() {
       return geoOrderId == null;
     }
 
+    // In flight from when the geo order is created until it is first ready to ship or back ordered
+    boolean isInFlight() {
+      return readyToShipAt == null && backOrderedAt == null;
+    }
+
     Event eventFor(CreateGeoOrderCommand command) {
-      return new GeoOrderCreatedEvent(command.geoOrderId, command.position);
+      return new GeoOrderCreatedEvent(command.geoOrderId, command.position, command.generatorId);
     }
 
     Event eventFor(GeoOrderReadyToShipCommand command) {
-      return new GeoOrderReadyToShipEvent(geoOrderId, position, command.readyToShipAt);
+      return new GeoOrderReadyToShipEvent(geoOrderId, position, command.readyToShipAt, generatorId, isInFlight());
     }
 
     Event eventFor(GeoOrderBackOrderedCommand command) {
-      return new GeoOrderBackOrderedEvent(geoOrderId, position, command.backOrderedAt);
+      return new GeoOrderBackOrderedEvent(geoOrderId, position, command.backOrderedAt, generatorId, isInFlight());
     }
 
     State on(GeoOrderCreatedEvent event) {
       return geoOrderId != null
           ? this
-          : new State(event.geoOrderId, event.position, null, null);
+          : new State(event.geoOrderId, event.position, null, null, event.generatorId);
     }
 
     State on(GeoOrderReadyToShipEvent event) {
-      return new State(geoOrderId, position, event.readyToShipAt, null);
+      return new State(geoOrderId, position, event.readyToShipAt, null, generatorId);
     }
 
     State on(GeoOrderBackOrderedEvent event) {
-      return new State(geoOrderId, position, null, event.backOrderedAt);
+      return new State(geoOrderId, position, null, event.backOrderedAt, generatorId);
     }
   }
 
+  // See GeoOrderIds
   static String geoOrderIdFor(LatLng position) {
-    return "geoOrder-id_%1.13f_%1.13f".formatted(position.lat(), position.lng());
+    return GeoOrderIds.idFor(position);
   }
 
   public interface Event {}
 
-  public record CreateGeoOrderCommand(String geoOrderId, LatLng position) {}
+  // generatorId is null for geo orders that were not created by a generator
+  public record CreateGeoOrderCommand(String geoOrderId, LatLng position, String generatorId) {
+    public CreateGeoOrderCommand(String geoOrderId, LatLng position) {
+      this(geoOrderId, position, null);
+    }
+  }
 
-  public record GeoOrderCreatedEvent(String geoOrderId, LatLng position) implements Event {}
+  public record GeoOrderCreatedEvent(String geoOrderId, LatLng position, String generatorId) implements Event {}
 
   public record GeoOrderReadyToShipCommand(String geoOrderId, Instant readyToShipAt) {}
 
-  public record GeoOrderReadyToShipEvent(String geoOrderId, LatLng position, Instant readyToShipAt) implements Event {}
+  // wasInFlight is true when this is the first time the geo order is ready to ship or back ordered
+  public record GeoOrderReadyToShipEvent(String geoOrderId, LatLng position, Instant readyToShipAt, String generatorId, boolean wasInFlight) implements Event {}
 
   public record GeoOrderBackOrderedCommand(String geoOrderId, Instant backOrderedAt) {}
 
-  public record GeoOrderBackOrderedEvent(String geoOrderId, LatLng position, Instant backOrderedAt) implements Event {}
+  public record GeoOrderBackOrderedEvent(String geoOrderId, LatLng position, Instant backOrderedAt, String generatorId, boolean wasInFlight) implements Event {}
 }
@@ -0,0 +1,146 @@
+package io.example.map;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import com.typesafe.config.ConfigFactory;
+
+// A weighted grid of cells for the grid distribution of GeneratorEntity.Distribution, for example population density.
+//
+// A grid is named by its file name, such as uk-cities.csv, and read from the configured grid directory, or when there
+// is no such file there from the distributions classpath resource directory. Names with a directory are rejected, other
+// than the distributions/ prefix of the names accepted before the directory was configured. One cell per line:
+//
+// topLeftLat,topLeftLng,botRightLat,botRightLng,weight
+//
+// Blank lines, lines starting with # and a header line are skipped. A cell is picked in proportion to its weight,
+// then a position is picked uniformly in the cell lat/lng box. Grids are loaded once and cached by name. Geo order
+// positions are regenerated from the grid when events are replayed, so a grid file must not change once in use.
+//
+final class GeoOrderGrid {
+  private static final Map<String, GeoOrderGrid> grids = new ConcurrentHashMap<>();
+  private static final String gridDir = ConfigFactory.load().getString("earth-ship.generator.grid-dir");
+  private static final String resourceDir = "distributions/";
+  private static final Pattern fileName = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_-]*(\\.[A-Za-z0-9_-]+)*");
+  private final double[] topLeftLats;
+  private final double[] topLeftLngs;
+  private final double[] latSpans;
+  private final double[] lngSpans;
+  private final double[] cumulativeWeights;
+
+  private GeoOrderGrid(double[][] cells) {
+    var n = cells.length;
+    topLeftLats = new double[n];
+    topLeftLngs = new double[n];
+    latSpans = new double[n];
+    lngSpans = new double[n];
+    cumulativeWeights = new double[n];
+    var totalWeight = 0.0;
+    for (int i = 0; i < n; i++) {
+      topLeftLats[i] = cells[i][0];
+      topLeftLngs[i] = cells[i][1];
+      latSpans[i] = cells[i][0] - cells[i][2];
+      lngSpans[i] = cells[i][3] - cells[i][1];
+      totalWeight += cells[i][4];
+      cumulativeWeights[i] = totalWeight;
+    }
+  }
+
+  static GeoOrderGrid load(String name) {
+    if (name == null || name.isBlank()) {
+      throw new IllegalArgumentException("grid distribution has no grid CSV");
+    }
+    var file = name.startsWith(resourceDir) ? name.substring(resourceDir.length()) : name;
+    if (!fileName.matcher(file).matches()) {
+      throw new IllegalArgumentException("grid must be the file name of a grid CSV, such as uk-cities.csv");
+    }
+    return grids.computeIfAbsent(file, GeoOrderGrid::read);
+  }
+
+  int cellCount() {
+    return cumulativeWeights.length;
+  }
+
+  void sample(SplittableRandom random, double[] lats, double[] lngs, int count) {
+    var totalWeight = cumulativeWeights[cumulativeWeights.length - 1];
+    for (int i = 0; i < count; i++) {
+      var cell = GeoOrderSampler.indexOf(cumulativeWeights, random.nextDouble() * totalWeight);
+      lats[i] = topLeftLats[cell] - random.nextDouble() * latSpans[cell];
+      lngs[i] = topLeftLngs[cell] + random.nextDouble() * lngSpans[cell];
+    }
+  }
+
+  // Errors name the line of an invalid cell but not its contents, they are returned to the caller of the generator
+  static GeoOrderGrid parse(Reader csv, String name) throws IOException {
+    var reader = new BufferedReader(csv);
+    var cells = new ArrayList<double[]>();
+    var totalWeight = 0.0;
+    var lineNumber = 0;
+    for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+      lineNumber++;
+      line = line.strip();
+      if (!line.isEmpty() && !line.startsWith("#") && !Character.isLetter(line.charAt(0))) {
+        var cell = cellFor(line, name, lineNumber);
+        totalWeight += cell[4];
+        cells.add(cell);
+      }
+    }
+    if (cells.isEmpty()) {
+      throw new IllegalArgumentException("grid '%s' has no cells".formatted(name));
+    }
+    if (!(totalWeight > 0) || Double.isInfinite(totalWeight)) {
+      throw new IllegalArgumentException("grid '%s' has no cells with a weight > 0".formatted(name));
+    }
+    return new GeoOrderGrid(cells.toArray(double[][]::new));
+  }
+
+  private static GeoOrderGrid read(String file) {
+    try {
+      if (!gridDir.isBlank()) {
+        var path = Path.of(gridDir).resolve(file);
+        if (Files.isRegularFile(path)) {
+          try (var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return parse(reader, file);
+          }
+        }
+      }
+      var resource = GeoOrderGrid.class.getClassLoader().getResourceAsStream(resourceDir + file);
+      if (resource == null) {
+        throw new IllegalArgumentException("grid '%s' not found".formatted(file));
+      }
+      try (var reader = new InputStreamReader(resource, StandardCharsets.UTF_8)) {
+        return parse(reader, file);
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("grid '%s' cannot be read".formatted(file));
+    }
+  }
+
+  private static double[] cellFor(String line, String name, int lineNumber) {
+    var fields = line.split(",");
+    try {
+      if (fields.length == 5) {
+        var cell = new double[5];
+        for (int i = 0; i < 5; i++) {
+          cell[i] = Double.parseDouble(fields[i].strip());
+        }
+        if (cell[0] >= cell[2] && cell[3] >= cell[1] && cell[4] >= 0 && Double.isFinite(cell[4])) {
+          return cell;
+        }
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new IllegalArgumentException("grid '%s' has an invalid cell on line %d".formatted(name, lineNumber));
+  }
+}
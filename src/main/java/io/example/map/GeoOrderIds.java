@@ -0,0 +1,112 @@
+package io.example.map;
+
+import io.example.map.WorldMap.LatLng;
+
+// Compact, spatially sortable geo order IDs.
+//
+// An ID is "g", the 60 bit Morton code of the position in 12 characters, then a 20 bit uniqueness suffix in 4
+// characters, for example "gpqbnxv463zmw596y". The Morton code interleaves 30 bits of latitude (south to north) with
+// 30 bits of longitude (west to east), so a cell is about 2 cm high and at most 4 cm wide. The suffix is taken from
+// the exact bits of the position, see GeoOrderStatusTable.keyFor, so two positions in the same cell still get
+// different IDs unless their suffixes also collide, about one in a million.
+//
+// Both parts are written 5 bits per character with the sortable base 32 alphabet below, so sorting IDs as strings
+// sorts them by Morton code, and every ID prefix of 1 + n characters is a Morton cell with 5 * n bits.
+//
+// IDs are about a third of the length of the legacy "geoOrder-id_%1.13f_%1.13f" IDs, and are built without a
+// formatter. Order IDs, shipping order IDs and order item IDs all start with the geo order ID.
+//
+interface GeoOrderIds {
+  static final char prefix = 'g';
+  static final int mortonChars = 12;
+  static final int suffixChars = 4;
+  static final int idLength = 1 + mortonChars + suffixChars;
+  static final int coordinateBits = 30;
+  static final String alphabet = "0123456789abcdefghjkmnpqrstvwxyz";
+
+  static String idFor(LatLng position) {
+    var chars = new char[idLength];
+    chars[0] = prefix;
+    write(mortonCodeFor(position.lat(), position.lng()), chars, 1, mortonChars);
+    write(GeoOrderStatusTable.keyFor(position) >>> (Long.SIZE - 5 * suffixChars), chars, 1 + mortonChars, suffixChars);
+    return new String(chars);
+  }
+
+  static String legacyIdFor(LatLng position) {
+    return "geoOrder-id_%1.13f_%1.13f".formatted(position.lat(), position.lng());
+  }
+
+  static long mortonCodeFor(double lat, double lng) {
+    return spread(quantize((lat + 90) / 180)) << 1 | spread(quantize((lng + 180) / 360));
+  }
+
+  static boolean isCompactId(String geoOrderId) {
+    if (geoOrderId == null || geoOrderId.length() != idLength || geoOrderId.charAt(0) != prefix) {
+      return false;
+    }
+    for (int i = 1; i < idLength; i++) {
+      if (alphabet.indexOf(geoOrderId.charAt(i)) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Returns -1 for IDs that are not compact IDs.
+  static long mortonCodeOf(String geoOrderId) {
+    if (!isCompactId(geoOrderId)) {
+      return -1;
+    }
+    long mortonCode = 0;
+    for (int i = 1; i <= mortonChars; i++) {
+      mortonCode = mortonCode << 5 | alphabet.indexOf(geoOrderId.charAt(i));
+    }
+    return mortonCode;
+  }
+
+  // The centre of the Morton cell of a compact ID, or null for IDs that are not compact IDs.
+  static LatLng positionOf(String geoOrderId) {
+    var mortonCode = mortonCodeOf(geoOrderId);
+    if (mortonCode < 0) {
+      return null;
+    }
+    var cells = (double) (1 << coordinateBits);
+    return new LatLng(
+        (compact(mortonCode >>> 1) + 0.5) / cells * 180 - 90,
+        (compact(mortonCode) + 0.5) / cells * 360 - 180);
+  }
+
+  private static long quantize(double fraction) {
+    var cell = (long) (fraction * (1 << coordinateBits));
+    return cell < 0 ? 0 : Math.min(cell, (1 << coordinateBits) - 1);
+  }
+
+  // Spreads the low 32 bits of v into the even bits of the result.
+  private static long spread(long v) {
+    v &= 0xffffffffL;
+    v = (v | v << 16) & 0x0000ffff0000ffffL;
+    v = (v | v << 8) & 0x00ff00ff00ff00ffL;
+    v = (v | v << 4) & 0x0f0f0f0f0f0f0f0fL;
+    v = (v | v << 2) & 0x3333333333333333L;
+    v = (v | v << 1) & 0x5555555555555555L;
+    return v;
+  }
+
+  // Gathers the even bits of v into the low 32 bits of the result.
+  private static long compact(long v) {
+    v &= 0x5555555555555555L;
+    v = (v | v >>> 1) & 0x3333333333333333L;
+    v = (v | v >>> 2) & 0x0f0f0f0f0f0f0f0fL;
+    v = (v | v >>> 4) & 0x00ff00ff00ff00ffL;
+    v = (v | v >>> 8) & 0x0000ffff0000ffffL;
+    v = (v | v >>> 16) & 0x00000000ffffffffL;
+    return v;
+  }
+
+  private static void write(long value, char[] chars, int offset, int count) {
+    for (int i = offset + count - 1; i >= offset; i--) {
+      chars[i] = alphabet.charAt((int) (value & 31));
+      value >>>= 5;
+    }
+  }
+}
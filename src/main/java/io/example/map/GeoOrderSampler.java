@@ -0,0 +1,184 @@
+package io.example.map;
+
+import static io.example.map.WorldMap.earthRadiusKm;
+
+import java.util.SplittableRandom;
+
+import io.example.map.GeneratorEntity.Distribution;
+import io.example.map.WorldMap.LatLng;
+
+// Bulk sampling of geo order positions around a generator centre, into primitive lat/lng arrays.
+//
+// Each point takes a random bearing and then a random distance up to the radius, in that order, from the given
+// random. The random is never shared between threads, each batch of geo orders has its own, see
+// GeneratorEntity.GeoOrdersToGenerateEvent.
+//
+// spherical - the destination point on a sphere. The sin and cos of the centre lat are computed once per batch.
+// The expressions are those of the original per point sampler, in StrictMath, so the positions are bit-identical
+// on any JVM.
+//
+// planar - the destination point on the plane tangent at the centre, with the east-west scale of the centre lat.
+// No trig per point other than the sin and cos of the bearing. Against the spherical position, the error is at
+// most about (r^2 / 2R) * (1 + tan|lat|), r the radius and R the earth radius. At |lat| <= 80 that is under 0.6 m
+// at r = 1 km and under 55 m at r = 10 km, and at |lat| <= 45 under 10 m at r = 10 km, see GeoOrderSamplerTest. It is only used when the radius is at most
+// planarRadiusKmMax and the centre is within planarLatMax of the equator.
+//
+// The non-uniform distributions of GeneratorEntity.Distribution use the spherical destination point, with a Rayleigh
+// distributed distance for a gaussian around a centre. Per batch they allocate only small arrays per cluster.
+//
+interface GeoOrderSampler {
+  static final double planarRadiusKmMax = 10;
+  static final double planarLatMax = 80;
+
+  static boolean isPlanar(LatLng centre, double radiusKm) {
+    return radiusKm <= planarRadiusKmMax && Math.abs(centre.lat()) <= planarLatMax;
+  }
+
+  static void sample(Distribution distribution, LatLng centre, double radiusKm, boolean planar, SplittableRandom random, double[] lats, double[] lngs, int count) {
+    if (Distribution.isUniform(distribution)) {
+      sample(centre, radiusKm, planar, random, lats, lngs, count);
+      return;
+    }
+    switch (distribution.type()) {
+      case gaussian -> sampleGaussian(centre, sigmaKm(distribution.sigmaKm(), radiusKm), random, lats, lngs, count);
+      case clusters -> sampleClusters(distribution, radiusKm, random, lats, lngs, count);
+      case grid -> GeoOrderGrid.load(distribution.grid()).sample(random, lats, lngs, count);
+      default -> sample(centre, radiusKm, planar, random, lats, lngs, count);
+    }
+  }
+
+  // Returns why the distribution cannot be used, or null when it can
+  static String distributionError(Distribution distribution) {
+    if (Distribution.isUniform(distribution)) {
+      return null;
+    }
+    switch (distribution.type()) {
+      case gaussian:
+        return distribution.sigmaKm() < 0 ? "gaussian sigmaKm must be >= 0" : null;
+      case clusters:
+        if (distribution.clusters() == null || distribution.clusters().isEmpty()) {
+          return "clusters distribution has no clusters";
+        }
+        if (distribution.clusters().stream().anyMatch(c -> c.position() == null || c.weight() <= 0 || c.sigmaKm() < 0)) {
+          return "every cluster needs a position, a weight > 0 and a sigmaKm >= 0";
+        }
+        return null;
+      case grid:
+        try {
+          GeoOrderGrid.load(distribution.grid());
+          return null;
+        } catch (IllegalArgumentException e) {
+          return e.getMessage();
+        }
+      default:
+        return null;
+    }
+  }
+
+  static void sample(LatLng centre, double radiusKm, boolean planar, SplittableRandom random, double[] lats, double[] lngs, int count) {
+    if (planar) {
+      samplePlanar(centre, radiusKm, random, lats, lngs, count);
+    } else {
+      sampleSpherical(centre, radiusKm, random, lats, lngs, count);
+    }
+  }
+
+  static void sampleSpherical(LatLng centre, double radiusKm, SplittableRandom random, double[] lats, double[] lngs, int count) {
+    final var lat = Math.toRadians(centre.lat());
+    final var lng = Math.toRadians(centre.lng());
+    final var sinLat = StrictMath.sin(lat);
+    final var cosLat = StrictMath.cos(lat);
+
+    for (int i = 0; i < count; i++) {
+      final var angle = random.nextDouble() * 2 * Math.PI;
+      final var distance = random.nextDouble() * radiusKm;
+      destination(lng, sinLat, cosLat, angle, distance, lats, lngs, i);
+    }
+  }
+
+  static void samplePlanar(LatLng centre, double radiusKm, SplittableRandom random, double[] lats, double[] lngs, int count) {
+    final var degreesPerKm = Math.toDegrees(1.0 / earthRadiusKm);
+    final var latDegreesPerKm = degreesPerKm;
+    final var lngDegreesPerKm = degreesPerKm / StrictMath.cos(Math.toRadians(centre.lat()));
+
+    for (int i = 0; i < count; i++) {
+      final var angle = random.nextDouble() * 2 * Math.PI;
+      final var distance = random.nextDouble() * radiusKm;
+      lats[i] = centre.lat() + distance * StrictMath.cos(angle) * latDegreesPerKm;
+      lngs[i] = centre.lng() + distance * StrictMath.sin(angle) * lngDegreesPerKm;
+    }
+  }
+
+  static void sampleGaussian(LatLng centre, double sigmaKm, SplittableRandom random, double[] lats, double[] lngs, int count) {
+    final var lat = Math.toRadians(centre.lat());
+    final var lng = Math.toRadians(centre.lng());
+    final var sinLat = StrictMath.sin(lat);
+    final var cosLat = StrictMath.cos(lat);
+
+    for (int i = 0; i < count; i++) {
+      final var angle = random.nextDouble() * 2 * Math.PI;
+      final var distance = rayleigh(sigmaKm, random.nextDouble());
+      destination(lng, sinLat, cosLat, angle, distance, lats, lngs, i);
+    }
+  }
+
+  static void sampleClusters(Distribution distribution, double radiusKm, SplittableRandom random, double[] lats, double[] lngs, int count) {
+    final var clusters = distribution.clusters();
+    final var n = clusters.size();
+    final var cumulativeWeights = new double[n];
+    final var sigmas = new double[n];
+    final var lngRadians = new double[n];
+    final var sinLats = new double[n];
+    final var cosLats = new double[n];
+    var totalWeight = 0.0;
+    for (int c = 0; c < n; c++) {
+      var cluster = clusters.get(c);
+      totalWeight += cluster.weight();
+      cumulativeWeights[c] = totalWeight;
+      sigmas[c] = sigmaKm(cluster.sigmaKm(), radiusKm);
+      lngRadians[c] = Math.toRadians(cluster.position().lng());
+      sinLats[c] = StrictMath.sin(Math.toRadians(cluster.position().lat()));
+      cosLats[c] = StrictMath.cos(Math.toRadians(cluster.position().lat()));
+    }
+
+    for (int i = 0; i < count; i++) {
+      final var c = indexOf(cumulativeWeights, random.nextDouble() * totalWeight);
+      final var angle = random.nextDouble() * 2 * Math.PI;
+      final var distance = rayleigh(sigmas[c], random.nextDouble());
+      destination(lngRadians[c], sinLats[c], cosLats[c], angle, distance, lats, lngs, i);
+    }
+  }
+
+  // The first index with a cumulative weight above the weight
+  static int indexOf(double[] cumulativeWeights, double weight) {
+    var low = 0;
+    var high = cumulativeWeights.length - 1;
+    while (low < high) {
+      var mid = (low + high) >>> 1;
+      if (cumulativeWeights[mid] > weight) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+
+  private static double sigmaKm(double sigmaKm, double radiusKm) {
+    return sigmaKm > 0 ? sigmaKm : radiusKm / 2;
+  }
+
+  // The distance from the centre of a 2D gaussian with the given sigma, u uniform in [0, 1)
+  private static double rayleigh(double sigmaKm, double u) {
+    return sigmaKm * StrictMath.sqrt(-2 * StrictMath.log(1 - u));
+  }
+
+  private static void destination(double lng, double sinLat, double cosLat, double angle, double distanceKm, double[] lats, double[] lngs, int i) {
+    final var sinDistance = StrictMath.sin(distanceKm / earthRadiusKm);
+    final var cosDistance = StrictMath.cos(distanceKm / earthRadiusKm);
+    final var lat2 = StrictMath.asin(sinLat * cosDistance + cosLat * sinDistance * StrictMath.cos(angle));
+    final var lng2 = lng + StrictMath.atan2(StrictMath.sin(angle) * sinDistance * cosLat, cosDistance - sinLat * StrictMath.sin(lat2));
+    lats[i] = Math.toDegrees(lat2);
+    lngs[i] = Math.toDegrees(lng2);
+  }
+}
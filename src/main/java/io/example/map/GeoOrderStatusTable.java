@@ -0,0 +1,270 @@
+package io.example.map;
+
+import java.nio.ByteBuffer;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import io.example.map.WorldMap.LatLng;
+import io.example.map.WorldMap.Region;
+
+// Per geo order status of a zoom 18 region, an open addressing map from a 64 bit geo order key to a status byte.
+//
+// The geo order, alarm and ready counts are maintained incrementally so an update is O(1), and each geo order takes
+// 9 bytes per slot with the table kept at most 3/4 full.
+//
+// The table is immutable, put returns a new table. The slots are kept in pages of at most 256 slots, and a put copies
+// only the page directory and the page it changes, so a state that still holds the table before the put, such as a
+// state returned to a test or being written to a snapshot, does not see the change.
+//
+// Geo orders moved from a region entity with a legacy ID keep the migrated flag in their status byte until a geo order
+// update for them arrives, see putMigrated.
+//
+// In snapshots and replies the table is written as one byte array of (key, status) pairs.
+//
+final class GeoOrderStatusTable {
+  static final byte statusEmpty = 0;
+  static final byte statusOk = 1;
+  static final byte statusAlarm = 2;
+  static final byte statusReady = 3;
+  private static final byte statusMask = 0x0f;
+  private static final byte migratedFlag = 0x10;
+  private static final int entryBytes = Long.BYTES + 1;
+  private static final int pageShiftMax = 8;
+
+  private final long[][] keys;
+  private final byte[][] statuses;
+  private final int capacity;
+  private final int pageShift;
+  private final int geoOrderCount;
+  private final int geoOrderAlarmCount;
+  private final int geoOrderReadyCount;
+
+  GeoOrderStatusTable() {
+    this(16);
+  }
+
+  private GeoOrderStatusTable(int capacity) {
+    this.capacity = capacity;
+    pageShift = Math.min(pageShiftMax, Integer.numberOfTrailingZeros(capacity));
+    keys = new long[capacity >>> pageShift][1 << pageShift];
+    statuses = new byte[capacity >>> pageShift][1 << pageShift];
+    geoOrderCount = 0;
+    geoOrderAlarmCount = 0;
+    geoOrderReadyCount = 0;
+  }
+
+  private GeoOrderStatusTable(GeoOrderStatusTable table, long[][] keys, byte[][] statuses, int geoOrderCount, int geoOrderAlarmCount, int geoOrderReadyCount) {
+    this.capacity = table.capacity;
+    this.pageShift = table.pageShift;
+    this.keys = keys;
+    this.statuses = statuses;
+    this.geoOrderCount = geoOrderCount;
+    this.geoOrderAlarmCount = geoOrderAlarmCount;
+    this.geoOrderReadyCount = geoOrderReadyCount;
+  }
+
+  int geoOrderCount() {
+    return geoOrderCount;
+  }
+
+  int geoOrderAlarmCount() {
+    return geoOrderAlarmCount;
+  }
+
+  int geoOrderReadyCount() {
+    return geoOrderReadyCount;
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  byte statusOf(long key) {
+    return statusAt(slotOf(key));
+  }
+
+  boolean isMigrated(long key) {
+    return (rawStatusAt(slotOf(key)) & migratedFlag) != 0;
+  }
+
+  // The geo order count after the geo order is put, without changing the table.
+  int geoOrderCountWith(long key) {
+    return geoOrderCount + (statusOf(key) == statusEmpty ? 1 : 0);
+  }
+
+  // The geo order alarm count after the given status is put, without changing the table.
+  int geoOrderAlarmCountWith(long key, byte status) {
+    return geoOrderAlarmCount
+        - (statusOf(key) == statusAlarm ? 1 : 0)
+        + (status == statusAlarm ? 1 : 0);
+  }
+
+  // The geo order ready count after the given status is put, without changing the table.
+  int geoOrderReadyCountWith(long key, byte status) {
+    return geoOrderReadyCount
+        - (statusOf(key) == statusReady ? 1 : 0)
+        + (status == statusReady ? 1 : 0);
+  }
+
+  // The table is only grown when the key is new, a put that changes the status of a geo order never resizes
+  GeoOrderStatusTable put(long key, byte status) {
+    return put(key, status, status);
+  }
+
+  // A geo order status from the journal of a region entity with a legacy ID. The legacy journals end before the geo
+  // order updates to the packed key region entities start, so a geo order that was put by an update is newer and is
+  // kept, while the statuses of migrated geo orders are replaced in journal order.
+  GeoOrderStatusTable putMigrated(long key, byte status) {
+    var rawStatus = rawStatusAt(slotOf(key));
+    if (rawStatus != statusEmpty && (rawStatus & migratedFlag) == 0) {
+      return this;
+    }
+    return put(key, status, (byte) (status | migratedFlag));
+  }
+
+  private GeoOrderStatusTable put(long key, byte status, byte rawStatus) {
+    var i = slotOf(key);
+    var previous = statusAt(i);
+    if (rawStatusAt(i) == rawStatus) {
+      return this;
+    }
+    if (previous == statusEmpty && (geoOrderCount + 1) * 4 > capacity * 3) {
+      return resized(capacity * 2).put(key, status, rawStatus);
+    }
+
+    var page = i >>> pageShift;
+    var keys = this.keys.clone();
+    var statuses = this.statuses.clone();
+    keys[page] = keys[page].clone();
+    statuses[page] = statuses[page].clone();
+    keys[page][i & pageMask()] = key;
+    statuses[page][i & pageMask()] = rawStatus;
+
+    return new GeoOrderStatusTable(this, keys, statuses,
+        geoOrderCount + (previous == statusEmpty ? 1 : 0),
+        geoOrderAlarmCount - (previous == statusAlarm ? 1 : 0) + (status == statusAlarm ? 1 : 0),
+        geoOrderReadyCount - (previous == statusReady ? 1 : 0) + (status == statusReady ? 1 : 0));
+  }
+
+  static long keyFor(LatLng position) {
+    return mix(Double.doubleToLongBits(position.lat()) * 0x9E3779B97F4A7C15L ^ Double.doubleToLongBits(position.lng()));
+  }
+
+  // Geo orders recorded before the ready status was kept have statusOk whether they are ready to ship or not
+  static byte statusFor(Region geoOrderSubRegion) {
+    return geoOrderSubRegion.geoOrderAlarmCount() > 0
+        ? statusAlarm
+        : geoOrderSubRegion.geoOrderReadyCount() > 0 ? statusReady : statusOk;
+  }
+
+  @JsonValue
+  byte[] toBytes() {
+    var buffer = ByteBuffer.allocate(geoOrderCount * entryBytes);
+    for (int i = 0; i < capacity; i++) {
+      if (statusAt(i) != statusEmpty) {
+        buffer.putLong(keyAt(i)).put(rawStatusAt(i));
+      }
+    }
+    return buffer.array();
+  }
+
+  @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+  static GeoOrderStatusTable fromBytes(byte[] bytes) {
+    var geoOrderCount = bytes.length / entryBytes;
+    var buffer = ByteBuffer.wrap(bytes);
+    var keys = new long[geoOrderCount];
+    var statuses = new byte[geoOrderCount];
+    for (int i = 0; i < geoOrderCount; i++) {
+      keys[i] = buffer.getLong();
+      statuses[i] = buffer.get();
+    }
+    return filled(capacityFor(geoOrderCount), keys, statuses, geoOrderCount);
+  }
+
+  @Override
+  public String toString() {
+    return "GeoOrderStatusTable[geoOrderCount=%d, geoOrderAlarmCount=%d, geoOrderReadyCount=%d, capacity=%d]"
+        .formatted(geoOrderCount, geoOrderAlarmCount, geoOrderReadyCount, capacity);
+  }
+
+  private GeoOrderStatusTable resized(int capacity) {
+    var keys = new long[geoOrderCount];
+    var statuses = new byte[geoOrderCount];
+    var n = 0;
+    for (int i = 0; i < this.capacity; i++) {
+      if (statusAt(i) != statusEmpty) {
+        keys[n] = keyAt(i);
+        statuses[n++] = rawStatusAt(i);
+      }
+    }
+    return filled(capacity, keys, statuses, n);
+  }
+
+  // A new table with the geo orders, filled in place before it is shared
+  private static GeoOrderStatusTable filled(int capacity, long[] keys, byte[] statuses, int count) {
+    var table = new GeoOrderStatusTable(capacity);
+    var geoOrderCount = 0;
+    var geoOrderAlarmCount = 0;
+    var geoOrderReadyCount = 0;
+    for (int n = 0; n < count; n++) {
+      var i = table.slotOf(keys[n]);
+      var previous = table.statusAt(i);
+      var status = statuses[n] & statusMask;
+      geoOrderCount += previous == statusEmpty ? 1 : 0;
+      geoOrderAlarmCount += (status == statusAlarm ? 1 : 0) - (previous == statusAlarm ? 1 : 0);
+      geoOrderReadyCount += (status == statusReady ? 1 : 0) - (previous == statusReady ? 1 : 0);
+      table.keys[i >>> table.pageShift][i & table.pageMask()] = keys[n];
+      table.statuses[i >>> table.pageShift][i & table.pageMask()] = statuses[n];
+    }
+    return new GeoOrderStatusTable(table, table.keys, table.statuses, geoOrderCount, geoOrderAlarmCount, geoOrderReadyCount);
+  }
+
+  // The slot of the key, or the empty slot where it would be put
+  private int slotOf(long key) {
+    var mask = capacity - 1;
+    for (int i = slotFor(key, mask);; i = (i + 1) & mask) {
+      if (statusAt(i) == statusEmpty || keyAt(i) == key) {
+        return i;
+      }
+    }
+  }
+
+  private long keyAt(int i) {
+    return keys[i >>> pageShift][i & pageMask()];
+  }
+
+  private byte statusAt(int i) {
+    return (byte) (rawStatusAt(i) & statusMask);
+  }
+
+  private byte rawStatusAt(int i) {
+    return statuses[i >>> pageShift][i & pageMask()];
+  }
+
+  private int pageMask() {
+    return (1 << pageShift) - 1;
+  }
+
+  private static int capacityFor(int geoOrderCount) {
+    var capacity = 16;
+    while (geoOrderCount * 4 > capacity * 3) {
+      capacity *= 2;
+    }
+    return capacity;
+  }
+
+  private static int slotFor(long key, int mask) {
+    return (int) mix(key) & mask;
+  }
+
+  // MurmurHash3 fmix64
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb93fe53a85cbL;
+    h ^= h >>> 33;
+    return h;
+  }
+}
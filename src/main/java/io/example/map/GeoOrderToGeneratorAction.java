@@ -0,0 +1,56 @@
+package io.example.map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.typesafe.config.ConfigFactory;
+
+import kalix.javasdk.action.Action;
+import kalix.javasdk.annotations.Subscribe;
+import kalix.javasdk.client.ComponentClient;
+
+// Reports generated geo orders that are no longer in flight back to their generator, see GeneratorEntity.State
+// effectiveRatePerSecond. Reports for the same generator are batched into one count.
+//
+@Subscribe.EventSourcedEntity(value = GeoOrderEntity.class, ignoreUnknown = true)
+public class GeoOrderToGeneratorAction extends Action {
+  private static final Logger log = LoggerFactory.getLogger(GeoOrderToGeneratorAction.class);
+  private static final UpdateBatcher<String> batcher = resolvedBatcher();
+  private final ComponentClient componentClient;
+
+  public GeoOrderToGeneratorAction(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  public Effect<String> on(GeoOrderEntity.GeoOrderReadyToShipEvent event) {
+    log.info("Event: {}", event);
+
+    return event.wasInFlight() ? callFor(event.generatorId(), event.geoOrderId()) : effects().reply("OK");
+  }
+
+  public Effect<String> on(GeoOrderEntity.GeoOrderBackOrderedEvent event) {
+    log.info("Event: {}", event);
+
+    return event.wasInFlight() ? callFor(event.generatorId(), event.geoOrderId()) : effects().reply("OK");
+  }
+
+  private Effect<String> callFor(String generatorId, String geoOrderId) {
+    if (generatorId == null) {
+      return effects().reply("OK");
+    }
+    if (batcher.isEnabled()) {
+      return effects().asyncReply(batcher.add(generatorId, geoOrderId, geoOrderIds -> componentClient.forEventSourcedEntity(generatorId)
+          .call(GeneratorEntity::geoOrdersResolved)
+          .params(new GeneratorEntity.GeoOrdersResolvedCommand(generatorId, geoOrderIds.size()))
+          .execute()));
+    }
+    return effects().forward(componentClient.forEventSourcedEntity(generatorId)
+        .call(GeneratorEntity::geoOrdersResolved)
+        .params(new GeneratorEntity.GeoOrdersResolvedCommand(generatorId, 1)));
+  }
+
+  private static UpdateBatcher<String> resolvedBatcher() {
+    var config = ConfigFactory.load().getConfig("earth-ship.generator.resolved-batch");
+    return new UpdateBatcher<>(config.getDuration("window"), config.getInt("size"));
+  }
+}
@@ -1,10 +1,14 @@
 package io.example.map;
 
 import static io.example.map.WorldMap.*;
+import static io.example.map.WorldMapTiles.regionIdFor;
+import static io.example.map.WorldMapTiles.regionKeyAt;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.typesafe.config.ConfigFactory;
+
 import io.example.LogEvent;
 import kalix.javasdk.action.Action;
 import kalix.javasdk.annotations.Subscribe;
@@ -13,6 +17,7 @@ import kalix.javasdk.client.ComponentClient;
 @Subscribe.EventSourcedEntity(value = GeoOrderEntity.class, ignoreUnknown = true)
 public class GeoOrderToRegionAction extends Action {
   private static final Logger log = LoggerFactory.getLogger(GeoOrderToRegionAction.class);
+  private static final UpdateBatcher<Region> batcher = regionUpdateBatcher();
   private final ComponentClient componentClient;
 
   public GeoOrderToRegionAction(ComponentClient componentClient) {
@@ -22,31 +27,42 @@ public class GeoOrderToRegionAction extends Action {
   public Effect<String> on(GeoOrderEntity.GeoOrderCreatedEvent event) {
     log.info("Event: {}", event);
 
-    return callFor(event.geoOrderId(), event.position(), false, "color yellow");
+    return callFor(event.geoOrderId(), event.position(), false, false, "color yellow");
   }
 
   public Effect<String> on(GeoOrderEntity.GeoOrderReadyToShipEvent event) {
     log.info("Event: {}", event);
 
-    return callFor(event.geoOrderId(), event.position(), false, "color green");
+    return callFor(event.geoOrderId(), event.position(), false, true, "color green");
   }
 
   public Effect<String> on(GeoOrderEntity.GeoOrderBackOrderedEvent event) {
     log.info("Event: {}", event);
 
-    return callFor(event.geoOrderId(), event.position(), true, "color red");
+    return callFor(event.geoOrderId(), event.position(), true, false, "color red");
   }
 
-  private Effect<String> callFor(String geoOrderId, LatLng position, boolean alarmOn, String message) {
-    var subRegion = new Region(zoomMax + 1, position, position, 1, alarmOn ? 1 : 0);
-    var region = regionAbove(subRegion);
-    var regionId = regionIdFor(region);
+  private Effect<String> callFor(String geoOrderId, LatLng position, boolean alarmOn, boolean readyToShip, String message) {
+    var subRegion = new Region(zoomMax + 1, position, position, 1, alarmOn ? 1 : 0, readyToShip ? 1 : 0, position.lat(), position.lng());
+    var regionId = regionIdFor(regionKeyAt(zoomMax, position.lat(), position.lng()));
 
     LogEvent.log("GeoOrder", geoOrderId, "Region", regionId, message);
 
+    if (batcher.isEnabled()) {
+      return effects().asyncReply(batcher.add(regionId, subRegion, subRegions -> componentClient.forEventSourcedEntity(regionId)
+          .call(RegionEntity::updateSubRegions)
+          .params(new RegionEntity.UpdateSubRegionsCommand(subRegions))
+          .execute()));
+    }
+
     var command = new RegionEntity.UpdateSubRegionCommand(subRegion);
     return effects().forward(componentClient.forEventSourcedEntity(regionId)
         .call(RegionEntity::updateSubRegion)
         .params(command));
   }
+
+  private static UpdateBatcher<Region> regionUpdateBatcher() {
+    var config = ConfigFactory.load().getConfig("earth-ship.region.geo-order-batch");
+    return new UpdateBatcher<>(config.getDuration("window"), config.getInt("size"));
+  }
 }
@@ -1,6 +1,8 @@
 package io.example.map;
 
+import java.time.Instant;
 import java.util.Collection;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,17 +10,19 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import io.example.map.WorldMap.LatLng;
 import kalix.javasdk.view.View;
 import kalix.javasdk.annotations.Query;
 import kalix.javasdk.annotations.Subscribe;
 import kalix.javasdk.annotations.Table;
 import kalix.javasdk.annotations.ViewId;
 
-@ViewId("geo-orders-by-location")
+@ViewId("geo-orders-by-location-v2")
 @Table("geo_orders_by_location")
 @Subscribe.EventSourcedEntity(value = GeoOrderEntity.class, ignoreUnknown = true)
-public class GeoOrdersByLocationView extends View<GeoOrderEntity.State> {
+public class GeoOrdersByLocationView extends View<GeoOrdersByLocationView.GeoOrderViewRow> {
   private static final Logger log = LoggerFactory.getLogger(GeoOrdersByLocationView.class);
+  static final int[] tileZooms = { 10, 13, 16 };
 
   @GetMapping("/geo-orders/by-location/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
   @Query("""
@@ -40,25 +44,139 @@ public class GeoOrdersByLocationView extends View<GeoOrderEntity.State> {
     return null;
   }
 
+  // The tile queries select the rows in the regions that cover the viewport with an equality match on one indexed
+  // region ID column, and then drop the rows of the edge regions that are outside the viewport. See ByTilesQueryAction.
+
+  @GetMapping("/geo-orders/by-tiles-10/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  @Query("""
+      SELECT * AS geoOrders, next_page_token() AS nextPageToken, has_more() AS hasMore
+        FROM geo_orders_by_location
+       WHERE regionId10 = ANY(:regionIds)
+         AND position.lat <= :topLeftLat
+         AND position.lng >= :topLeftLng
+         AND position.lat >= :botRightLat
+         AND position.lng <= :botRightLng
+      OFFSET page_token_offset(:nextPageToken)
+       LIMIT 1000
+      """)
+  public GeoOrders getGeoOrdersByTiles10(
+      @RequestParam List<String> regionIds,
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng,
+      @RequestParam(required = false) String nextPageToken) {
+    return null;
+  }
+
+  @GetMapping("/geo-orders/by-tiles-13/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  @Query("""
+      SELECT * AS geoOrders, next_page_token() AS nextPageToken, has_more() AS hasMore
+        FROM geo_orders_by_location
+       WHERE regionId13 = ANY(:regionIds)
+         AND position.lat <= :topLeftLat
+         AND position.lng >= :topLeftLng
+         AND position.lat >= :botRightLat
+         AND position.lng <= :botRightLng
+      OFFSET page_token_offset(:nextPageToken)
+       LIMIT 1000
+      """)
+  public GeoOrders getGeoOrdersByTiles13(
+      @RequestParam List<String> regionIds,
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng,
+      @RequestParam(required = false) String nextPageToken) {
+    return null;
+  }
+
+  @GetMapping("/geo-orders/by-tiles-16/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  @Query("""
+      SELECT * AS geoOrders, next_page_token() AS nextPageToken, has_more() AS hasMore
+        FROM geo_orders_by_location
+       WHERE regionId16 = ANY(:regionIds)
+         AND position.lat <= :topLeftLat
+         AND position.lng >= :topLeftLng
+         AND position.lat >= :botRightLat
+         AND position.lng <= :botRightLng
+      OFFSET page_token_offset(:nextPageToken)
+       LIMIT 1000
+      """)
+  public GeoOrders getGeoOrdersByTiles16(
+      @RequestParam List<String> regionIds,
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng,
+      @RequestParam(required = false) String nextPageToken) {
+    return null;
+  }
+
   @Override
-  public GeoOrderEntity.State emptyState() {
-    return GeoOrderEntity.State.empty();
+  public GeoOrderViewRow emptyState() {
+    return GeoOrderViewRow.empty();
   }
 
-  public UpdateEffect<GeoOrderEntity.State> on(GeoOrderEntity.GeoOrderCreatedEvent event) {
+  public UpdateEffect<GeoOrderViewRow> on(GeoOrderEntity.GeoOrderCreatedEvent event) {
     log.debug("State: {}\n_Event: {}", viewState(), event);
     return effects().updateState(viewState().on(event));
   }
 
-  public UpdateEffect<GeoOrderEntity.State> on(GeoOrderEntity.GeoOrderReadyToShipEvent event) {
+  public UpdateEffect<GeoOrderViewRow> on(GeoOrderEntity.GeoOrderReadyToShipEvent event) {
     log.debug("State: {}\n_Event: {}", viewState(), event);
     return effects().updateState(viewState().on(event));
   }
 
-  public UpdateEffect<GeoOrderEntity.State> on(GeoOrderEntity.GeoOrderBackOrderedEvent event) {
+  public UpdateEffect<GeoOrderViewRow> on(GeoOrderEntity.GeoOrderBackOrderedEvent event) {
     log.debug("State: {}\n_Event: {}", viewState(), event);
     return effects().updateState(viewState().on(event));
   }
 
-  public record GeoOrders(Collection<GeoOrderEntity.State> geoOrders, String nextPageToken, boolean hasMore) {}
+  // The geo order state plus the canonical IDs of the regions at the tile zooms that contain the geo order
+  public record GeoOrderViewRow(
+      String geoOrderId,
+      LatLng position,
+      Instant readyToShipAt,
+      Instant backOrderedAt,
+      String generatorId,
+      String regionId10,
+      String regionId13,
+      String regionId16) {
+
+    static GeoOrderViewRow empty() {
+      return of(GeoOrderEntity.State.empty());
+    }
+
+    static GeoOrderViewRow of(GeoOrderEntity.State state) {
+      var regionIds = WorldMapTiles.regionIdsAt(tileZooms, state.position().lat(), state.position().lng());
+      return new GeoOrderViewRow(
+          state.geoOrderId(),
+          state.position(),
+          state.readyToShipAt(),
+          state.backOrderedAt(),
+          state.generatorId(),
+          regionIds[0],
+          regionIds[1],
+          regionIds[2]);
+    }
+
+    GeoOrderEntity.State state() {
+      return new GeoOrderEntity.State(geoOrderId, position, readyToShipAt, backOrderedAt, generatorId);
+    }
+
+    GeoOrderViewRow on(GeoOrderEntity.GeoOrderCreatedEvent event) {
+      return of(state().on(event));
+    }
+
+    GeoOrderViewRow on(GeoOrderEntity.GeoOrderReadyToShipEvent event) {
+      return of(state().on(event));
+    }
+
+    GeoOrderViewRow on(GeoOrderEntity.GeoOrderBackOrderedEvent event) {
+      return of(state().on(event));
+    }
+  }
+
+  public record GeoOrders(Collection<GeoOrderViewRow> geoOrders, String nextPageToken, boolean hasMore) {}
 }
@@ -0,0 +1,32 @@
+package io.example.map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import kalix.javasdk.JsonMigration;
+
+// Version 0 GeoOrdersToGenerateEvents hold the generated geo orders in the geoOrders field. Version 1 events hold the
+// seed and the index of the first geo order instead. Version 0 events are moved to legacyGeoOrders, which is used as
+// is, so the geo orders of old events are not generated again with different positions.
+//
+// Version 2 events generate compact geo order IDs, see GeoOrderIds. Version 1 events are marked with
+// legacyGeoOrderIds, so a replayed or redelivered event creates the same geo orders it created the first time.
+//
+public class GeoOrdersToGenerateEventMigration extends JsonMigration {
+
+  @Override
+  public int currentVersion() {
+    return 2;
+  }
+
+  @Override
+  public JsonNode transform(int fromVersion, JsonNode json) {
+    if (fromVersion < 1 && json instanceof ObjectNode objectNode && objectNode.has("geoOrders")) {
+      objectNode.set("legacyGeoOrders", objectNode.remove("geoOrders"));
+    }
+    if (fromVersion < 2 && json instanceof ObjectNode objectNode) {
+      objectNode.put("legacyGeoOrderIds", true);
+    }
+    return json;
+  }
+}
@@ -0,0 +1,77 @@
+package io.example.map;
+
+import static io.example.map.WorldMap.*;
+import static io.example.map.WorldMapTiles.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import kalix.javasdk.action.Action;
+import kalix.javasdk.annotations.Subscribe;
+import kalix.javasdk.client.ComponentClient;
+
+// Moves the geo orders of the zoom 18 region entities with legacy IDs into the packed key region entities.
+//
+// The legacy entities are no longer updated, and the views ignore them, so without this the geo orders that were only
+// recorded under a legacy ID would be missing from the counts, and the next update of such a geo order would count it as
+// a new geo order. Each geo order in a legacy journal is sent to the packed key entity of its position, where it is only
+// kept if that entity has not had an update for it, see GeoOrderStatusTable.putMigrated. The legacy regions above zoom
+// 18 are not moved, they are rebuilt from the zoom 18 releases.
+//
+@Subscribe.EventSourcedEntity(value = RegionEntity.class, ignoreUnknown = true)
+public class LegacyRegionToRegionAction extends Action {
+  private static final Logger log = LoggerFactory.getLogger(LegacyRegionToRegionAction.class);
+  private final ComponentClient componentClient;
+
+  public LegacyRegionToRegionAction(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  public Effect<String> on(RegionEntity.UpdatedSubRegionEvent event) {
+    return migrate(List.of(event.subRegion()));
+  }
+
+  public Effect<String> on(RegionEntity.UpdatedSubRegionsEvent event) {
+    return migrate(event.subRegions());
+  }
+
+  private Effect<String> migrate(List<Region> subRegions) {
+    var legacyRegionId = actionContext().eventSubject().orElse("");
+    if (!isLegacyGeoOrderRegion(legacyRegionId, subRegions)) {
+      return effects().reply("OK");
+    }
+    log.info("Legacy region: {}, sub-regions: {}", legacyRegionId, subRegions.size());
+
+    var results = subRegionsByRegionId(subRegions).entrySet().stream()
+        .map(entry -> componentClient.forEventSourcedEntity(entry.getKey())
+            .call(RegionEntity::migrateLegacySubRegions)
+            .params(new RegionEntity.MigrateLegacySubRegionsCommand(legacyRegionId, entry.getValue()))
+            .execute()
+            .toCompletableFuture())
+        .toArray(CompletableFuture[]::new);
+
+    return effects().asyncReply(CompletableFuture.allOf(results).thenApply(__ -> "OK"));
+  }
+
+  // Only the geo orders of zoom 18 regions have to be moved
+  static boolean isLegacyGeoOrderRegion(String regionId, List<Region> subRegions) {
+    return !isCanonicalRegionId(regionId)
+        && !subRegions.isEmpty()
+        && subRegions.stream().allMatch(subRegion -> subRegion.zoom() > zoomMax);
+  }
+
+  // A legacy region may overlap more than one packed key region, so the geo orders are grouped by the region of their
+  // position, as GeoOrderToRegionAction does, keeping their journal order
+  static LinkedHashMap<String, List<Region>> subRegionsByRegionId(List<Region> subRegions) {
+    return subRegions.stream()
+        .collect(Collectors.groupingBy(
+            subRegion -> regionIdFor(regionKeyAt(zoomMax, subRegion.topLeft().lat(), subRegion.topLeft().lng())),
+            LinkedHashMap::new,
+            Collectors.toList()));
+  }
+}
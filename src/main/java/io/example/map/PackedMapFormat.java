@@ -0,0 +1,127 @@
+package io.example.map;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Optional;
+
+import kalix.javasdk.HttpResponse;
+import kalix.javasdk.StatusCode;
+
+// A packed binary reply format for the map endpoints, sent instead of JSON when the request accepts its media type.
+//
+// A reply is a 32 byte header, the next page token, then fixed width columns, all little endian:
+//
+// header: "ESPK", version u8, kind u8 (1 regions, 2 geo orders), flags u8 (1 has more), zoom u8, row count u32,
+//         next page token length u16, 0 u16, geo order IDs length u32, 0 u32, watermark f64
+// regions: row i32, col i32, top left lat i32, top left lng i32, bot right lat i32, bot right lng i32,
+//          geo order count i32, alarm count i32, ready count i32
+// geo orders: lat i32, lng i32, status u8 (0 created, 1 ready to ship, 2 back ordered), then the geo order IDs as
+//             UTF-8 separated by '\n'
+//
+// Coordinates are degrees times 10^7, about 1 cm. The token is padded to 4 bytes so the i32 columns are aligned and
+// can be read with typed arrays. The canonical region ID is "zoom-row-col", so region IDs are not sent. Geo order
+// times and generator IDs are not sent, the map only draws the status.
+//
+interface PackedMapFormat {
+  static final String mediaType = "application/vnd.earth-ship.packed";
+  static final byte version = 1;
+  static final byte kindRegions = 1;
+  static final byte kindGeoOrders = 2;
+  static final byte statusCreated = 0;
+  static final byte statusReadyToShip = 1;
+  static final byte statusBackOrdered = 2;
+  static final int headerBytes = 32;
+  static final double coordinateScale = 1e7;
+
+  static boolean isAccepted(Optional<String> accept) {
+    return accept.map(a -> a.contains(mediaType)).orElse(false);
+  }
+
+  static HttpResponse response(byte[] packed) {
+    return HttpResponse.of(StatusCode.Success.OK, mediaType, packed);
+  }
+
+  static byte[] packRegions(int zoom, Collection<RegionByLocationView.RegionViewRow> regions, String nextPageToken, boolean hasMore, long watermark) {
+    var token = tokenBytes(nextPageToken);
+    var count = regions.size();
+    var buffer = header(kindRegions, zoom, count, hasMore, token, 0, watermark, 9 * Integer.BYTES * count);
+
+    var columns = new int[9][count];
+    var i = 0;
+    for (var row : regions) {
+      var regionKey = WorldMapTiles.regionKeyFor(row.regionId());
+      var region = row.region();
+      columns[0][i] = regionKey == WorldMapTiles.noRegionKey ? -1 : (int) WorldMapTiles.rowOf(regionKey);
+      columns[1][i] = regionKey == WorldMapTiles.noRegionKey ? -1 : (int) WorldMapTiles.colOf(regionKey);
+      columns[2][i] = quantize(region.topLeft().lat());
+      columns[3][i] = quantize(region.topLeft().lng());
+      columns[4][i] = quantize(region.botRight().lat());
+      columns[5][i] = quantize(region.botRight().lng());
+      columns[6][i] = row.geoOrderCount();
+      columns[7][i] = row.geoOrderAlarmCount();
+      columns[8][i] = region.geoOrderReadyCount();
+      i++;
+    }
+    for (var column : columns) {
+      buffer.asIntBuffer().put(column);
+      buffer.position(buffer.position() + Integer.BYTES * count);
+    }
+    return buffer.array();
+  }
+
+  static byte[] packGeoOrders(Collection<GeoOrdersByLocationView.GeoOrderViewRow> geoOrders, String nextPageToken, boolean hasMore) {
+    var token = tokenBytes(nextPageToken);
+    var count = geoOrders.size();
+    var geoOrderIds = String.join("\n", geoOrders.stream().map(GeoOrdersByLocationView.GeoOrderViewRow::geoOrderId).toList())
+        .getBytes(StandardCharsets.UTF_8);
+    var buffer = header(kindGeoOrders, 0, count, hasMore, token, geoOrderIds.length, 0, 2 * Integer.BYTES * count + count + geoOrderIds.length);
+
+    var lats = new int[count];
+    var lngs = new int[count];
+    var statuses = new byte[count];
+    var i = 0;
+    for (var geoOrder : geoOrders) {
+      lats[i] = quantize(geoOrder.position().lat());
+      lngs[i] = quantize(geoOrder.position().lng());
+      statuses[i] = geoOrder.backOrderedAt() != null
+          ? statusBackOrdered
+          : geoOrder.readyToShipAt() != null ? statusReadyToShip : statusCreated;
+      i++;
+    }
+    buffer.asIntBuffer().put(lats);
+    buffer.position(buffer.position() + Integer.BYTES * count);
+    buffer.asIntBuffer().put(lngs);
+    buffer.position(buffer.position() + Integer.BYTES * count);
+    buffer.put(statuses).put(geoOrderIds);
+    return buffer.array();
+  }
+
+  static int quantize(double degrees) {
+    return (int) Math.round(degrees * coordinateScale);
+  }
+
+  private static ByteBuffer header(byte kind, int zoom, int count, boolean hasMore, byte[] token, int geoOrderIdsLength, long watermark, int bodyBytes) {
+    var paddedTokenLength = (token.length + 3) & ~3;
+    var buffer = ByteBuffer.allocate(headerBytes + paddedTokenLength + bodyBytes).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put((byte) 'E').put((byte) 'S').put((byte) 'P').put((byte) 'K')
+        .put(version)
+        .put(kind)
+        .put((byte) (hasMore ? 1 : 0))
+        .put((byte) zoom)
+        .putInt(count)
+        .putShort((short) token.length)
+        .putShort((short) 0)
+        .putInt(geoOrderIdsLength)
+        .putInt(0)
+        .putDouble(watermark)
+        .put(token);
+    buffer.position(headerBytes + paddedTokenLength);
+    return buffer;
+  }
+
+  private static byte[] tokenBytes(String nextPageToken) {
+    return nextPageToken == null ? new byte[0] : nextPageToken.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import io.example.map.WorldMap.Region;
 import kalix.javasdk.view.View;
@@ -13,8 +14,9 @@ import kalix.javasdk.annotations.Query;
 import kalix.javasdk.annotations.Subscribe;
 import kalix.javasdk.annotations.Table;
 import kalix.javasdk.annotations.ViewId;
+import reactor.core.publisher.Flux;
 
-@ViewId("regions-by-location-v1")
+@ViewId("regions-by-location-v4")
 @Table("regions_by_location")
 @Subscribe.EventSourcedEntity(value = RegionEntity.class, ignoreUnknown = true)
 public class RegionByLocationView extends View<RegionByLocationView.RegionViewRow> {
@@ -45,17 +47,95 @@ public class RegionByLocationView extends View<RegionByLocationView.RegionViewRo
     return null;
   }
 
+  // The regions at the zoom that overlap the bounds, then each region again whenever it is released. A region releases
+  // its state at most once per flush window for its zoom, see RegionToRegionAction, which is what throttles the updates
+  // of busy regions. Regions that become empty are sent too, so clients can remove them.
+  @GetMapping("/regions/by-location-stream/{zoom}/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  @Query(value = """
+      SELECT * FROM regions_by_location
+       WHERE region.zoom = :zoom
+         AND region.topLeft.lat >= :botRightLat
+         AND region.topLeft.lng <= :botRightLng
+         AND region.botRight.lat <= :topLeftLat
+         AND region.botRight.lng >= :topLeftLng
+      """, streamUpdates = true)
+  public Flux<RegionViewRow> streamRegionsByLocation(
+      @PathVariable Integer zoom,
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng) {
+    return null;
+  }
+
+  // The regions at the zoom that overlap the bounds and were released after since, a page at a time, including regions
+  // that became empty. See RegionChangesAction.
+  @GetMapping("/regions/by-location-since/{zoom}/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}/{since}")
+  @Query("""
+      SELECT * AS regions, next_page_token() AS nextPageToken, has_more() AS hasMore
+        FROM regions_by_location
+       WHERE region.zoom = :zoom
+         AND region.topLeft.lat >= :botRightLat
+         AND region.topLeft.lng <= :botRightLng
+         AND region.botRight.lat <= :topLeftLat
+         AND region.botRight.lng >= :topLeftLng
+         AND releasedAtMs > :since
+      OFFSET page_token_offset(:nextPageToken)
+       LIMIT 1000
+      """)
+  public RegionsPage getRegionsByLocationSince(
+      @PathVariable Integer zoom,
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng,
+      @PathVariable Long since,
+      @RequestParam(required = false) String nextPageToken) {
+    return null;
+  }
+
+  // The non-empty regions at the zoom that overlap the bounds, a page at a time, see GeoOrderClustersAction
+  @GetMapping("/regions/by-location-paged/{zoom}/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  @Query("""
+      SELECT * AS regions, next_page_token() AS nextPageToken, has_more() AS hasMore
+        FROM regions_by_location
+       WHERE region.zoom = :zoom
+         AND region.topLeft.lat >= :botRightLat
+         AND region.topLeft.lng <= :botRightLng
+         AND region.botRight.lat <= :topLeftLat
+         AND region.botRight.lng >= :topLeftLng
+         AND geoOrderCount > 0
+      OFFSET page_token_offset(:nextPageToken)
+       LIMIT 1000
+      """)
+  public RegionsPage getRegionsByLocationPaged(
+      @PathVariable Integer zoom,
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng,
+      @RequestParam(required = false) String nextPageToken) {
+    return null;
+  }
+
   public UpdateEffect<RegionViewRow> on(RegionEntity.ReleasedCurrentStateEvent event) {
     log.debug("State: {}\n_Event: {}", viewState(), event);
-    return effects().updateState(RegionViewRow.on(event));
+    var regionId = updateContext().eventSubject().orElse("");
+    if (!WorldMapTiles.isCanonicalRegionId(regionId)) {
+      return effects().ignore(); // region entities with legacy IDs are superseded by the packed region key entities
+    }
+    return effects().updateState(RegionViewRow.on(regionId, event));
   }
 
-  public record RegionViewRow(Region region, int geoOrderCount, int geoOrderAlarmCount) {
+  // Regions released before releasedAtMs was kept in the event get 1, so they are only in queries since 0
+  public record RegionViewRow(String regionId, Region region, int geoOrderCount, int geoOrderAlarmCount, long releasedAtMs) {
 
-    static RegionViewRow on(RegionEntity.ReleasedCurrentStateEvent event) {
-      return new RegionViewRow(event.region(), event.region().geoOrderCount(), event.region().geoOrderAlarmCount());
+    static RegionViewRow on(String regionId, RegionEntity.ReleasedCurrentStateEvent event) {
+      return new RegionViewRow(regionId, event.region(), event.region().geoOrderCount(), event.region().geoOrderAlarmCount(), Math.max(1, event.releasedAtMs()));
     }
   }
 
   public record Regions(Collection<RegionViewRow> regions) {}
+
+  public record RegionsPage(Collection<RegionViewRow> regions, String nextPageToken, boolean hasMore) implements ViewPages.Page<RegionViewRow> {}
 }
@@ -0,0 +1,81 @@
+package io.example.map;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletionStage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.typesafe.config.ConfigFactory;
+
+import kalix.javasdk.HttpResponse;
+import kalix.javasdk.Metadata;
+import kalix.javasdk.action.Action;
+import kalix.javasdk.client.ComponentClient;
+
+// Incremental viewport queries of the regions by location view.
+//
+// A client first asks with since 0 for all the regions in the viewport, then with the watermark of the previous reply
+// for only the regions released after it, including regions that became empty. The watermark trails the current time
+// by the overlap, so regions that reach the view late, or that were released on a node with a slower clock, are still
+// in the next reply. Regions in the overlap may be sent twice, which is harmless as clients replace regions by ID.
+//
+// Watermarks are whole seconds, so clients that poll every second send the same URLs and the replies, cacheable for
+// one second, can be shared by an HTTP cache. When a reply has more pages the pages are fetched with the same since,
+// and the watermark of the first page is used for the next query.
+//
+// Changes are replied in the packed map format when the request accepts it, see PackedMapFormat, else as JSON.
+//
+public class RegionChangesAction extends Action {
+  private static final Logger log = LoggerFactory.getLogger(RegionChangesAction.class);
+  static final Duration overlap = ConfigFactory.load().getDuration("earth-ship.region.changes-overlap");
+  private final ComponentClient componentClient;
+
+  public RegionChangesAction(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  @GetMapping("/regions/changes/{zoom}/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  public Effect<HttpResponse> getRegionChanges(
+      @PathVariable Integer zoom,
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng,
+      @RequestParam(required = false) Long since,
+      @RequestParam(required = false) String nextPageToken) {
+    var sinceMs = since == null ? 0 : since;
+    var watermark = watermarkFor(System.currentTimeMillis());
+    log.debug("Region changes, zoom: {}, since: {}, watermark: {}", zoom, sinceMs, watermark);
+
+    var packed = PackedMapFormat.isAccepted(actionContext().metadata().get("Accept"));
+    var result = pageFor(zoom, topLeftLat, topLeftLng, botRightLat, botRightLng, sinceMs, nextPageToken)
+        .thenApply(page -> new RegionChanges(page.regions(), Math.max(sinceMs, watermark), page.nextPageToken(), page.hasMore()))
+        .thenApply(changes -> packed
+            ? PackedMapFormat.response(PackedMapFormat.packRegions(zoom, changes.regions(), changes.nextPageToken(), changes.hasMore(), changes.watermark()))
+            : HttpResponse.ok(changes));
+    return effects().asyncReply(result, Metadata.EMPTY.add("Cache-Control", "public, max-age=1").add("Vary", "Accept"));
+  }
+
+  // The top regions are few and computed in memory, so they are all sent each time
+  private CompletionStage<RegionByLocationView.RegionsPage> pageFor(int zoom, double topLeftLat, double topLeftLng, double botRightLat, double botRightLng, long since, String nextPageToken) {
+    if (TopRegions.isTopZoom(zoom)) {
+      return TopRegions.regionsIn(componentClient, zoom, WorldMap.Region.from(zoom, topLeftLat, topLeftLng, botRightLat, botRightLng))
+          .thenApply(rows -> new RegionByLocationView.RegionsPage(rows, "", false));
+    }
+    return componentClient.forView()
+        .call(RegionByLocationView::getRegionsByLocationSince)
+        .params(zoom, topLeftLat, topLeftLng, botRightLat, botRightLng, since, nextPageToken)
+        .execute();
+  }
+
+  static long watermarkFor(long nowMs) {
+    return Math.max(0, (nowMs - overlap.toMillis()) / 1000 * 1000);
+  }
+
+  public record RegionChanges(Collection<RegionByLocationView.RegionViewRow> regions, long watermark, String nextPageToken, boolean hasMore) {}
+}
@@ -1,7 +1,10 @@
 package io.example.map;
 
 import static io.example.map.WorldMap.regionAbove;
+import static io.example.map.WorldMap.zoomMax;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -13,6 +16,8 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import io.example.map.WorldMap.Region;
 import kalix.javasdk.eventsourcedentity.EventSourcedEntity;
 import kalix.javasdk.eventsourcedentity.EventSourcedEntityContext;
@@ -42,22 +47,63 @@ public class RegionEntity extends EventSourcedEntity<RegionEntity.State, RegionE
       return effects().error("Cannot add sub-region with zoom < 1, zoom: %d".formatted(command.subRegion().zoom()));
     }
     log.info("C-EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+    var events = currentState().eventsFor(command);
+    RegionRollupCounters.update(events.isEmpty());
     return effects()
-        .emitEvents(currentState().eventsFor(command))
+        .emitEvents(events)
+        .thenReply(__ -> "OK");
+  }
+
+  @PutMapping("/update-sub-regions")
+  public Effect<String> updateSubRegions(@RequestBody UpdateSubRegionsCommand command) {
+    if (command.subRegions().isEmpty()) {
+      return effects().reply("OK");
+    }
+    if (command.subRegions().stream().anyMatch(subRegion -> subRegion.zoom() < 1)) {
+      return effects().error("Cannot add sub-regions with zoom < 1");
+    }
+    log.info("C-EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+    var events = currentState().eventsFor(command);
+    RegionRollupCounters.update(events.isEmpty());
+    return effects()
+        .emitEvents(events)
         .thenReply(__ -> "OK");
   }
 
   @PutMapping("/release-current-state")
   public Effect<String> releaseCurrentState(@RequestBody ReleaseCurrentStateCommand command) {
+    log.info("C-EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
+    var events = currentState().eventsFor(command);
+    RegionRollupCounters.release(events.isEmpty());
+    return effects()
+        .emitEvents(events)
+        .thenReply(__ -> "OK");
+  }
+
+  // Geo orders from the journal of a zoom 18 region entity with a legacy ID, see LegacyRegionToRegionAction
+  @PutMapping("/migrate-legacy-sub-regions")
+  public Effect<String> migrateLegacySubRegions(@RequestBody MigrateLegacySubRegionsCommand command) {
+    if (command.subRegions().isEmpty()) {
+      return effects().reply("OK");
+    }
+    if (command.subRegions().stream().anyMatch(subRegion -> subRegion.zoom() <= zoomMax)) {
+      return effects().error("Cannot migrate sub-regions that are not geo orders, legacy region: %s".formatted(command.legacyRegionId()));
+    }
     log.info("C-EntityId: {}\n_State: {}\n_Command: {}", entityId, currentState(), command);
     return effects()
-        .emitEvent(currentState().eventFor(command))
+        .emitEvents(currentState().eventsFor(command))
         .thenReply(__ -> "OK");
   }
 
+  // Releases stop at the persisted zoom, so the entities above it are no longer updated, see TopRegions
   @GetMapping()
   public Effect<RegionEntity.State> get(@PathVariable String regionId) {
     log.debug("EntityId: {}\n_State: {}\n_Get", entityId, currentState());
+    var regionKey = WorldMapTiles.regionKeyFor(regionId);
+    if (WorldMapTiles.isValid(regionKey) && TopRegions.isTopZoom(WorldMapTiles.zoomOf(regionKey))) {
+      return effects().error("Region: '%s', is computed from the zoom %d regions, get it from /regions/throughput/%s"
+          .formatted(regionId, TopRegions.persistedZoomMin, WorldMapTiles.regionIdFor(regionKey)));
+    }
     if (currentState().isEmpty()) {
       return effects().error("Region: '%s', not created".formatted(regionId));
     }
@@ -70,6 +116,18 @@ public class RegionEntity extends EventSourcedEntity<RegionEntity.State, RegionE
     return currentState().on(event);
   }
 
+  @EventHandler
+  public State on(UpdatedSubRegionsEvent event) {
+    log.info("E-EntityId: {}\n_State: {}\n_Event: {}", entityId, currentState(), event);
+    return currentState().on(event);
+  }
+
+  @EventHandler
+  public State on(MigratedLegacySubRegionsEvent event) {
+    log.info("E-EntityId: {}\n_State: {}\n_Event: {}", entityId, currentState(), event);
+    return currentState().on(event);
+  }
+
   @EventHandler
   public State on(UpdatedRegionEvent event) {
     log.info("E-EntityId: {}\n_State: {}\n_Event: {}", entityId, currentState(), event);
@@ -82,53 +140,237 @@ public class RegionEntity extends EventSourcedEntity<RegionEntity.State, RegionE
     return currentState().on(event);
   }
 
-  public record State(Region region, List<Region> subRegions, boolean hasChanged) {
+  public record State(Region region, List<Region> subRegions, GeoOrderStatusTable geoOrders, boolean hasChanged, RegionThroughput throughput) {
 
     static State empty() {
-      return new RegionEntity.State(Region.empty(), List.of(), false);
+      return new RegionEntity.State(Region.empty(), List.of(), null, false, RegionThroughput.empty());
     }
 
     boolean isEmpty() {
       return region.isEmpty();
     }
 
+    // No events are emitted when the update does not change the region counts, for example a redelivered geo order
+    // event or a status change that keeps the alarm state, so nothing is released to the regions above.
+    //
+    // An update is one event. The event carries the updated region when the region changes after it was released,
+    // which starts the flush window of the region, see RegionToRegionAction.
+    //
+    // An update of a geo order migrated from a legacy region is persisted even when it does not change the counts, so
+    // the migrated geo order is marked as updated and later legacy events for it are not applied.
     List<Event> eventsFor(UpdateSubRegionCommand command) {
       var newRegion = regionFor(region, command);
-      var updatedSubRegionEvent = new UpdatedSubRegionEvent(command.subRegion());
+      var updatedRegion = isGeoOrder(command.subRegion())
+          ? updateCounts(newRegion, geoOrderStatuses(), command.subRegion())
+          : newRegion.updateCounts(updateSubRegions(this.subRegions, command.subRegion()));
+
+      if (!countsChanged(updatedRegion)) {
+        return isMigrated(command.subRegion())
+            ? List.of(new UpdatedSubRegionEvent(command.subRegion()))
+            : List.of();
+      }
+      return List.of(new UpdatedSubRegionEvent(command.subRegion(), hasChanged ? null : updatedRegion));
+    }
+
+    // Only the sub-regions that change something are kept. The remaining changes may still cancel out, one geo order
+    // going into alarm while another leaves it, which is persisted without releasing the unchanged counts.
+    List<Event> eventsFor(UpdateSubRegionsCommand command) {
+      var newRegion = region.isEmpty() ? regionAbove(command.subRegions().get(0)) : region;
+      var allGeoOrders = command.subRegions().stream().allMatch(State::isGeoOrder);
+      var subRegions = allGeoOrders
+          ? changedGeoOrders(geoOrderStatuses(), command.subRegions())
+          : changedSubRegions(this.subRegions, command.subRegions());
 
-      if (hasChanged) {
-        return List.of(updatedSubRegionEvent);
+      if (subRegions.isEmpty()) {
+        return List.of();
       }
-      var subRegions = updateSubRegions(this.subRegions, command.subRegion());
-      var updateRegionEvent = new UpdatedRegionEvent(newRegion.updateCounts(subRegions));
+      var updatedRegion = allGeoOrders
+          ? updateCounts(newRegion, geoOrderStatuses(), subRegions)
+          : newRegion.updateCounts(subRegions.stream().reduce(this.subRegions, this::updateSubRegions, (a, b) -> b));
 
-      return List.of(updatedSubRegionEvent, updateRegionEvent);
+      return List.of(new UpdatedSubRegionsEvent(subRegions, hasChanged || !countsChanged(updatedRegion) ? null : updatedRegion));
     }
 
-    Event eventFor(ReleaseCurrentStateCommand command) {
+    // Only the legacy geo orders that change the table are kept, the ones already updated here are newer
+    List<Event> eventsFor(MigrateLegacySubRegionsCommand command) {
+      var newRegion = region.isEmpty() ? regionAbove(command.subRegions().get(0)) : region;
+      var state = this;
+      var subRegions = new ArrayList<Region>();
+      for (var subRegion : command.subRegions()) {
+        var migrated = state.applyMigrated(newRegion, subRegion);
+        if (migrated != state) {
+          subRegions.add(subRegion);
+        }
+        state = migrated;
+      }
+
+      if (subRegions.isEmpty()) {
+        return List.of();
+      }
+      return List.of(new MigratedLegacySubRegionsEvent(subRegions, hasChanged || !countsChanged(state.region) ? null : state.region));
+    }
+
+    // A region that has not changed since it was last released has nothing new for the regions above
+    List<Event> eventsFor(ReleaseCurrentStateCommand command) {
+      if (!hasChanged) {
+        return List.of();
+      }
       var newRegion = regionFor(region, command);
-      return new ReleasedCurrentStateEvent(newRegion);
+      return List.of(new ReleasedCurrentStateEvent(newRegion, System.currentTimeMillis()));
     }
 
     State on(UpdatedSubRegionEvent event) {
-      var newRegion = regionFor(region, event);
+      var state = apply(event.subRegion());
+      return new State(state.region, state.subRegions, state.geoOrders, hasChanged || countsChanged(state.region), throughput);
+    }
 
-      if (region.isEmpty()) {
-        var subRegions = List.of(event.subRegion());
-        return new State(newRegion.updateCounts(subRegions), subRegions, true);
+    State on(UpdatedSubRegionsEvent event) {
+      var state = this;
+      for (var subRegion : event.subRegions()) {
+        state = state.apply(subRegion);
       }
+      return new State(state.region, state.subRegions, state.geoOrders, hasChanged || countsChanged(state.region), throughput);
+    }
 
-      var newSubRegions = updateSubRegions(subRegions, event.subRegion());
-      return new State(newRegion.updateCounts(newSubRegions), newSubRegions, true);
+    State on(MigratedLegacySubRegionsEvent event) {
+      var newRegion = region.isEmpty() ? regionAbove(event.subRegions().get(0)) : region;
+      var state = this;
+      for (var subRegion : event.subRegions()) {
+        state = state.applyMigrated(newRegion, subRegion);
+      }
+      return new State(state.region, state.subRegions, state.geoOrders, hasChanged || countsChanged(state.region), throughput);
     }
 
     State on(UpdatedRegionEvent event) {
       var newRegion = regionFor(region, event);
-      return new State(newRegion, subRegions, true);
+      return new State(newRegion, subRegions, geoOrders, true, throughput);
     }
 
+    // Snapshots taken before the throughput was kept have none
     State on(ReleasedCurrentStateEvent event) {
-      return new State(region, subRegions, false);
+      var throughput = this.throughput == null
+          ? RegionThroughput.startingAt(event.region())
+          : this.throughput.on(event.region(), event.releasedAtMs());
+      return new State(region, subRegions, geoOrders, false, throughput);
+    }
+
+    private State apply(Region subRegion) {
+      var newRegion = region.isEmpty() ? regionAbove(subRegion) : region;
+
+      if (isGeoOrder(subRegion)) {
+        var key = GeoOrderStatusTable.keyFor(subRegion.topLeft());
+        var isNew = geoOrderStatuses().statusOf(key) == GeoOrderStatusTable.statusEmpty;
+        var geoOrders = geoOrderStatuses().put(key, GeoOrderStatusTable.statusFor(subRegion));
+        var updatedRegion = newRegion.withPositionSums()
+            .updateCounts(geoOrders.geoOrderCount(), geoOrders.geoOrderAlarmCount(), geoOrders.geoOrderReadyCount());
+        return new State(isNew ? updatedRegion.addPosition(subRegion.topLeft()) : updatedRegion, List.of(), geoOrders, hasChanged, throughput);
+      }
+
+      var newSubRegions = updateSubRegions(subRegions, subRegion);
+      return new State(newRegion.updateCounts(newSubRegions), newSubRegions, null, hasChanged, throughput);
+    }
+
+    private State applyMigrated(Region newRegion, Region subRegion) {
+      var key = GeoOrderStatusTable.keyFor(subRegion.topLeft());
+      var table = geoOrderStatuses();
+      var isNew = table.statusOf(key) == GeoOrderStatusTable.statusEmpty;
+      var geoOrders = table.putMigrated(key, GeoOrderStatusTable.statusFor(subRegion));
+      if (geoOrders == table) {
+        return this;
+      }
+      var updatedRegion = newRegion.withPositionSums()
+          .updateCounts(geoOrders.geoOrderCount(), geoOrders.geoOrderAlarmCount(), geoOrders.geoOrderReadyCount());
+      return new State(isNew ? updatedRegion.addPosition(subRegion.topLeft()) : updatedRegion, List.of(), geoOrders, hasChanged, throughput);
+    }
+
+    private boolean isMigrated(Region subRegion) {
+      return isGeoOrder(subRegion) && geoOrderStatuses().isMigrated(GeoOrderStatusTable.keyFor(subRegion.topLeft()));
+    }
+
+    // The position sums only change when the geo order count does
+    private boolean countsChanged(Region updatedRegion) {
+      return updatedRegion.geoOrderCount() != region.geoOrderCount()
+          || updatedRegion.geoOrderAlarmCount() != region.geoOrderAlarmCount()
+          || updatedRegion.geoOrderReadyCount() != region.geoOrderReadyCount();
+    }
+
+    // Zoom 18 regions receive one pseudo sub-region per geo order, at zoom 19 with the geo order position as both corners
+    private static boolean isGeoOrder(Region subRegion) {
+      return subRegion.zoom() > zoomMax;
+    }
+
+    // Zoom 18 regions created before the geo order status table kept the geo orders in the sub-region list
+    private GeoOrderStatusTable geoOrderStatuses() {
+      if (geoOrders != null) {
+        return geoOrders;
+      }
+      var table = new GeoOrderStatusTable();
+      for (var subRegion : subRegions) {
+        table = table.put(GeoOrderStatusTable.keyFor(subRegion.topLeft()), GeoOrderStatusTable.statusFor(subRegion));
+      }
+      return table;
+    }
+
+    private static Region updateCounts(Region region, GeoOrderStatusTable geoOrders, Region subRegion) {
+      var key = GeoOrderStatusTable.keyFor(subRegion.topLeft());
+      var status = GeoOrderStatusTable.statusFor(subRegion);
+      var updatedRegion = region.withPositionSums().updateCounts(
+          geoOrders.geoOrderCountWith(key),
+          geoOrders.geoOrderAlarmCountWith(key, status),
+          geoOrders.geoOrderReadyCountWith(key, status));
+      return geoOrders.statusOf(key) == GeoOrderStatusTable.statusEmpty ? updatedRegion.addPosition(subRegion.topLeft()) : updatedRegion;
+    }
+
+    // The counts after all the geo orders are put, a geo order may be in the list more than once
+    private static Region updateCounts(Region region, GeoOrderStatusTable geoOrders, List<Region> subRegions) {
+      var geoOrderCount = geoOrders.geoOrderCount();
+      var geoOrderAlarmCount = geoOrders.geoOrderAlarmCount();
+      var geoOrderReadyCount = geoOrders.geoOrderReadyCount();
+      var updatedRegion = region.withPositionSums();
+      var pending = new HashMap<Long, Byte>();
+      for (var subRegion : subRegions) {
+        var key = GeoOrderStatusTable.keyFor(subRegion.topLeft());
+        var status = GeoOrderStatusTable.statusFor(subRegion);
+        var previous = pending.containsKey(key) ? pending.get(key) : geoOrders.statusOf(key);
+        if (previous == GeoOrderStatusTable.statusEmpty) {
+          geoOrderCount++;
+          updatedRegion = updatedRegion.addPosition(subRegion.topLeft());
+        }
+        geoOrderAlarmCount += (status == GeoOrderStatusTable.statusAlarm ? 1 : 0) - (previous == GeoOrderStatusTable.statusAlarm ? 1 : 0);
+        geoOrderReadyCount += (status == GeoOrderStatusTable.statusReady ? 1 : 0) - (previous == GeoOrderStatusTable.statusReady ? 1 : 0);
+        pending.put(key, status);
+      }
+      return updatedRegion.updateCounts(geoOrderCount, geoOrderAlarmCount, geoOrderReadyCount);
+    }
+
+    private static List<Region> changedGeoOrders(GeoOrderStatusTable geoOrders, List<Region> subRegions) {
+      var pending = new HashMap<Long, Byte>();
+      return subRegions.stream()
+          .filter(subRegion -> {
+            var key = GeoOrderStatusTable.keyFor(subRegion.topLeft());
+            var status = GeoOrderStatusTable.statusFor(subRegion);
+            var isPending = pending.containsKey(key);
+            var previous = isPending ? pending.get(key) : geoOrders.statusOf(key);
+            pending.put(key, status);
+            return previous != status || !isPending && geoOrders.isMigrated(key);
+          })
+          .toList();
+    }
+
+    private List<Region> changedSubRegions(List<Region> subRegions, List<Region> updates) {
+      var current = new ArrayList<>(subRegions);
+      return updates.stream()
+          .filter(update -> {
+            var previous = current.stream().filter(r -> r.eqShape(update)).findFirst();
+            current.removeIf(r -> r.eqShape(update));
+            current.add(update);
+            return previous
+                .map(r -> r.geoOrderCount() != update.geoOrderCount()
+                    || r.geoOrderAlarmCount() != update.geoOrderAlarmCount()
+                    || r.geoOrderReadyCount() != update.geoOrderReadyCount())
+                .orElse(update.geoOrderCount() != 0 || update.geoOrderAlarmCount() != 0);
+          })
+          .toList();
     }
 
     private Region regionFor(Region region, UpdateSubRegionCommand command) {
@@ -145,13 +387,6 @@ public class RegionEntity extends EventSourcedEntity<RegionEntity.State, RegionE
       return command.region();
     }
 
-    private Region regionFor(Region region, UpdatedSubRegionEvent event) {
-      if (!region.isEmpty()) {
-        return region;
-      }
-      return regionAbove(event.subRegion());
-    }
-
     private Region regionFor(Region region, UpdatedRegionEvent event) {
       if (!region.isEmpty()) {
         return region;
@@ -172,13 +407,35 @@ public class RegionEntity extends EventSourcedEntity<RegionEntity.State, RegionE
 
   public record UpdateSubRegionCommand(Region subRegion) {}
 
-  public record UpdatedSubRegionEvent(Region subRegion) implements Event {}
+  public record UpdatedSubRegionEvent(Region subRegion, @JsonInclude(JsonInclude.Include.NON_NULL) Region region) implements Event {
+    public UpdatedSubRegionEvent(Region subRegion) {
+      this(subRegion, null);
+    }
+  }
+
+  public record UpdateSubRegionsCommand(List<Region> subRegions) {}
+
+  public record UpdatedSubRegionsEvent(List<Region> subRegions, @JsonInclude(JsonInclude.Include.NON_NULL) Region region) implements Event {
+    public UpdatedSubRegionsEvent(List<Region> subRegions) {
+      this(subRegions, null);
+    }
+  }
+
+  public record MigrateLegacySubRegionsCommand(String legacyRegionId, List<Region> subRegions) {}
+
+  public record MigratedLegacySubRegionsEvent(List<Region> subRegions, @JsonInclude(JsonInclude.Include.NON_NULL) Region region) implements Event {}
 
+  // Emitted before the updated region was carried by the sub-region events, kept to replay older journals
   public record UpdatedRegionEvent(Region region) implements Event {}
 
   public record ReleaseCurrentStateCommand(Region region) {}
 
-  public record ReleasedCurrentStateEvent(Region region) implements Event {}
+  // releasedAtMs is 0 in events released before it was kept
+  public record ReleasedCurrentStateEvent(Region region, long releasedAtMs) implements Event {
+    public ReleasedCurrentStateEvent(Region region) {
+      this(region, 0);
+    }
+  }
 
   public record PingRequest(Region region) {}
 
@@ -0,0 +1,156 @@
+package io.example.map;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import io.example.map.WorldMap.Region;
+
+// Geo order counts in a lat/lng rectangle from the region aggregates, walking the region tree like a quadtree.
+//
+// Starting at zoom 0, each non-empty region that overlaps the rectangle is either inside it, and its counts are taken
+// whole, or crosses an edge of the rectangle, and the walk descends into its sub-regions. So only the regions along
+// the edges are loaded at each zoom, about the perimeter of the rectangle in regions, not its area.
+//
+// Regions that still cross an edge at the max zoom, or when descending would load more than the max tiles, are
+// counted pro rata by the part of their area inside the rectangle, and the counts are then estimates.
+//
+interface RegionRangeCounts {
+
+  // The non-empty regions at the zoom that overlap the bounds
+  interface RegionLoader {
+    CompletionStage<List<Region>> regionsIn(int zoom, Region bounds);
+  }
+
+  static CompletionStage<RangeCounts> countsIn(Region box, int maxZoom, int maxTiles, RegionLoader loader) {
+    return loader.regionsIn(0, box)
+        .thenCompose(regions -> walk(box, 0, regions, maxZoom, maxTiles, loader, Tally.empty().queried(1)))
+        .thenApply(tally -> tally.countsFor(box));
+  }
+
+  private static CompletionStage<Tally> walk(Region box, int zoom, List<Region> regions, int maxZoom, int maxTiles, RegionLoader loader, Tally tally) {
+    var edgeRegions = new ArrayList<Region>();
+    for (var region : regions) {
+      if (region.geoOrderCount() == 0 || overlapArea(box, region) <= 0) {
+        continue;
+      }
+      tally = tally.touched();
+      if (isInside(box, region)) {
+        tally = tally.whole(region);
+      } else {
+        edgeRegions.add(region);
+      }
+    }
+
+    var subRegionsPerRegion = zoom == 0 ? 2 : zoom < 3 ? 9 : 4;
+    if (zoom >= maxZoom || tally.tilesTouched() + edgeRegions.size() * subRegionsPerRegion > maxTiles) {
+      for (var region : edgeRegions) {
+        tally = tally.estimated(region, overlapArea(box, region) / area(region));
+      }
+      return CompletableFuture.completedFuture(tally.atZoom(zoom));
+    }
+    if (edgeRegions.isEmpty()) {
+      return CompletableFuture.completedFuture(tally.atZoom(zoom));
+    }
+
+    var subRegionStages = edgeRegions.stream()
+        .map(region -> loader.regionsIn(zoom + 1, intersection(box, region))
+            .thenApply(subRegions -> subRegions.stream().filter(subRegion -> region.contains(WorldMap.atCenter(subRegion))).toList())
+            .toCompletableFuture())
+        .toList();
+    var queried = tally.queried(subRegionStages.size());
+    return CompletableFuture.allOf(subRegionStages.toArray(CompletableFuture[]::new))
+        .thenCompose(__ -> walk(box, zoom + 1, subRegionStages.stream().flatMap(stage -> stage.join().stream()).toList(), maxZoom, maxTiles, loader, queried));
+  }
+
+  static boolean isInside(Region box, Region region) {
+    return region.topLeft().lat() <= box.topLeft().lat() && region.botRight().lat() >= box.botRight().lat()
+        && region.topLeft().lng() >= box.topLeft().lng() && region.botRight().lng() <= box.botRight().lng();
+  }
+
+  static double overlapArea(Region box, Region region) {
+    var lat = Math.min(box.topLeft().lat(), region.topLeft().lat()) - Math.max(box.botRight().lat(), region.botRight().lat());
+    var lng = Math.min(box.botRight().lng(), region.botRight().lng()) - Math.max(box.topLeft().lng(), region.topLeft().lng());
+    return lat <= 0 || lng <= 0 ? 0 : lat * lng;
+  }
+
+  private static double area(Region region) {
+    return (region.topLeft().lat() - region.botRight().lat()) * (region.botRight().lng() - region.topLeft().lng());
+  }
+
+  private static Region intersection(Region box, Region region) {
+    return Region.from(region.zoom(),
+        Math.min(box.topLeft().lat(), region.topLeft().lat()),
+        Math.max(box.topLeft().lng(), region.topLeft().lng()),
+        Math.max(box.botRight().lat(), region.botRight().lat()),
+        Math.min(box.botRight().lng(), region.botRight().lng()));
+  }
+
+  // Counts are estimates when tilesEstimated is more than 0
+  public record RangeCounts(
+      WorldMap.LatLng topLeft,
+      WorldMap.LatLng botRight,
+      int geoOrderCount,
+      int geoOrderAlarmCount,
+      int geoOrderReadyCount,
+      int tilesTouched,
+      int tilesWhole,
+      int tilesEstimated,
+      int regionQueries,
+      int maxZoomWalked) {
+
+    boolean isExact() {
+      return tilesEstimated == 0;
+    }
+  }
+
+  record Tally(
+      double geoOrderCount,
+      double geoOrderAlarmCount,
+      double geoOrderReadyCount,
+      int tilesTouched,
+      int tilesWhole,
+      int tilesEstimated,
+      int regionQueries,
+      int maxZoomWalked) {
+
+    static Tally empty() {
+      return new Tally(0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    Tally touched() {
+      return new Tally(geoOrderCount, geoOrderAlarmCount, geoOrderReadyCount, tilesTouched + 1, tilesWhole, tilesEstimated, regionQueries, maxZoomWalked);
+    }
+
+    Tally whole(Region region) {
+      return add(region, 1, tilesWhole + 1, tilesEstimated);
+    }
+
+    Tally estimated(Region region, double fraction) {
+      return add(region, fraction, tilesWhole, tilesEstimated + 1);
+    }
+
+    Tally queried(int queries) {
+      return new Tally(geoOrderCount, geoOrderAlarmCount, geoOrderReadyCount, tilesTouched, tilesWhole, tilesEstimated, regionQueries + queries, maxZoomWalked);
+    }
+
+    Tally atZoom(int zoom) {
+      return new Tally(geoOrderCount, geoOrderAlarmCount, geoOrderReadyCount, tilesTouched, tilesWhole, tilesEstimated, regionQueries, zoom);
+    }
+
+    RangeCounts countsFor(Region box) {
+      return new RangeCounts(box.topLeft(), box.botRight(),
+          (int) Math.round(geoOrderCount), (int) Math.round(geoOrderAlarmCount), (int) Math.round(geoOrderReadyCount),
+          tilesTouched, tilesWhole, tilesEstimated, regionQueries, maxZoomWalked);
+    }
+
+    private Tally add(Region region, double fraction, int tilesWhole, int tilesEstimated) {
+      return new Tally(
+          geoOrderCount + region.geoOrderCount() * fraction,
+          geoOrderAlarmCount + region.geoOrderAlarmCount() * fraction,
+          geoOrderReadyCount + region.geoOrderReadyCount() * fraction,
+          tilesTouched, tilesWhole, tilesEstimated, regionQueries, maxZoomWalked);
+    }
+  }
+}
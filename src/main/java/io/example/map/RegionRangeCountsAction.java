@@ -0,0 +1,54 @@
+package io.example.map;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+
+import com.typesafe.config.ConfigFactory;
+
+import io.example.map.WorldMap.Region;
+import kalix.javasdk.action.Action;
+import kalix.javasdk.client.ComponentClient;
+
+// Geo order counts in a lat/lng rectangle, walking the regions of the regions by location view, see RegionRangeCounts.
+public class RegionRangeCountsAction extends Action {
+  private static final Logger log = LoggerFactory.getLogger(RegionRangeCountsAction.class);
+  static final int maxZoom = ConfigFactory.load().getInt("earth-ship.region-range-counts.max-zoom");
+  static final int maxTiles = ConfigFactory.load().getInt("earth-ship.region-range-counts.max-tiles");
+  private final ComponentClient componentClient;
+
+  public RegionRangeCountsAction(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  @GetMapping("/regions/range-counts/{topLeftLat}/{topLeftLng}/{botRightLat}/{botRightLng}")
+  public Effect<RegionRangeCounts.RangeCounts> getRangeCounts(
+      @PathVariable Double topLeftLat,
+      @PathVariable Double topLeftLng,
+      @PathVariable Double botRightLat,
+      @PathVariable Double botRightLng) {
+    var box = Region.from(0, topLeftLat, topLeftLng, botRightLat, botRightLng);
+    var result = RegionRangeCounts.countsIn(box, maxZoom, maxTiles, this::regionsIn)
+        .thenApply(counts -> {
+          log.debug("Range counts: {}", counts);
+          return counts;
+        });
+    return effects().asyncReply(result);
+  }
+
+  private CompletionStage<List<Region>> regionsIn(int zoom, Region bounds) {
+    if (TopRegions.isTopZoom(zoom)) {
+      return TopRegions.regionsIn(componentClient, zoom, bounds)
+          .thenApply(rows -> rows.stream().filter(row -> row.geoOrderCount() > 0).map(RegionByLocationView.RegionViewRow::region).toList());
+    }
+    return ViewPages.<RegionByLocationView.RegionViewRow>all(nextPageToken -> componentClient.forView()
+            .call(RegionByLocationView::getRegionsByLocationPaged)
+            .params(zoom, bounds.topLeft().lat(), bounds.topLeft().lng(), bounds.botRight().lat(), bounds.botRight().lng(), nextPageToken)
+            .execute())
+        .thenApply(rows -> rows.stream().map(RegionByLocationView.RegionViewRow::region).toList());
+  }
+}
@@ -0,0 +1,35 @@
+package io.example.map;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counts of the region updates and releases handled by the region entities in this service instance, and how many
+// of them were suppressed because the region counts did not change. Counters start at zero when the service starts.
+//
+final class RegionRollupCounters {
+  private static final AtomicLong updates = new AtomicLong();
+  private static final AtomicLong updatesSuppressed = new AtomicLong();
+  private static final AtomicLong releases = new AtomicLong();
+  private static final AtomicLong releasesSuppressed = new AtomicLong();
+
+  private RegionRollupCounters() {}
+
+  static void update(boolean suppressed) {
+    updates.incrementAndGet();
+    if (suppressed) {
+      updatesSuppressed.incrementAndGet();
+    }
+  }
+
+  static void release(boolean suppressed) {
+    releases.incrementAndGet();
+    if (suppressed) {
+      releasesSuppressed.incrementAndGet();
+    }
+  }
+
+  static Counters counters() {
+    return new Counters(updates.get(), updatesSuppressed.get(), releases.get(), releasesSuppressed.get());
+  }
+
+  public record Counters(long updates, long updatesSuppressed, long releases, long releasesSuppressed) {}
+}
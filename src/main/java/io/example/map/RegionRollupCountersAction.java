@@ -0,0 +1,20 @@
+package io.example.map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import kalix.javasdk.action.Action;
+
+@RequestMapping("/region-rollups")
+public class RegionRollupCountersAction extends Action {
+  private static final Logger log = LoggerFactory.getLogger(RegionRollupCountersAction.class);
+
+  @GetMapping("/counters")
+  public Effect<RegionRollupCounters.Counters> counters() {
+    var counters = RegionRollupCounters.counters();
+    log.info("Counters: {}", counters);
+    return effects().reply(counters);
+  }
+}
@@ -0,0 +1,160 @@
+package io.example.map;
+
+import java.util.Arrays;
+import java.util.List;
+
+import io.example.map.WorldMap.Region;
+
+// New geo orders and new alarms of a region per one minute interval, for the last 60 intervals, in two ring buffers.
+//
+// Updated when the region is released, with the increase of the counts since the previous release added to the
+// interval of the release time. So a region takes the same memory however busy it is, and the buckets are rebuilt
+// from the same released events by the region entity and the region throughput view. Alarms that start and stop
+// within one flush window of the region are not counted.
+//
+// The interval and the buffer length are fixed, changing them would change the meaning of persisted buffers.
+//
+public record RegionThroughput(long headInterval, int[] geoOrders, int[] alarms, int releasedGeoOrderCount, int releasedAlarmCount) {
+  static final long intervalMs = 60_000;
+  static final int intervals = 60;
+
+  static RegionThroughput empty() {
+    return new RegionThroughput(0, new int[intervals], new int[intervals], 0, 0);
+  }
+
+  // For regions released before the throughput was kept, the counts so far are not new in any interval
+  static RegionThroughput startingAt(Region region) {
+    return new RegionThroughput(0, new int[intervals], new int[intervals], region.geoOrderCount(), region.geoOrderAlarmCount());
+  }
+
+  // Releases before releasedAtMs was kept only move the released counts. Releases older than the buffer, from a
+  // service instance with a slow clock, are dropped.
+  RegionThroughput on(Region region, long releasedAtMs) {
+    var newGeoOrders = Math.max(0, region.geoOrderCount() - releasedGeoOrderCount);
+    var newAlarms = Math.max(0, region.geoOrderAlarmCount() - releasedAlarmCount);
+    var interval = releasedAtMs / intervalMs;
+    if (releasedAtMs <= 0 || interval <= headInterval - intervals) {
+      return new RegionThroughput(headInterval, geoOrders, alarms, region.geoOrderCount(), region.geoOrderAlarmCount());
+    }
+
+    var head = Math.max(headInterval, interval);
+    var geoOrders = advance(this.geoOrders, headInterval, head);
+    var alarms = advance(this.alarms, headInterval, head);
+    geoOrders[indexOf(interval)] += newGeoOrders;
+    alarms[indexOf(interval)] += newAlarms;
+    return new RegionThroughput(head, geoOrders, alarms, region.geoOrderCount(), region.geoOrderAlarmCount());
+  }
+
+  // The buckets of the intervals up to now, oldest first, intervals with no releases are 0
+  Series seriesAt(long nowMs) {
+    var now = Math.max(headInterval, nowMs / intervalMs);
+    var geoOrders = new int[intervals];
+    var alarms = new int[intervals];
+    for (int i = 0; i < intervals; i++) {
+      var interval = now - intervals + 1 + i;
+      if (interval > headInterval - intervals && interval <= headInterval) {
+        geoOrders[i] = this.geoOrders[indexOf(interval)];
+        alarms[i] = this.alarms[indexOf(interval)];
+      }
+    }
+    return new Series((now - intervals + 1) * intervalMs, intervalMs, geoOrders, alarms);
+  }
+
+  // The buckets of the regions added up, for the regions above the persisted zoom, see TopRegions
+  static RegionThroughput sum(List<RegionThroughput> throughputs) {
+    var head = throughputs.stream().mapToLong(RegionThroughput::headInterval).max().orElse(0);
+    var geoOrders = new int[intervals];
+    var alarms = new int[intervals];
+    for (var throughput : throughputs) {
+      var aligned = throughput.seriesAt(head * intervalMs);
+      for (int i = 0; i < intervals; i++) {
+        var index = indexOf(head - intervals + 1 + i);
+        geoOrders[index] += aligned.geoOrders()[i];
+        alarms[index] += aligned.alarms()[i];
+      }
+    }
+    return new RegionThroughput(head, geoOrders, alarms,
+        throughputs.stream().mapToInt(RegionThroughput::releasedGeoOrderCount).sum(),
+        throughputs.stream().mapToInt(RegionThroughput::releasedAlarmCount).sum());
+  }
+
+  // The buckets are compared by their contents, so states and view rows with the same throughput are equal
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof RegionThroughput other
+        && headInterval == other.headInterval
+        && releasedGeoOrderCount == other.releasedGeoOrderCount
+        && releasedAlarmCount == other.releasedAlarmCount
+        && Arrays.equals(geoOrders, other.geoOrders)
+        && Arrays.equals(alarms, other.alarms);
+  }
+
+  @Override
+  public int hashCode() {
+    var hash = Long.hashCode(headInterval);
+    hash = 31 * hash + Arrays.hashCode(geoOrders);
+    hash = 31 * hash + Arrays.hashCode(alarms);
+    hash = 31 * hash + releasedGeoOrderCount;
+    return 31 * hash + releasedAlarmCount;
+  }
+
+  @Override
+  public String toString() {
+    return "RegionThroughput[headInterval=%d, geoOrders=%s, alarms=%s, releasedGeoOrderCount=%d, releasedAlarmCount=%d]"
+        .formatted(headInterval, Arrays.toString(geoOrders), Arrays.toString(alarms), releasedGeoOrderCount, releasedAlarmCount);
+  }
+
+  private static int[] advance(int[] buckets, long fromInterval, long toInterval) {
+    var advanced = buckets.clone();
+    for (long interval = Math.max(fromInterval + 1, toInterval - intervals + 1); interval <= toInterval; interval++) {
+      advanced[indexOf(interval)] = 0;
+    }
+    return advanced;
+  }
+
+  private static int indexOf(long interval) {
+    return (int) Math.floorMod(interval, (long) intervals);
+  }
+
+  public record Series(long startMs, long intervalMs, int[] geoOrders, int[] alarms) {
+
+    int geoOrdersInLast(int intervals) {
+      return sumOfLast(geoOrders, intervals);
+    }
+
+    int alarmsInLast(int intervals) {
+      return sumOfLast(alarms, intervals);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Series other
+          && startMs == other.startMs
+          && intervalMs == other.intervalMs
+          && Arrays.equals(geoOrders, other.geoOrders)
+          && Arrays.equals(alarms, other.alarms);
+    }
+
+    @Override
+    public int hashCode() {
+      var hash = Long.hashCode(startMs);
+      hash = 31 * hash + Long.hashCode(intervalMs);
+      hash = 31 * hash + Arrays.hashCode(geoOrders);
+      return 31 * hash + Arrays.hashCode(alarms);
+    }
+
+    @Override
+    public String toString() {
+      return "Series[startMs=%d, intervalMs=%d, geoOrders=%s, alarms=%s]"
+          .formatted(startMs, intervalMs, Arrays.toString(geoOrders), Arrays.toString(alarms));
+    }
+
+    private static int sumOfLast(int[] buckets, int intervals) {
+      var sum = 0;
+      for (int i = Math.max(0, buckets.length - intervals); i < buckets.length; i++) {
+        sum += buckets[i];
+      }
+      return sum;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package io.example.map;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import io.example.map.WorldMap.Region;
+import kalix.javasdk.action.Action;
+import kalix.javasdk.client.ComponentClient;
+
+// New geo orders and alarms per minute of a region, and the busiest regions at a zoom, from the region throughput view.
+//
+// The top regions are ranked again by their counts in the last minutes as of now, from the candidates the view orders
+// by their recent counts as of their latest release. The regions above the persisted zoom are not entities, their
+// throughput is the sum of the regions at the persisted zoom below them, see TopRegions.
+//
+public class RegionThroughputAction extends Action {
+  private static final Logger log = LoggerFactory.getLogger(RegionThroughputAction.class);
+  private final ComponentClient componentClient;
+
+  public RegionThroughputAction(ComponentClient componentClient) {
+    this.componentClient = componentClient;
+  }
+
+  @GetMapping("/regions/throughput/{regionId}")
+  public Effect<RegionSeries> getRegionThroughput(@PathVariable String regionId, @RequestParam(required = false) Integer minutes) {
+    var regionKey = WorldMapTiles.regionKeyFor(regionId);
+    if (!WorldMapTiles.isValid(regionKey)) {
+      return effects().error("Invalid region ID: '%s'".formatted(regionId));
+    }
+    var nowMs = System.currentTimeMillis();
+    var zoom = WorldMapTiles.zoomOf(regionKey);
+    var intervals = intervalsFor(minutes);
+
+    if (TopRegions.isTopZoom(zoom)) {
+      var result = topZoomRowsAt(zoom, nowMs)
+          .thenApply(rows -> rows.stream().filter(row -> row.regionId().equals(WorldMapTiles.regionIdFor(regionKey))).findFirst()
+              .orElse(new RegionThroughputView.RegionThroughputRow(WorldMapTiles.regionIdFor(regionKey), WorldMapTiles.regionFor(regionKey), RegionThroughput.empty(), 0, 0, 0)))
+          .thenApply(row -> RegionSeries.of(row, nowMs, intervals));
+      return effects().asyncReply(result);
+    }
+    var result = componentClient.forView()
+        .call(RegionThroughputView::getRegionThroughput)
+        .params(WorldMapTiles.regionIdFor(regionKey))
+        .execute()
+        .thenApply(row -> RegionSeries.of(row, nowMs, intervals));
+    return effects().asyncReply(result);
+  }
+
+  @GetMapping("/regions/throughput-top/{zoom}")
+  public Effect<TopThroughput> getTopRegions(
+      @PathVariable Integer zoom,
+      @RequestParam(required = false) Integer limit,
+      @RequestParam(required = false) Integer minutes,
+      @RequestParam(required = false) String by) {
+    var nowMs = System.currentTimeMillis();
+    var intervals = intervalsFor(minutes);
+    var topLimit = limit == null ? 10 : Math.max(1, Math.min(100, limit));
+    var byAlarms = "alarms".equals(by);
+    log.debug("Top regions, zoom: {}, limit: {}, minutes: {}, by alarms: {}", zoom, topLimit, intervals, byAlarms);
+
+    Comparator<RegionSeries> rank = byAlarms
+        ? Comparator.comparingDouble(RegionSeries::alarmsPerMinute)
+        : Comparator.comparingDouble(RegionSeries::geoOrdersPerMinute);
+    var result = candidatesAt(zoom, nowMs - intervals * RegionThroughput.intervalMs, byAlarms, nowMs)
+        .thenApply(rows -> rows.stream()
+            .map(row -> RegionSeries.of(row, nowMs, intervals))
+            .filter(series -> (byAlarms ? series.alarmsPerMinute() : series.geoOrdersPerMinute()) > 0)
+            .sorted(rank.reversed())
+            .limit(topLimit)
+            .toList())
+        .thenApply(regions -> new TopThroughput(zoom, intervals, byAlarms ? "alarms" : "geo-orders", regions));
+    return effects().asyncReply(result);
+  }
+
+  private CompletionStage<List<RegionThroughputView.RegionThroughputRow>> candidatesAt(int zoom, long since, boolean byAlarms, long nowMs) {
+    if (TopRegions.isTopZoom(zoom)) {
+      return topZoomRowsAt(zoom, nowMs);
+    }
+    var call = byAlarms
+        ? componentClient.forView().call(RegionThroughputView::getRegionsByRecentAlarms).params(zoom, since)
+        : componentClient.forView().call(RegionThroughputView::getRegionsByRecentGeoOrders).params(zoom, since);
+    return call.execute().thenApply(rows -> List.copyOf(rows.regions()));
+  }
+
+  // The regions at the top zoom summed from the regions at the persisted zoom with releases in the buffer
+  private CompletionStage<List<RegionThroughputView.RegionThroughputRow>> topZoomRowsAt(int zoom, long nowMs) {
+    var since = nowMs - RegionThroughput.intervals * RegionThroughput.intervalMs;
+    return queryPersistedRows(since)
+        .thenApply(rows -> {
+          var rowsByKey = new HashMap<Long, List<RegionThroughputView.RegionThroughputRow>>();
+          rows.forEach(row -> rowsByKey.computeIfAbsent(ancestorKeyOf(WorldMapTiles.regionKeyFor(row.regionId()), zoom), __ -> new ArrayList<>()).add(row));
+          return rowsByKey.entrySet().stream()
+              .map(entry -> {
+                var region = WorldMapTiles.regionFor(entry.getKey()).updateCounts(entry.getValue().stream().map(RegionThroughputView.RegionThroughputRow::region).toList());
+                var throughput = RegionThroughput.sum(entry.getValue().stream().map(RegionThroughputView.RegionThroughputRow::throughput).toList());
+                var releasedAtMs = entry.getValue().stream().mapToLong(RegionThroughputView.RegionThroughputRow::releasedAtMs).max().orElse(0);
+                return RegionThroughputView.RegionThroughputRow.of(WorldMapTiles.regionIdFor(entry.getKey()), region, throughput, releasedAtMs);
+              })
+              .toList();
+        });
+  }
+
+  private CompletionStage<List<RegionThroughputView.RegionThroughputRow>> queryPersistedRows(long since) {
+    return ViewPages.all(nextPageToken -> componentClient.forView()
+        .call(RegionThroughputView::getRegionThroughputPaged)
+        .params(TopRegions.persistedZoomMin, since, nextPageToken)
+        .execute());
+  }
+
+  private static long ancestorKeyOf(long regionKey, int zoom) {
+    while (WorldMapTiles.zoomOf(regionKey) > zoom) {
+      regionKey = WorldMapTiles.parentKeyOf(regionKey);
+    }
+    return regionKey;
+  }
+
+  private static int intervalsFor(Integer minutes) {
+    return minutes == null ? RegionThroughputView.rankIntervals : Math.max(1, Math.min(RegionThroughput.intervals, minutes));
+  }
+
+  public record RegionSeries(String regionId, Region region, RegionThroughput.Series series, double geoOrdersPerMinute, double alarmsPerMinute) {
+
+    static RegionSeries of(RegionThroughputView.RegionThroughputRow row, long nowMs, int intervals) {
+      var series = row.throughput().seriesAt(nowMs);
+      return new RegionSeries(row.regionId(), row.region(), series,
+          (double) series.geoOrdersInLast(intervals) / intervals,
+          (double) series.alarmsInLast(intervals) / intervals);
+    }
+  }
+
+  public record TopThroughput(int zoom, int minutes, String by, List<RegionSeries> regions) {}
+}
@@ -0,0 +1,99 @@
+package io.example.map;
+
+import java.util.Collection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import io.example.map.WorldMap.Region;
+import kalix.javasdk.view.View;
+import kalix.javasdk.annotations.Query;
+import kalix.javasdk.annotations.Subscribe;
+import kalix.javasdk.annotations.Table;
+import kalix.javasdk.annotations.ViewId;
+
+// The throughput of each region, rebuilt from the released region events like the region entities do, see
+// RegionThroughput. Kept apart from the regions by location view so viewport queries do not carry the buffers.
+//
+// The recent counts are the new geo orders and alarms in the last rank intervals as of the latest release of the
+// region, so they only order the candidates of a top regions query, see RegionThroughputAction.
+//
+@ViewId("region-throughput-v1")
+@Table("region_throughput")
+@Subscribe.EventSourcedEntity(value = RegionEntity.class, ignoreUnknown = true)
+public class RegionThroughputView extends View<RegionThroughputView.RegionThroughputRow> {
+  private static final Logger log = LoggerFactory.getLogger(RegionThroughputView.class);
+  static final int rankIntervals = 5;
+
+  @GetMapping("/regions/throughput-row/{regionId}")
+  @Query("""
+      SELECT * FROM region_throughput
+       WHERE regionId = :regionId
+      """)
+  public RegionThroughputRow getRegionThroughput(@PathVariable String regionId) {
+    return null;
+  }
+
+  @GetMapping("/regions/throughput-by-geo-orders/{zoom}/{since}")
+  @Query("""
+        SELECT * AS regions FROM region_throughput
+         WHERE region.zoom = :zoom
+           AND releasedAtMs >= :since
+      ORDER BY recentGeoOrderCount DESC
+         LIMIT 100
+      """)
+  public RegionThroughputRows getRegionsByRecentGeoOrders(@PathVariable Integer zoom, @PathVariable Long since) {
+    return null;
+  }
+
+  @GetMapping("/regions/throughput-by-alarms/{zoom}/{since}")
+  @Query("""
+        SELECT * AS regions FROM region_throughput
+         WHERE region.zoom = :zoom
+           AND releasedAtMs >= :since
+      ORDER BY recentAlarmCount DESC
+         LIMIT 100
+      """)
+  public RegionThroughputRows getRegionsByRecentAlarms(@PathVariable Integer zoom, @PathVariable Long since) {
+    return null;
+  }
+
+  // All the regions at the zoom released after since, a page at a time, see RegionThroughputAction
+  @GetMapping("/regions/throughput-paged/{zoom}/{since}")
+  @Query("""
+      SELECT * AS regions, next_page_token() AS nextPageToken, has_more() AS hasMore
+        FROM region_throughput
+       WHERE region.zoom = :zoom
+         AND releasedAtMs >= :since
+      OFFSET page_token_offset(:nextPageToken)
+       LIMIT 1000
+      """)
+  public RegionThroughputPage getRegionThroughputPaged(@PathVariable Integer zoom, @PathVariable Long since, @RequestParam(required = false) String nextPageToken) {
+    return null;
+  }
+
+  public UpdateEffect<RegionThroughputRow> on(RegionEntity.ReleasedCurrentStateEvent event) {
+    log.debug("State: {}\n_Event: {}", viewState(), event);
+    var regionId = updateContext().eventSubject().orElse("");
+    if (!WorldMapTiles.isCanonicalRegionId(regionId)) {
+      return effects().ignore(); // region entities with legacy IDs are superseded by the packed region key entities
+    }
+    var throughput = viewState() == null ? RegionThroughput.empty() : viewState().throughput();
+    return effects().updateState(RegionThroughputRow.of(regionId, event.region(), throughput.on(event.region(), event.releasedAtMs()), event.releasedAtMs()));
+  }
+
+  public record RegionThroughputRow(String regionId, Region region, RegionThroughput throughput, int recentGeoOrderCount, int recentAlarmCount, long releasedAtMs) {
+
+    static RegionThroughputRow of(String regionId, Region region, RegionThroughput throughput, long releasedAtMs) {
+      var series = throughput.seriesAt(releasedAtMs);
+      return new RegionThroughputRow(regionId, region, throughput, series.geoOrdersInLast(rankIntervals), series.alarmsInLast(rankIntervals), releasedAtMs);
+    }
+  }
+
+  public record RegionThroughputRows(Collection<RegionThroughputRow> regions) {}
+
+  public record RegionThroughputPage(Collection<RegionThroughputRow> regions, String nextPageToken, boolean hasMore) implements ViewPages.Page<RegionThroughputRow> {}
+}
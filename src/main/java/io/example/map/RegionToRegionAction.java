@@ -1,10 +1,16 @@
 package io.example.map;
 
 import static io.example.map.WorldMap.*;
+import static io.example.map.WorldMapTiles.*;
+
+import java.time.Duration;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
 import io.example.LogEvent;
 import kalix.javasdk.action.Action;
 import kalix.javasdk.annotations.Subscribe;
@@ -13,16 +19,35 @@ import kalix.javasdk.client.ComponentClient;
 @Subscribe.EventSourcedEntity(value = RegionEntity.class, ignoreUnknown = true)
 public class RegionToRegionAction extends Action {
   private static Logger log = LoggerFactory.getLogger(RegionToRegionAction.class);
+  private static final Duration[] flushWindows = flushWindows(ConfigFactory.load().getConfig("earth-ship.region.flush-window"));
   private final ComponentClient componentClient;
 
   public RegionToRegionAction(ComponentClient componentClient) {
     this.componentClient = componentClient;
   }
 
+  public Effect<String> on(RegionEntity.UpdatedSubRegionEvent event) {
+    log.info("Event: {}", event);
+
+    return event.region() == null ? effects().reply("OK") : releaseLater(event.region());
+  }
+
+  public Effect<String> on(RegionEntity.UpdatedSubRegionsEvent event) {
+    log.info("Event: {}", event);
+
+    return event.region() == null ? effects().reply("OK") : releaseLater(event.region());
+  }
+
+  public Effect<String> on(RegionEntity.MigratedLegacySubRegionsEvent event) {
+    log.info("Event: {}", event);
+
+    return event.region() == null ? effects().reply("OK") : releaseLater(event.region());
+  }
+
   public Effect<String> on(RegionEntity.UpdatedRegionEvent event) {
     log.info("Event: {}", event);
 
-    return callFor(event);
+    return releaseLater(event.region());
   }
 
   public Effect<String> on(RegionEntity.ReleasedCurrentStateEvent event) {
@@ -31,28 +56,40 @@ public class RegionToRegionAction extends Action {
     return callFor(event);
   }
 
-  private Effect<String> callFor(RegionEntity.UpdatedRegionEvent event) {
-    var region = event.region();
+  private Effect<String> releaseLater(Region region) {
     var regionId = regionIdFor(region);
     var command = new RegionEntity.ReleaseCurrentStateCommand(region);
+    var releaseCurrentState = componentClient.forEventSourcedEntity(regionId)
+        .call(RegionEntity::releaseCurrentState)
+        .params(command);
 
-    return effects().forward(
-        componentClient.forEventSourcedEntity(regionId)
-            .call(RegionEntity::releaseCurrentState)
-            .params(command));
+    var flushWindow = flushWindows[region.zoom()];
+    if (flushWindow.isZero()) {
+      return effects().forward(releaseCurrentState);
+    }
+
+    // changes to the region until the timer fires are merged into the one release to the region above
+    var timerName = "release-region-%s".formatted(regionId);
+    return effects().asyncReply(
+        timers().startSingleTimer(timerName, flushWindow, releaseCurrentState)
+            .thenApply(__ -> "OK"));
   }
 
   private Effect<String> callFor(RegionEntity.ReleasedCurrentStateEvent event) {
     var subRegion = event.region();
-    var region = regionAbove(subRegion);
-    if (region == null) {
+    if (subRegion.zoom() <= TopRegions.persistedZoomMin) {
+      return effects().reply("OK"); // the regions above the persisted zoom are computed from it, see TopRegions
+    }
+    var subRegionKey = regionKeyFor(subRegion);
+    var regionKey = parentKeyOf(subRegionKey);
+    if (regionKey == noRegionKey) {
       return effects().reply("OK"); // there are no more regions above zoom level 1
     }
 
+    var regionId = regionIdFor(regionKey);
     var message = "color %s".formatted(event.region().geoOrderAlarmCount() > 0 ? "red" : "green");
-    LogEvent.log("Region", regionIdFor(subRegion), "Region", regionIdFor(region), message);
+    LogEvent.log("Region", regionIdFor(subRegionKey), "Region", regionId, message);
 
-    var regionId = regionIdFor(region);
     var command = new RegionEntity.UpdateSubRegionCommand(subRegion);
 
     return effects().forward(
@@ -60,4 +97,19 @@ public class RegionToRegionAction extends Action {
             .call(RegionEntity::updateSubRegion)
             .params(command));
   }
+
+  // Flush windows grow geometrically from the zoom 18 window to the zoom 1 window, zoom 0 uses the zoom 1 window
+  static Duration[] flushWindows(Config config) {
+    var leafMs = config.getDuration("zoom-18").toMillis();
+    var topMs = config.getDuration("zoom-1").toMillis();
+    var flushWindows = new Duration[zoomMax + 1];
+    for (int zoom = 0; zoom <= zoomMax; zoom++) {
+      var distance = (zoomMax - Math.max(1, zoom)) / (double) (zoomMax - 1);
+      var windowMs = leafMs == 0 || topMs == 0
+          ? leafMs + (topMs - leafMs) * distance
+          : leafMs * Math.pow((double) topMs / leafMs, distance);
+      flushWindows[zoom] = Duration.ofMillis(Math.round(windowMs));
+    }
+    return flushWindows;
+  }
 }
@@ -0,0 +1,106 @@
+package io.example.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.typesafe.config.ConfigFactory;
+
+import io.example.map.WorldMap.Region;
+import kalix.javasdk.client.ComponentClient;
+
+// The regions above the persisted zoom, computed in memory from the persisted zoom rows of the regions by location
+// view instead of being region entities.
+//
+// Every geo order change used to roll up to the two zoom 1 regions and the zoom 0 region, so those few entities were
+// in the write path of every change. Region releases now stop at the persisted zoom, see RegionToRegionAction, and
+// the top regions are recomputed here at most once per refresh interval, per service instance, when they are queried.
+// All the top regions are returned, including the empty ones, so clients see regions become empty.
+//
+final class TopRegions {
+  static final int persistedZoomMin = ConfigFactory.load().getInt("earth-ship.region.persisted-zoom-min");
+  static final long refreshMs = ConfigFactory.load().getDuration("earth-ship.region.top-regions-refresh").toMillis();
+  private static final AtomicReference<CompletableFuture<Snapshot>> snapshot = new AtomicReference<>(
+      CompletableFuture.completedFuture(new Snapshot(0, List.of())));
+
+  private TopRegions() {}
+
+  static boolean isTopZoom(int zoom) {
+    return zoom < persistedZoomMin;
+  }
+
+  // The top regions at the zoom that overlap the bounds
+  static CompletionStage<List<RegionByLocationView.RegionViewRow>> regionsIn(ComponentClient componentClient, int zoom, Region bounds) {
+    return current(componentClient).thenApply(snapshot -> snapshot.rows().stream()
+        .filter(row -> row.region().zoom() == zoom && overlaps(bounds, row.region()))
+        .toList());
+  }
+
+  // Failed refreshes keep the last snapshot, which is refreshed again by the next query
+  private static CompletionStage<Snapshot> current(ComponentClient componentClient) {
+    var current = snapshot.get();
+    var now = System.currentTimeMillis();
+    if (!current.isDone() || now - current.join().computedAtMs() < refreshMs) {
+      return current;
+    }
+    var refresh = new CompletableFuture<Snapshot>();
+    if (!snapshot.compareAndSet(current, refresh)) {
+      return snapshot.get();
+    }
+    queryPersistedRegions(componentClient)
+        .thenApply(regions -> new Snapshot(now, rowsFor(persistedZoomMin, regions, now)))
+        .whenComplete((s, e) -> refresh.complete(e == null ? s : current.join()));
+    return refresh;
+  }
+
+  private static CompletionStage<List<Region>> queryPersistedRegions(ComponentClient componentClient) {
+    return ViewPages.<RegionByLocationView.RegionViewRow>all(nextPageToken -> componentClient.forView()
+            .call(RegionByLocationView::getRegionsByLocationPaged)
+            .params(persistedZoomMin, 90.0, -180.0, -90.0, 180.0, nextPageToken)
+            .execute())
+        .thenApply(rows -> rows.stream().map(RegionByLocationView.RegionViewRow::region).toList());
+  }
+
+  // Sums the persisted zoom regions into every region above them, zoom by zoom
+  static List<RegionByLocationView.RegionViewRow> rowsFor(int persistedZoom, List<Region> persistedRegions, long computedAtMs) {
+    var rows = new ArrayList<RegionByLocationView.RegionViewRow>();
+    var subRegions = persistedRegions.stream().filter(region -> region.zoom() == persistedZoom).toList();
+    for (int zoom = persistedZoom - 1; zoom >= 0; zoom--) {
+      var subRegionsByKey = new HashMap<Long, List<Region>>();
+      subRegions.forEach(subRegion -> subRegionsByKey
+          .computeIfAbsent(WorldMapTiles.parentKeyOf(WorldMapTiles.regionKeyFor(subRegion)), __ -> new ArrayList<>())
+          .add(subRegion));
+      var regions = regionsAt(zoom).stream()
+          .map(region -> region.updateCounts(subRegionsByKey.getOrDefault(WorldMapTiles.regionKeyFor(region), List.of())))
+          .toList();
+      regions.forEach(region -> rows.add(new RegionByLocationView.RegionViewRow(
+          WorldMap.regionIdFor(region), region, region.geoOrderCount(), region.geoOrderAlarmCount(), computedAtMs)));
+      subRegions = regions;
+    }
+    return rows;
+  }
+
+  private static List<Region> regionsAt(int zoom) {
+    var regions = List.of(WorldMap.regionForZoom0());
+    for (int z = 0; z < zoom; z++) {
+      regions = regions.stream().flatMap(region -> WorldMap.subRegionsFor(region).stream()).toList();
+    }
+    return regions;
+  }
+
+  private static boolean overlaps(Region bounds, Region region) {
+    return region.topLeft().lat() >= bounds.botRight().lat()
+        && region.topLeft().lng() <= bounds.botRight().lng()
+        && region.botRight().lat() <= bounds.topLeft().lat()
+        && region.botRight().lng() >= bounds.topLeft().lng();
+  }
+
+  private record Snapshot(long computedAtMs, List<RegionByLocationView.RegionViewRow> rows) {
+    Snapshot {
+      rows = List.copyOf(rows);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package io.example.map;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Collects updates for the same entity over a short window, or until the batch is full, and sends them to the entity
+// together, for example the geo order changes of a zoom 18 region. Every caller gets the same completion stage for
+// its batch, so an event is only acknowledged once the whole batch is written, and a failed batch is redelivered and
+// retried event by event.
+//
+// Batches only form when the subscription has more than one event in flight for the entity, the events of a sequential
+// delivery each wait out the window alone. The batches are only held in memory, but no event is acknowledged before
+// its batch is written, so the events of the batches pending when a node stops are delivered again.
+//
+final class UpdateBatcher<T> {
+  private final Duration window;
+  private final int batchSize;
+  private final Map<String, Batch<T>> batches = new HashMap<>();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    var thread = new Thread(runnable, "update-batcher");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  UpdateBatcher(Duration window, int batchSize) {
+    this.window = window;
+    this.batchSize = batchSize;
+  }
+
+  boolean isEnabled() {
+    return !window.isZero() && batchSize > 1;
+  }
+
+  CompletionStage<String> add(String entityId, T update, Function<List<T>, CompletionStage<String>> send) {
+    Batch<T> full = null;
+    Batch<T> batch;
+    synchronized (batches) {
+      batch = batches.get(entityId);
+      if (batch == null) {
+        batch = new Batch<>(send);
+        batches.put(entityId, batch);
+        var scheduled = batch;
+        scheduler.schedule(() -> flush(entityId, scheduled), window.toMillis(), TimeUnit.MILLISECONDS);
+      }
+      batch.updates.add(update);
+      if (batch.updates.size() >= batchSize) {
+        batches.remove(entityId);
+        full = batch;
+      }
+    }
+    if (full != null) {
+      full.send();
+    }
+    return batch.done;
+  }
+
+  private void flush(String entityId, Batch<T> batch) {
+    synchronized (batches) {
+      if (!batches.remove(entityId, batch)) {
+        return; // already sent when it filled up
+      }
+    }
+    batch.send();
+  }
+
+  private static class Batch<T> {
+    final List<T> updates = new ArrayList<>();
+    final CompletableFuture<String> done = new CompletableFuture<>();
+    final Function<List<T>, CompletionStage<String>> send;
+
+    Batch(Function<List<T>, CompletionStage<String>> send) {
+      this.send = send;
+    }
+
+    void send() {
+      try {
+        send.apply(List.copyOf(updates))
+            .whenComplete((reply, error) -> {
+              if (error != null) {
+                done.completeExceptionally(error);
+              } else {
+                done.complete(reply);
+              }
+            });
+      } catch (RuntimeException e) {
+        done.completeExceptionally(e);
+      }
+    }
+  }
+}
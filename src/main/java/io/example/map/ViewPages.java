@@ -0,0 +1,44 @@
+package io.example.map;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+// Reads all the pages of a paged view query, following the next page token until the view has no more rows.
+final class ViewPages {
+
+  private ViewPages() {}
+
+  // A page of a view query with next_page_token() AS nextPageToken and has_more() AS hasMore
+  interface Page<T> {
+    Collection<T> regions();
+
+    String nextPageToken();
+
+    boolean hasMore();
+  }
+
+  // The query is called with a null page token for the first page
+  static <T> CompletionStage<List<T>> all(Function<String, CompletionStage<? extends Page<T>>> query) {
+    return all(query, Integer.MAX_VALUE);
+  }
+
+  // No more pages are read once there are at least limit rows
+  static <T> CompletionStage<List<T>> all(Function<String, CompletionStage<? extends Page<T>>> query, int limit) {
+    return next(query, limit, null, new ArrayList<>());
+  }
+
+  private static <T> CompletionStage<List<T>> next(Function<String, CompletionStage<? extends Page<T>>> query, int limit, String nextPageToken, List<T> rows) {
+    return query.apply(nextPageToken)
+        .thenCompose(page -> {
+          rows.addAll(page.regions());
+          if (page.hasMore() && rows.size() < limit) {
+            return next(query, limit, page.nextPageToken(), rows);
+          }
+          return CompletableFuture.completedFuture(rows);
+        });
+  }
+}
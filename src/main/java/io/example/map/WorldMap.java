@@ -9,6 +9,11 @@ interface WorldMap {
   static final int earthRadiusKm = 6371;
 
   static String regionIdFor(Region region) {
+    return WorldMapTiles.regionIdFor(WorldMapTiles.regionKeyFor(region));
+  }
+
+  // Region IDs used before the packed region keys, see WorldMapTiles.regionKeyFor(String)
+  static String legacyRegionIdFor(Region region) {
     return "%d_%1.13f_%1.13f_%1.13f_%1.13f".formatted(
         region.zoom(),
         region.topLeft().lat(),
@@ -23,7 +28,11 @@ interface WorldMap {
       return null;
     }
 
-    return regionAtLatLng(zoomAbove, atCenter(subRegion));
+    var topLeft = subRegion.topLeft();
+    var botRight = subRegion.botRight();
+    return WorldMapTiles.regionAtLatLng(zoomAbove,
+        topLeft.lat - (topLeft.lat - botRight.lat) / 2,
+        topLeft.lng + (botRight.lng - topLeft.lng) / 2);
   }
 
   static Region regionForZoom0() {
@@ -75,16 +84,21 @@ interface WorldMap {
   }
 
   static Region regionAtLatLng(int zoom, LatLng latLng) {
-    return regionAtLatLng(zoom, latLng, regionForZoom0());
+    return WorldMapTiles.regionAtLatLng(zoom, latLng.lat, latLng.lng);
+  }
+
+  // Reference implementation that walks down the sub-region lists, see WorldMapTiles for the arithmetic version
+  static Region regionAtLatLngBySubRegions(int zoom, LatLng latLng) {
+    return regionAtLatLngBySubRegions(zoom, latLng, regionForZoom0());
   }
 
-  private static Region regionAtLatLng(int zoom, LatLng latLng, Region region) {
+  private static Region regionAtLatLngBySubRegions(int zoom, LatLng latLng, Region region) {
     if (zoom == region.zoom) {
       return region;
     }
     var subRegions = subRegionsFor(region);
     var subRegionOpt = subRegions.stream().filter(r -> r.contains(latLng)).findFirst();
-    return subRegionOpt.map(subRegion -> regionAtLatLng(zoom, latLng, subRegion)).orElse(null);
+    return subRegionOpt.map(subRegion -> regionAtLatLngBySubRegions(zoom, latLng, subRegion)).orElse(null);
   }
 
   static LatLng latLng(double lat, double lng) {
@@ -110,7 +124,23 @@ interface WorldMap {
         region.topLeft.lng + (region.botRight.lng - region.topLeft.lng) / 2);
   }
 
-  record Region(int zoom, LatLng topLeft, LatLng botRight, int geoOrderCount, int geoOrderAlarmCount) {
+  // geoOrderReadyCount is the part of geoOrderCount that is ready to ship, geoOrderAlarmCount the part that is back
+  // ordered. geoOrderLatSum and geoOrderLngSum are the sums of the geo order positions, for the geo order centroid.
+  // Regions released before the sums were kept have them at 0, see withPositionSums.
+  record Region(
+      int zoom,
+      LatLng topLeft,
+      LatLng botRight,
+      int geoOrderCount,
+      int geoOrderAlarmCount,
+      int geoOrderReadyCount,
+      double geoOrderLatSum,
+      double geoOrderLngSum) {
+
+    Region(int zoom, LatLng topLeft, LatLng botRight, int geoOrderCount, int geoOrderAlarmCount) {
+      this(zoom, topLeft, botRight, geoOrderCount, geoOrderAlarmCount, 0, 0, 0);
+    }
+
     static Region empty() {
       return from(0, 0, 0, 0, 0);
     }
@@ -128,13 +158,50 @@ interface WorldMap {
     }
 
     Region updateCounts(List<Region> subRegions) {
-      var geoOrderCount = subRegions.stream().mapToInt(Region::geoOrderCount).sum();
-      var geoOrderAlarmCount = subRegions.stream().mapToInt(Region::geoOrderAlarmCount).sum();
-      return new Region(zoom, topLeft, botRight, geoOrderCount, geoOrderAlarmCount);
+      var geoOrderCount = 0;
+      var geoOrderAlarmCount = 0;
+      var geoOrderReadyCount = 0;
+      var geoOrderLatSum = 0.0;
+      var geoOrderLngSum = 0.0;
+      for (var subRegion : subRegions) {
+        var withSums = subRegion.withPositionSums();
+        geoOrderCount += withSums.geoOrderCount;
+        geoOrderAlarmCount += withSums.geoOrderAlarmCount;
+        geoOrderReadyCount += withSums.geoOrderReadyCount;
+        geoOrderLatSum += withSums.geoOrderLatSum;
+        geoOrderLngSum += withSums.geoOrderLngSum;
+      }
+      return new Region(zoom, topLeft, botRight, geoOrderCount, geoOrderAlarmCount, geoOrderReadyCount, geoOrderLatSum, geoOrderLngSum);
     }
 
     Region updateCounts(int geoOrderCount, int geoOrderAlarmCount) {
-      return new Region(zoom, topLeft, botRight, geoOrderCount, geoOrderAlarmCount);
+      return new Region(zoom, topLeft, botRight, geoOrderCount, geoOrderAlarmCount, geoOrderReadyCount, geoOrderLatSum, geoOrderLngSum);
+    }
+
+    Region updateCounts(int geoOrderCount, int geoOrderAlarmCount, int geoOrderReadyCount) {
+      return new Region(zoom, topLeft, botRight, geoOrderCount, geoOrderAlarmCount, geoOrderReadyCount, geoOrderLatSum, geoOrderLngSum);
+    }
+
+    Region addPosition(LatLng position) {
+      return new Region(zoom, topLeft, botRight, geoOrderCount, geoOrderAlarmCount, geoOrderReadyCount,
+          geoOrderLatSum + position.lat, geoOrderLngSum + position.lng);
+    }
+
+    // Regions without position sums count their geo orders at the region center
+    Region withPositionSums() {
+      if (geoOrderCount == 0 || geoOrderLatSum != 0 || geoOrderLngSum != 0) {
+        return this;
+      }
+      var center = atCenter(this);
+      return new Region(zoom, topLeft, botRight, geoOrderCount, geoOrderAlarmCount, geoOrderReadyCount,
+          center.lat * geoOrderCount, center.lng * geoOrderCount);
+    }
+
+    LatLng geoOrderCentroid() {
+      var withSums = withPositionSums();
+      return geoOrderCount == 0
+          ? atCenter(this)
+          : latLng(withSums.geoOrderLatSum / geoOrderCount, withSums.geoOrderLngSum / geoOrderCount);
     }
 
     boolean contains(LatLng latLng) {
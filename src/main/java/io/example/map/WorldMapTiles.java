@@ -0,0 +1,364 @@
+package io.example.map;
+
+import static io.example.map.WorldMap.region;
+import static io.example.map.WorldMap.zoomMax;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.example.map.WorldMap.Region;
+
+// Arithmetic region addressing for the 1 / 2 / 3x3 / 3x3 / 2x2 ... split scheme used by WorldMap.
+//
+// Each zoom level picks the row and column that contain the lat/lng directly from the parent bounds,
+// instead of building the list of sub-regions and filtering it. The bounds are computed with exactly
+// the same floating point expressions used by WorldMap.subRegionsFor, and the row/column selection
+// keeps the same inclusive edges and first-match order, so the resulting regions are bit-identical.
+//
+// Regions are also addressed by a packed region key, the zoom plus the tile row and column at that zoom:
+//
+// bits 58-62 zoom, bits 30-57 row (north to south), bits 0-29 col (west to east)
+//
+// The canonical region ID is the key written as "zoom-row-col", for example "18-97712-294297".
+//
+interface WorldMapTiles {
+  static final long noRegionKey = -1;
+  static final int zoomShift = 58;
+  static final int rowShift = 30;
+  static final long rowMask = (1L << (zoomShift - rowShift)) - 1;
+  static final long colMask = (1L << rowShift) - 1;
+
+  static Region regionAtLatLng(int zoom, double lat, double lng) {
+    var bounds = new double[4];
+    return boundsAtLatLng(zoom, lat, lng, bounds) ? regionFor(zoom, bounds) : null;
+  }
+
+  // Returns the regions from zoom 0 down to the given zoom that contain the lat/lng, computed in one pass.
+  static Region[] regionsAtLatLng(int zoom, double lat, double lng) {
+    if (zoom < 0 || zoom > zoomMax) {
+      return null;
+    }
+    var regions = new Region[zoom + 1];
+    var bounds = zoom0Bounds();
+    regions[0] = regionFor(0, bounds);
+    for (int z = 1; z <= zoom; z++) {
+      if (subRegionBounds(z, lat, lng, bounds) < 0) {
+        return null;
+      }
+      regions[z] = regionFor(z, bounds);
+    }
+    return regions;
+  }
+
+  // Fills bounds with { topLeft.lat, topLeft.lng, botRight.lat, botRight.lng } of the region at the given zoom that
+  // contains the lat/lng. Returns false when there is no such region.
+  static boolean boundsAtLatLng(int zoom, double lat, double lng, double[] bounds) {
+    if (zoom < 0 || zoom > zoomMax) {
+      return false;
+    }
+    setZoom0Bounds(bounds);
+    for (int z = 1; z <= zoom; z++) {
+      if (subRegionBounds(z, lat, lng, bounds) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static long regionKeyAt(int zoom, double lat, double lng) {
+    if (zoom < 0 || zoom > zoomMax) {
+      return noRegionKey;
+    }
+    var bounds = zoom0Bounds();
+    long row = 0;
+    long col = 0;
+    for (int z = 1; z <= zoom; z++) {
+      var indexes = subRegionBounds(z, lat, lng, bounds);
+      if (indexes < 0) {
+        return noRegionKey;
+      }
+      row = row * latSplits(z) + (indexes >> 8);
+      col = col * lngSplits(z) + (indexes & 0xff);
+    }
+    return regionKey(zoom, row, col);
+  }
+
+  // The canonical IDs of the regions at the zooms, in ascending order, that contain the lat/lng, or nulls when there
+  // are no such regions. The key at the last zoom is found first and the others are its ancestors.
+  static String[] regionIdsAt(int[] zooms, double lat, double lng) {
+    var regionIds = new String[zooms.length];
+    var regionKey = regionKeyAt(zooms[zooms.length - 1], lat, lng);
+    for (int i = zooms.length - 1; i >= 0 && regionKey != noRegionKey; i--) {
+      while (zoomOf(regionKey) > zooms[i]) {
+        regionKey = parentKeyOf(regionKey);
+      }
+      regionIds[i] = regionIdFor(regionKey);
+    }
+    return regionIds;
+  }
+
+  static long regionKeyFor(Region region) {
+    var topLeft = region.topLeft();
+    var botRight = region.botRight();
+    return regionKeyAt(region.zoom(),
+        topLeft.lat() - (topLeft.lat() - botRight.lat()) / 2,
+        topLeft.lng() + (botRight.lng() - topLeft.lng()) / 2);
+  }
+
+  static long regionKey(int zoom, long row, long col) {
+    return ((long) zoom << zoomShift) | (row << rowShift) | col;
+  }
+
+  static int zoomOf(long regionKey) {
+    return (int) (regionKey >>> zoomShift);
+  }
+
+  static long rowOf(long regionKey) {
+    return (regionKey >>> rowShift) & rowMask;
+  }
+
+  static long colOf(long regionKey) {
+    return regionKey & colMask;
+  }
+
+  static long parentKeyOf(long regionKey) {
+    var zoom = zoomOf(regionKey);
+    if (zoom == 0 || !isValid(regionKey)) {
+      return noRegionKey;
+    }
+    return regionKey(zoom - 1, rowOf(regionKey) / latSplits(zoom), colOf(regionKey) / lngSplits(zoom));
+  }
+
+  static boolean isValid(long regionKey) {
+    if (regionKey < 0) {
+      return false;
+    }
+    var zoom = zoomOf(regionKey);
+    return zoom <= zoomMax && rowOf(regionKey) < rowsAt(zoom) && colOf(regionKey) < colsAt(zoom);
+  }
+
+  // Rebuilds the region bounds by replaying the subdivision of each zoom level above the key's zoom.
+  static Region regionFor(long regionKey) {
+    if (!isValid(regionKey)) {
+      return null;
+    }
+    var zoom = zoomOf(regionKey);
+    var row = rowOf(regionKey);
+    var col = colOf(regionKey);
+    var bounds = zoom0Bounds();
+    for (int z = 1; z <= zoom; z++) {
+      var rowAtZ = row / (rowsAt(zoom) / rowsAt(z));
+      var colAtZ = col / (colsAt(zoom) / colsAt(z));
+      narrowBounds(z, (int) (rowAtZ % latSplits(z)), (int) (colAtZ % lngSplits(z)), bounds);
+    }
+    return regionFor(zoom, bounds);
+  }
+
+  static String regionIdFor(long regionKey) {
+    return zoomOf(regionKey) + "-" + rowOf(regionKey) + "-" + colOf(regionKey);
+  }
+
+  // Parses canonical "zoom-row-col" region IDs and the legacy "zoom_topLeftLat_topLeftLng_botRightLat_botRightLng" IDs.
+  static long regionKeyFor(String regionId) {
+    try {
+      if (regionId.indexOf('_') >= 0) {
+        return legacyRegionKeyFor(regionId);
+      }
+      var first = regionId.indexOf('-');
+      var second = first < 0 ? -1 : regionId.indexOf('-', first + 1);
+      if (first > 0 && second > first) {
+        var regionKey = regionKey(
+            Integer.parseInt(regionId, 0, first, 10),
+            Long.parseLong(regionId, first + 1, second, 10),
+            Long.parseLong(regionId, second + 1, regionId.length(), 10));
+        return isValid(regionKey) ? regionKey : noRegionKey;
+      }
+      return noRegionKey;
+    } catch (NumberFormatException e) {
+      return noRegionKey;
+    }
+  }
+
+  // The canonical region IDs at the given zoom that cover the bounds, row by row from north west to south east, or an
+  // empty list when more than maxRegions are needed. Bounds that cross the antimeridian are not covered.
+  static List<String> coveringRegionIds(int zoom, double topLeftLat, double topLeftLng, double botRightLat, double botRightLng, int maxRegions) {
+    var topLeftKey = regionKeyAt(zoom, clampLat(topLeftLat), clampLng(topLeftLng));
+    var botRightKey = regionKeyAt(zoom, clampLat(botRightLat), clampLng(botRightLng));
+    if (topLeftKey == noRegionKey || botRightKey == noRegionKey || coveringRegionCount(topLeftKey, botRightKey) > maxRegions) {
+      return List.of();
+    }
+    var regionIds = new ArrayList<String>();
+    for (var row = rowOf(topLeftKey); row <= rowOf(botRightKey); row++) {
+      for (var col = colOf(topLeftKey); col <= colOf(botRightKey); col++) {
+        regionIds.add(regionIdFor(regionKey(zoom, row, col)));
+      }
+    }
+    return regionIds;
+  }
+
+  // The finest of the zooms, in ascending order, where the bounds are covered by at most maxRegions regions, or -1
+  // when even the first zoom needs more.
+  static int coveringZoom(int[] zooms, double topLeftLat, double topLeftLng, double botRightLat, double botRightLng, int maxRegions) {
+    var coveringZoom = -1;
+    for (var zoom : zooms) {
+      var topLeftKey = regionKeyAt(zoom, clampLat(topLeftLat), clampLng(topLeftLng));
+      var botRightKey = regionKeyAt(zoom, clampLat(botRightLat), clampLng(botRightLng));
+      if (topLeftKey == noRegionKey || botRightKey == noRegionKey || coveringRegionCount(topLeftKey, botRightKey) > maxRegions) {
+        break;
+      }
+      coveringZoom = zoom;
+    }
+    return coveringZoom;
+  }
+
+  static boolean isCanonicalRegionId(String regionId) {
+    var regionKey = regionKeyFor(regionId);
+    return regionKey != noRegionKey && regionIdFor(regionKey).equals(regionId);
+  }
+
+  private static long coveringRegionCount(long topLeftKey, long botRightKey) {
+    var rows = rowOf(botRightKey) - rowOf(topLeftKey) + 1;
+    var cols = colOf(botRightKey) - colOf(topLeftKey) + 1;
+    return rows <= 0 || cols <= 0 ? Long.MAX_VALUE : rows * cols;
+  }
+
+  private static double clampLat(double lat) {
+    return Math.max(-90, Math.min(90, lat));
+  }
+
+  private static double clampLng(double lng) {
+    return Math.max(-180, Math.min(180, lng));
+  }
+
+  private static long legacyRegionKeyFor(String regionId) {
+    var parts = regionId.split("_");
+    if (parts.length != 5) {
+      return noRegionKey;
+    }
+    var region = Region.from(
+        Integer.parseInt(parts[0]),
+        Double.parseDouble(parts[1]),
+        Double.parseDouble(parts[2]),
+        Double.parseDouble(parts[3]),
+        Double.parseDouble(parts[4]));
+    return regionKeyFor(region);
+  }
+
+  // zoom 0 - 1 x 1, zoom 1 - 1 x 2, zoom 2 - 3 x 6, zoom 3 - 9 x 18, then rows and cols double per zoom
+  static long rowsAt(int zoom) {
+    switch (zoom) {
+    case 0:
+    case 1:
+      return 1;
+    case 2:
+      return 3;
+    default:
+      return 9L << (zoom - 3);
+    }
+  }
+
+  static long colsAt(int zoom) {
+    return zoom == 0 ? 1 : rowsAt(zoom) * 2;
+  }
+
+  private static int latSplits(int zoom) {
+    return zoom == 1 ? 1 : zoom <= 3 ? 3 : 2;
+  }
+
+  private static int lngSplits(int zoom) {
+    return zoom == 1 ? 2 : zoom <= 3 ? 3 : 2;
+  }
+
+  private static double[] zoom0Bounds() {
+    var bounds = new double[4];
+    setZoom0Bounds(bounds);
+    return bounds;
+  }
+
+  private static void setZoom0Bounds(double[] bounds) {
+    bounds[0] = 90;
+    bounds[1] = -180;
+    bounds[2] = -90;
+    bounds[3] = 180;
+  }
+
+  private static Region regionFor(int zoom, double[] bounds) {
+    return region(zoom, WorldMap.topLeft(bounds[0], bounds[1]), WorldMap.botRight(bounds[2], bounds[3]));
+  }
+
+  // Narrows bounds from the region at zoom - 1 to its sub-region at zoom that contains the lat/lng.
+  // Returns the sub-region indexes as latIndex << 8 | lngIndex, or -1 when no sub-region contains the lat/lng.
+  private static int subRegionBounds(int zoom, double lat, double lng, double[] bounds) {
+    if (zoom == 1) {
+      if (!(bounds[0] >= lat && bounds[2] <= lat)) {
+        return -1;
+      }
+      var lngIndex = -180 <= lng && 0 >= lng ? 0 : 0 <= lng && 180 >= lng ? 1 : -1;
+      if (lngIndex < 0) {
+        return -1;
+      }
+      narrowBounds(zoom, 0, lngIndex, bounds);
+      return lngIndex;
+    }
+
+    var splits = latSplits(zoom);
+    var length = (bounds[0] - bounds[2]) / splits;
+    var latIndex = latIndex(bounds[0], length, splits, lat);
+    var lngIndex = latIndex < 0 ? -1 : lngIndex(bounds[1], length, splits, lng);
+    if (lngIndex < 0) {
+      return -1;
+    }
+    narrowBounds(zoom, latIndex, lngIndex, bounds);
+    return latIndex << 8 | lngIndex;
+  }
+
+  private static void narrowBounds(int zoom, int latIndex, int lngIndex, double[] bounds) {
+    if (zoom == 1) {
+      if (lngIndex == 0) {
+        bounds[3] = 0;
+      } else {
+        bounds[1] = 0;
+      }
+      return;
+    }
+
+    var topLeftLat = bounds[0];
+    var topLeftLng = bounds[1];
+    var length = (topLeftLat - bounds[2]) / latSplits(zoom);
+    bounds[0] = topLeftLat - latIndex * length;
+    bounds[1] = topLeftLng + lngIndex * length;
+    bounds[2] = topLeftLat - (latIndex + 1) * length;
+    bounds[3] = topLeftLng + (lngIndex + 1) * length;
+  }
+
+  // Rows run north to south. Row i spans topLeftLat - i * length down to topLeftLat - (i + 1) * length, both edges
+  // inclusive, and the first row that contains the lat wins. Both edges decrease monotonically with i, so starting
+  // from the estimated row at most a step or two is needed to land on the first row whose bottom edge is <= lat.
+  private static int latIndex(double topLeftLat, double length, int splits, double lat) {
+    var index = clamp((int) ((topLeftLat - lat) / length), splits);
+    while (index > 0 && topLeftLat - index * length <= lat) {
+      index--;
+    }
+    while (index < splits && topLeftLat - (index + 1) * length > lat) {
+      index++;
+    }
+    return index < splits && topLeftLat - index * length >= lat ? index : -1;
+  }
+
+  // Columns run west to east. Column j spans topLeftLng + j * length to topLeftLng + (j + 1) * length, both edges
+  // inclusive, and the first column that contains the lng wins.
+  private static int lngIndex(double topLeftLng, double length, int splits, double lng) {
+    var index = clamp((int) ((lng - topLeftLng) / length), splits);
+    while (index > 0 && topLeftLng + index * length >= lng) {
+      index--;
+    }
+    while (index < splits && topLeftLng + (index + 1) * length < lng) {
+      index++;
+    }
+    return index < splits && topLeftLng + index * length <= lng ? index : -1;
+  }
+
+  private static int clamp(int index, int splits) {
+    return index < 0 ? 0 : index >= splits ? splits - 1 : index;
+  }
+}
@@ -1,8 +1,11 @@
 package io.example.shipping;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -249,6 +252,8 @@ public class OrderItemRedLeafEntity extends EventSourcedEntity<OrderItemRedLeafE
       List<OrderSkuItemId> orderSkuItemsAvailable,
       List<Consumed> orderSkuItemsConsumed) {
 
+    private static final int hashedLookupsMin = 64;
+
     static State emptyState() {
       return new State(null, null, 0, null, null, List.of(), List.of());
     }
@@ -276,9 +281,7 @@ public class OrderItemRedLeafEntity extends EventSourcedEntity<OrderItemRedLeafE
     }
 
     List<Event> eventsFor(StockOrderRequestsOrderSkuItemsCommand command) {
-      var alreadyConsumed = orderSkuItemsConsumed.stream()
-          .filter(consumed -> consumed.stockOrderRedLeafId().equals(command.stockOrderRedLeafId()))
-          .findFirst();
+      var alreadyConsumed = consumedBy(command.stockOrderRedLeafId());
       if (alreadyConsumed.isPresent()) { // Idempotent response
         var consumed = alreadyConsumed.get();
         return List.of(new StockOrderConsumedOrderSkuItemsEvent(orderItemRedLeafId, parentId, command.stockOrderRedLeafId,
@@ -296,16 +299,11 @@ public class OrderItemRedLeafEntity extends EventSourcedEntity<OrderItemRedLeafE
           .map(orderSkuItemId -> new OrderSkuItemToStockSkuItem(orderSkuItemId, stockSkuItemIdsQueue.poll()))
           .filter(orderSkuItem -> orderSkuItem.stockSkuItemId != null)
           .toList();
-      var orderSkuItemIdsConsumed = orderSkuItemsForStockOrder.stream()
-          .map(orderSkuItemToStockSkuItem -> orderSkuItemToStockSkuItem.orderSkuItemId())
-          .toList();
-      var newOrderSkuItemsAvailable = orderSkuItemsAvailable.stream()
-          .filter(orderSkuItem -> !orderSkuItemIdsConsumed.contains(orderSkuItem))
-          .toList();
+      var consumed = new Consumed(command.stockOrderRedLeafId(), orderSkuItemsForStockOrder);
+      var newOrderSkuItemsAvailable = availableWithout(consumed);
       var newReadyToShipAt = newOrderSkuItemsAvailable.isEmpty()
           ? Instant.now()
           : null;
-      var consumed = new Consumed(command.stockOrderRedLeafId(), orderSkuItemsForStockOrder);
       var newOrderSkuItemsConsumed = Stream.concat(this.orderSkuItemsConsumed.stream(), Stream.of(consumed))
           .filter(c -> c.orderSkuItemsToStockSkuItems().size() > 0)
           .toList();
@@ -324,9 +322,7 @@ public class OrderItemRedLeafEntity extends EventSourcedEntity<OrderItemRedLeafE
     }
 
     List<Event> eventsFor(StockOrderReleaseOrderSkuItemsCommand command) {
-      var orderSkuItemsReleased = orderSkuItemsConsumed.stream()
-          .filter(consumed -> consumed.stockOrderRedLeafId().equals(command.stockOrderRedLeafId()))
-          .findFirst()
+      var orderSkuItemsReleased = consumedBy(command.stockOrderRedLeafId())
           .map(consumed -> consumed.orderSkuItemsToStockSkuItems())
           .orElse(List.of())
           .stream()
@@ -360,14 +356,14 @@ public class OrderItemRedLeafEntity extends EventSourcedEntity<OrderItemRedLeafE
       }
 
       var consumed = new Consumed(command.stockOrderRedLeafId, command.orderSkuItemsConsumed);
-      var alreadyConsumed = orderSkuItemsConsumed.stream()
-          .anyMatch(c -> c.equals(consumed));
+      var alreadyConsumed = consumedBy(command.stockOrderRedLeafId).filter(consumed::equals).isPresent();
       if (alreadyConsumed) {
         return List.of();
       }
 
+      var orderSkuItemIdsAvailable = lookupOf(orderSkuItemsAvailable, command.orderSkuItemsConsumed.size());
       var areAllOrderSkuItemsToBeConsumedAvailable = command.orderSkuItemsConsumed.stream()
-          .allMatch(orderSkuItemToStockSkuItem -> orderSkuItemsAvailable.contains(orderSkuItemToStockSkuItem.orderSkuItemId()));
+          .allMatch(orderSkuItemToStockSkuItem -> orderSkuItemIdsAvailable.contains(orderSkuItemToStockSkuItem.orderSkuItemId()));
 
       if (!areAllOrderSkuItemsToBeConsumedAvailable) {
         var event = new OrderItemReleasedStockSkuItemsEvent(orderItemRedLeafId, parentId, command.stockOrderRedLeafId(), command.orderSkuItemsConsumed);
@@ -377,12 +373,7 @@ public class OrderItemRedLeafEntity extends EventSourcedEntity<OrderItemRedLeafE
             : List.of(event);
       }
 
-      var orderSkuItemIdsConsumed = command.orderSkuItemsConsumed.stream()
-          .map(OrderSkuItemToStockSkuItem::orderSkuItemId)
-          .toList();
-      var newOrderSkuItemsAvailable = orderSkuItemsAvailable.stream()
-          .filter(orderSkuItem -> !orderSkuItemIdsConsumed.contains(orderSkuItem))
-          .toList();
+      var newOrderSkuItemsAvailable = availableWithout(consumed);
       var filteredOrderSkuItemsConsumed = orderSkuItemsConsumed.stream()
           .filter(c -> !c.stockOrderRedLeafId().equals(command.stockOrderRedLeafId()))
           .toList();
@@ -450,6 +441,28 @@ public class OrderItemRedLeafEntity extends EventSourcedEntity<OrderItemRedLeafE
     State on(OrderItemSetBackOrderedOffEvent event) {
       return new State(orderItemRedLeafId, parentId, quantity, readyToShipAt, null, event.orderSkuItemsAvailable(), event.orderSkuItemsConsumed());
     }
+
+    // The stock order's entry is compared by its ID, the full entry is only compared once it is found
+    private Optional<Consumed> consumedBy(StockOrderRedLeafEntity.StockOrderRedLeafId stockOrderRedLeafId) {
+      return orderSkuItemsConsumed.stream()
+          .filter(consumed -> consumed.stockOrderRedLeafId().equals(stockOrderRedLeafId))
+          .findFirst();
+    }
+
+    // The available orderSkuItems not in consumed
+    private List<OrderSkuItemId> availableWithout(Consumed consumed) {
+      var orderSkuItemIdsConsumed = lookupOf(consumed.orderSkuItemsToStockSkuItems().stream()
+          .map(OrderSkuItemToStockSkuItem::orderSkuItemId)
+          .toList(), orderSkuItemsAvailable.size());
+      return orderSkuItemsAvailable.stream()
+          .filter(orderSkuItemId -> !orderSkuItemIdsConsumed.contains(orderSkuItemId))
+          .toList();
+    }
+
+    // A hash set of the items once there are enough lookups to pay for building it, see StockOrderRedLeafEntity.State
+    private static <T> Collection<T> lookupOf(List<T> items, int lookups) {
+      return (long) items.size() * lookups >= hashedLookupsMin ? new HashSet<>(items) : items;
+    }
   }
 
   public record OrderItemRedLeafId(String orderId, String skuId, UUID uuId) {
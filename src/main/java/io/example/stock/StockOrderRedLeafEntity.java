@@ -1,7 +1,12 @@
 package io.example.stock;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Stream;
 
@@ -13,12 +18,15 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import io.example.Validator;
 import io.example.shipping.OrderItemRedLeafEntity.OrderItemRedLeafId;
 import io.example.shipping.OrderItemRedLeafEntity.OrderSkuItemId;
 import io.grpc.Status;
 import kalix.javasdk.annotations.EventHandler;
 import kalix.javasdk.annotations.Id;
+import kalix.javasdk.annotations.Migration;
 import kalix.javasdk.annotations.TypeId;
 import kalix.javasdk.eventsourcedentity.EventSourcedEntity;
 import kalix.javasdk.eventsourcedentity.EventSourcedEntityContext;
@@ -245,6 +253,8 @@ public class StockOrderRedLeafEntity extends EventSourcedEntity<StockOrderRedLea
       List<StockSkuItemId> stockSkuItemsAvailable,
       List<Consumed> stockSkuItemsConsumed) {
 
+    private static final int hashedLookupsMin = 64;
+
     static State emptyState() {
       return new State(null, 0, false, List.of(), List.of());
     }
@@ -266,19 +276,17 @@ public class StockOrderRedLeafEntity extends EventSourcedEntity<StockOrderRedLea
     }
 
     List<Event> eventsFor(OrderItemRequestsStockSkuItemsCommand command) {
-      var alreadyConsumed = stockSkuItemsConsumed.stream()
-          .filter(consumed -> consumed.orderItemRedLeafId().equals(command.orderItemRedLeafId()))
-          .findFirst();
+      var alreadyConsumed = consumedBy(command.orderItemRedLeafId());
       if (alreadyConsumed.isPresent()) { // Idempotent response
         var consumed = alreadyConsumed.get();
         return List.of(new OrderItemConsumedStockSkuItemsEvent(stockOrderRedLeafId, command.orderItemRedLeafId,
-            availableToBeConsumed, stockSkuItemsAvailable, stockSkuItemsConsumed, consumed));
+            availableToBeConsumed, consumed, Consumed.quantityConsumed(stockSkuItemsConsumed)));
       }
 
       if (!availableToBeConsumed) {
         var consumed = new Consumed(command.orderItemRedLeafId, List.of());
         return List.of(new OrderItemConsumedStockSkuItemsEvent(stockOrderRedLeafId, command.orderItemRedLeafId,
-            availableToBeConsumed, stockSkuItemsAvailable, stockSkuItemsConsumed, consumed));
+            availableToBeConsumed, consumed, Consumed.quantityConsumed(stockSkuItemsConsumed)));
       }
 
       var orderSkuItemIdsQueue = new LinkedList<>(command.orderSkuItemsAvailable);
@@ -286,31 +294,20 @@ public class StockOrderRedLeafEntity extends EventSourcedEntity<StockOrderRedLea
           .map(stockSkuItemId -> new StockSkuItemToOrderSkuItem(stockSkuItemId, orderSkuItemIdsQueue.poll()))
           .filter(stockSkuItemToOrderSkuItem -> stockSkuItemToOrderSkuItem.orderSkuItemId() != null)
           .toList();
-      var stockSkuItemIds = stockSkuItemsForOrderItem.stream()
-          .map(stockSkuItemToOrderSkuItem -> stockSkuItemToOrderSkuItem.stockSkuItemId())
-          .toList();
-      var newStockSkuItemIds = this.stockSkuItemsAvailable.stream()
-          .filter(stockSkuItemId -> !stockSkuItemIds.contains(stockSkuItemId))
-          .toList();
+      var consumed = new Consumed(command.orderItemRedLeafId(), stockSkuItemsForOrderItem);
+      var newStockSkuItemIds = availableWithout(consumed);
       var newAvailableToBeConsumed = newStockSkuItemIds.isEmpty()
           ? false
           : availableToBeConsumed;
-      var consumed = new Consumed(command.orderItemRedLeafId(), stockSkuItemsForOrderItem);
-      var newStockSkuItemIdsConsumed = Stream.concat(this.stockSkuItemsConsumed.stream(), Stream.of(consumed))
-          .filter(c -> c.stockSkuItemsToOrderSkuItems().size() > 0)
-          .toList();
 
       return List.of(new OrderItemConsumedStockSkuItemsEvent(stockOrderRedLeafId, command.orderItemRedLeafId,
-          newAvailableToBeConsumed, newStockSkuItemIds, newStockSkuItemIdsConsumed, consumed));
+          newAvailableToBeConsumed, consumed, Consumed.quantityConsumed(consumedWith(command.orderItemRedLeafId(), consumed))));
     }
 
     List<Event> eventsFor(OrderItemReleaseStockSkuItemsCommand command) {
-      var stockSkuItemsReleased = stockSkuItemsConsumed.stream()
-          .filter(consumed -> consumed.orderItemRedLeafId().equals(command.orderItemRedLeafId))
-          .findFirst()
-          .map(consumed -> consumed.stockSkuItemsToOrderSkuItems())
-          .orElse(List.of())
-          .stream()
+      var released = consumedBy(command.orderItemRedLeafId)
+          .orElse(new Consumed(command.orderItemRedLeafId, List.of()));
+      var stockSkuItemsReleased = released.stockSkuItemsToOrderSkuItems().stream()
           .map(stockSkuItemToOrderSkuItem -> stockSkuItemToOrderSkuItem.stockSkuItemId())
           .toList();
 
@@ -319,12 +316,9 @@ public class StockOrderRedLeafEntity extends EventSourcedEntity<StockOrderRedLea
       }
 
       var newStockSkuItemAvailable = Stream.concat(stockSkuItemsAvailable.stream(), stockSkuItemsReleased.stream()).toList();
-      var newConsumedOrderItems = stockSkuItemsConsumed.stream()
-          .filter(consumed -> !consumed.orderItemRedLeafId().equals(command.orderItemRedLeafId))
-          .toList();
 
       var eventReleased = new OrderItemReleasedStockSkuItemsEvent(stockOrderRedLeafId, command.orderItemRedLeafId,
-          newStockSkuItemAvailable, newConsumedOrderItems);
+          released, Consumed.quantityConsumed(consumedWith(command.orderItemRedLeafId, null)));
       var eventRequests = new StockOrderRequestsOrderSkuItemsEvent(stockOrderRedLeafId, newStockSkuItemAvailable);
 
       return List.of(eventReleased, eventRequests);
@@ -338,14 +332,14 @@ public class StockOrderRedLeafEntity extends EventSourcedEntity<StockOrderRedLea
       }
 
       var consumed = new Consumed(command.orderItemRedLeafId(), command.stockSkuItemsConsumed());
-      var alreadyConsumed = stockSkuItemsConsumed.stream()
-          .anyMatch(c -> c.equals(consumed));
+      var alreadyConsumed = consumedBy(command.orderItemRedLeafId()).filter(consumed::equals).isPresent();
       if (alreadyConsumed) {
         return List.of();
       }
 
+      var stockSkuItemIdsAvailable = lookupOf(stockSkuItemsAvailable, command.stockSkuItemsConsumed.size());
       var areAllStockSkuItemsToBeConsumedAvailable = command.stockSkuItemsConsumed.stream()
-          .allMatch(stockSkuItemToOrderSkuItem -> stockSkuItemsAvailable.contains(stockSkuItemToOrderSkuItem.stockSkuItemId()));
+          .allMatch(stockSkuItemToOrderSkuItem -> stockSkuItemIdsAvailable.contains(stockSkuItemToOrderSkuItem.stockSkuItemId()));
 
       if (!areAllStockSkuItemsToBeConsumedAvailable) {
         var event = new StockOrderReleasedOrderSkuItemsEvent(stockOrderRedLeafId, command.orderItemRedLeafId(), command.stockSkuItemsConsumed);
@@ -355,23 +349,12 @@ public class StockOrderRedLeafEntity extends EventSourcedEntity<StockOrderRedLea
             : List.of(event);
       }
 
-      var stockSkuItemIdsConsumed = command.stockSkuItemsConsumed.stream()
-          .map(StockSkuItemToOrderSkuItem::stockSkuItemId)
-          .toList();
-      var newStockSkuItemsAvailable = stockSkuItemsAvailable.stream()
-          .filter(stockSkuItemId -> !stockSkuItemIdsConsumed.contains(stockSkuItemId))
-          .toList();
-      var filteredOrderSkuItemsConsumed = stockSkuItemsConsumed.stream()
-          .filter(c -> !c.orderItemRedLeafId().equals(command.orderItemRedLeafId()))
-          .toList();
-      var newOrderItemsConsumed = Stream.concat(filteredOrderSkuItemsConsumed.stream(), Stream.of(consumed))
-          .filter(c -> c.stockSkuItemsToOrderSkuItems().size() > 0)
-          .toList();
+      var newStockSkuItemsAvailable = availableWithout(consumed);
       var newAvailableToBeConsumed = newStockSkuItemsAvailable.isEmpty()
           ? false
           : availableToBeConsumed;
       var event = new StockOrderConsumedOrderSkuItemsEvent(stockOrderRedLeafId, command.orderItemRedLeafId, newAvailableToBeConsumed,
-          newStockSkuItemsAvailable, newOrderItemsConsumed);
+          consumed, Consumed.quantityConsumed(consumedWith(command.orderItemRedLeafId(), consumed)));
 
       log.debug("===== {} -> {}, available {}, consumed {}, available {}, consumed {}", stockOrderRedLeafId, command.orderItemRedLeafId,
           stockSkuItemsAvailable.size(), command.stockSkuItemsConsumed.size(),
@@ -401,16 +384,30 @@ public class StockOrderRedLeafEntity extends EventSourcedEntity<StockOrderRedLea
       return this;
     }
 
+    // Events written before they carried only the stockSkuItems moved hold the lists of the new state, which are used as is
     State on(OrderItemConsumedStockSkuItemsEvent event) {
-      return new State(stockOrderRedLeafId, quantity, event.availableToBeConsumed, event.stockSkuItemsAvailable, event.stockSkuItemsConsumed);
+      if (event.legacyStockSkuItemsAvailable() != null) {
+        return new State(stockOrderRedLeafId, quantity, event.availableToBeConsumed, event.legacyStockSkuItemsAvailable(), event.legacyStockSkuItemsConsumed());
+      }
+      return new State(stockOrderRedLeafId, quantity, event.availableToBeConsumed,
+          availableWithout(event.consumed()), consumedWith(event.orderItemRedLeafId(), event.consumed()));
     }
 
     State on(OrderItemReleasedStockSkuItemsEvent event) {
-      return new State(stockOrderRedLeafId, quantity, availableToBeConsumed, event.stockSkuItemsAvailable, event.stockSkuItemsConsumed);
+      if (event.legacyStockSkuItemsAvailable() != null) {
+        return new State(stockOrderRedLeafId, quantity, availableToBeConsumed, event.legacyStockSkuItemsAvailable(), event.legacyStockSkuItemsConsumed());
+      }
+      var stockSkuItemsReleased = event.released().stockSkuItemsToOrderSkuItems().stream().map(StockSkuItemToOrderSkuItem::stockSkuItemId);
+      return new State(stockOrderRedLeafId, quantity, availableToBeConsumed,
+          Stream.concat(stockSkuItemsAvailable.stream(), stockSkuItemsReleased).toList(), consumedWith(event.orderItemRedLeafId(), null));
     }
 
     State on(StockOrderConsumedOrderSkuItemsEvent event) {
-      return new State(stockOrderRedLeafId, quantity, event.availableToBeConsumed, event.stockSkuItemsAvailable, event.stockSkuItemsConsumed);
+      if (event.legacyStockSkuItemsAvailable() != null) {
+        return new State(stockOrderRedLeafId, quantity, event.availableToBeConsumed, event.legacyStockSkuItemsAvailable(), event.legacyStockSkuItemsConsumed());
+      }
+      return new State(stockOrderRedLeafId, quantity, event.availableToBeConsumed,
+          availableWithout(event.consumed()), consumedWith(event.orderItemRedLeafId(), event.consumed()));
     }
 
     State on(StockOrderReleasedOrderSkuItemsEvent event) {
@@ -424,6 +421,48 @@ public class StockOrderRedLeafEntity extends EventSourcedEntity<StockOrderRedLea
     State on(StockOrderUpdatedEvent event) {
       return this;
     }
+
+    // The order item's entry is compared by its ID, the full entry is only compared once it is found
+    private Optional<Consumed> consumedBy(OrderItemRedLeafId orderItemRedLeafId) {
+      return stockSkuItemsConsumed.stream()
+          .filter(consumed -> consumed.orderItemRedLeafId().equals(orderItemRedLeafId))
+          .findFirst();
+    }
+
+    private List<StockSkuItemId> availableWithout(Consumed consumed) {
+      var stockSkuItemIdsConsumed = lookupOf(consumed.stockSkuItemsToOrderSkuItems().stream()
+          .map(StockSkuItemToOrderSkuItem::stockSkuItemId)
+          .toList(), stockSkuItemsAvailable.size());
+      return stockSkuItemsAvailable.stream()
+          .filter(stockSkuItemId -> !stockSkuItemIdsConsumed.contains(stockSkuItemId))
+          .toList();
+    }
+
+    // A hash set of the items once there are enough lookups to pay for building it, so allocating m of n items is
+    // O(n + m) for large leaves, while small leaves scan the list
+    private static <T> Collection<T> lookupOf(List<T> items, int lookups) {
+      return (long) items.size() * lookups >= hashedLookupsMin ? new HashSet<>(items) : items;
+    }
+
+    // The consumed list with the order item's entry replaced by consumed where it is, appended when the order item has
+    // none, or removed when consumed is null or empty, so an idempotent response does not reorder the list
+    private List<Consumed> consumedWith(OrderItemRedLeafId orderItemRedLeafId, Consumed consumed) {
+      var isEmpty = consumed == null || consumed.stockSkuItemsToOrderSkuItems().isEmpty();
+      var newStockSkuItemsConsumed = new ArrayList<Consumed>(stockSkuItemsConsumed.size() + 1);
+      var replaced = false;
+      for (var c : stockSkuItemsConsumed) {
+        if (!c.orderItemRedLeafId().equals(orderItemRedLeafId)) {
+          newStockSkuItemsConsumed.add(c);
+        } else if (!isEmpty && !replaced) {
+          newStockSkuItemsConsumed.add(consumed);
+          replaced = true;
+        }
+      }
+      if (!isEmpty && !replaced) {
+        newStockSkuItemsConsumed.add(consumed);
+      }
+      return Collections.unmodifiableList(newStockSkuItemsConsumed);
+    }
   }
 
   public record StockOrderRedLeafId(String stockOrderId, String skuId, int branchLevel, int branchNumber, UUID uuid) {
@@ -477,21 +516,50 @@ public class StockOrderRedLeafEntity extends EventSourcedEntity<StockOrderRedLea
   public record OrderItemRequestsStockSkuItemsCommand(StockOrderRedLeafId stockOrderRedLeafId, OrderItemRedLeafId orderItemRedLeafId,
       List<OrderSkuItemId> orderSkuItemsAvailable) {}
 
+  // The allocation events carry the stockSkuItems moved to or from one order item and the leaf's quantity consumed after
+  // the event, not the leaf's lists, so each event is the size of one allocation. Events written before hold the lists
+  // in the legacy fields, see StockOrderRedLeafEventMigration.
+  @Migration(StockOrderRedLeafEventMigration.class)
   public record OrderItemConsumedStockSkuItemsEvent(StockOrderRedLeafId stockOrderRedLeafId, OrderItemRedLeafId orderItemRedLeafId,
-      boolean availableToBeConsumed,
-      List<StockSkuItemId> stockSkuItemsAvailable, List<Consumed> stockSkuItemsConsumed, Consumed consumed) implements Event {}
+      boolean availableToBeConsumed, Consumed consumed, int quantityConsumed,
+      @JsonInclude(JsonInclude.Include.NON_NULL) List<StockSkuItemId> legacyStockSkuItemsAvailable,
+      @JsonInclude(JsonInclude.Include.NON_NULL) List<Consumed> legacyStockSkuItemsConsumed) implements Event {
+
+    public OrderItemConsumedStockSkuItemsEvent(StockOrderRedLeafId stockOrderRedLeafId, OrderItemRedLeafId orderItemRedLeafId,
+        boolean availableToBeConsumed, Consumed consumed, int quantityConsumed) {
+      this(stockOrderRedLeafId, orderItemRedLeafId, availableToBeConsumed, consumed, quantityConsumed, null, null);
+    }
+  }
 
   public record OrderItemReleaseStockSkuItemsCommand(StockOrderRedLeafId stockOrderRedLeafId, OrderItemRedLeafId orderItemRedLeafId) {}
 
+  // released is null in events written before it was kept
+  @Migration(StockOrderRedLeafEventMigration.class)
   public record OrderItemReleasedStockSkuItemsEvent(StockOrderRedLeafId stockOrderRedLeafId, OrderItemRedLeafId orderItemRedLeafId,
-      List<StockSkuItemId> stockSkuItemsAvailable, List<Consumed> stockSkuItemsConsumed) implements Event {}
+      Consumed released, int quantityConsumed,
+      @JsonInclude(JsonInclude.Include.NON_NULL) List<StockSkuItemId> legacyStockSkuItemsAvailable,
+      @JsonInclude(JsonInclude.Include.NON_NULL) List<Consumed> legacyStockSkuItemsConsumed) implements Event {
+
+    public OrderItemReleasedStockSkuItemsEvent(StockOrderRedLeafId stockOrderRedLeafId, OrderItemRedLeafId orderItemRedLeafId,
+        Consumed released, int quantityConsumed) {
+      this(stockOrderRedLeafId, orderItemRedLeafId, released, quantityConsumed, null, null);
+    }
+  }
 
   public record StockOrderConsumedOrderSkuItemsCommand(StockOrderRedLeafId stockOrderRedLeafId, OrderItemRedLeafId orderItemRedLeafId,
       List<StockSkuItemToOrderSkuItem> stockSkuItemsConsumed) {}
 
+  @Migration(StockOrderRedLeafEventMigration.class)
   public record StockOrderConsumedOrderSkuItemsEvent(StockOrderRedLeafId stockOrderRedLeafId, OrderItemRedLeafId orderItemRedLeafId,
-      boolean availableToBeConsumed,
-      List<StockSkuItemId> stockSkuItemsAvailable, List<Consumed> stockSkuItemsConsumed) implements Event {}
+      boolean availableToBeConsumed, Consumed consumed, int quantityConsumed,
+      @JsonInclude(JsonInclude.Include.NON_NULL) List<StockSkuItemId> legacyStockSkuItemsAvailable,
+      @JsonInclude(JsonInclude.Include.NON_NULL) List<Consumed> legacyStockSkuItemsConsumed) implements Event {
+
+    public StockOrderConsumedOrderSkuItemsEvent(StockOrderRedLeafId stockOrderRedLeafId, OrderItemRedLeafId orderItemRedLeafId,
+        boolean availableToBeConsumed, Consumed consumed, int quantityConsumed) {
+      this(stockOrderRedLeafId, orderItemRedLeafId, availableToBeConsumed, consumed, quantityConsumed, null, null);
+    }
+  }
 
   public record StockOrderReleasedOrderSkuItemsEvent(StockOrderRedLeafId stockOrderRedLeafId, OrderItemRedLeafId orderItemRedLeafId,
       List<StockSkuItemToOrderSkuItem> stockSkuItemsReleased) implements Event {}
@@ -0,0 +1,50 @@
+package io.example.stock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import kalix.javasdk.JsonMigration;
+
+// Version 0 allocation events of the StockOrderRedLeafEntity hold the leaf's stockSkuItemsAvailable and
+// stockSkuItemsConsumed lists after the event. Version 1 events hold only the stockSkuItems moved and the leaf's
+// quantity consumed. The version 0 lists are moved to the legacy fields, which are used as is, and the quantity
+// consumed is counted from the consumed list.
+//
+// Version 0 StockOrderConsumedOrderSkuItemsEvents did not hold what the order item consumed, it is taken from the
+// consumed list. Version 0 OrderItemReleasedStockSkuItemsEvents did not hold what was released, released stays null.
+//
+public class StockOrderRedLeafEventMigration extends JsonMigration {
+
+  @Override
+  public int currentVersion() {
+    return 1;
+  }
+
+  @Override
+  public JsonNode transform(int fromVersion, JsonNode json) {
+    if (fromVersion < 1 && json instanceof ObjectNode objectNode && objectNode.has("stockSkuItemsConsumed")) {
+      var consumedList = objectNode.remove("stockSkuItemsConsumed");
+      objectNode.set("legacyStockSkuItemsAvailable", objectNode.remove("stockSkuItemsAvailable"));
+      objectNode.set("legacyStockSkuItemsConsumed", consumedList);
+
+      var quantityConsumed = 0;
+      for (var consumed : consumedList) {
+        quantityConsumed += consumed.path("stockSkuItemsToOrderSkuItems").size();
+      }
+      objectNode.put("quantityConsumed", quantityConsumed);
+
+      var isConsumedEvent = objectNode.has("availableToBeConsumed"); // released events do not have it
+      if (isConsumedEvent && !objectNode.has("consumed")) {
+        var consumed = objectNode.putObject("consumed");
+        consumed.set("orderItemRedLeafId", objectNode.get("orderItemRedLeafId"));
+        consumed.putArray("stockSkuItemsToOrderSkuItems");
+        for (var c : consumedList) {
+          if (c.path("orderItemRedLeafId").equals(objectNode.get("orderItemRedLeafId"))) {
+            consumed.set("stockSkuItemsToOrderSkuItems", c.path("stockSkuItemsToOrderSkuItems").deepCopy());
+          }
+        }
+      }
+    }
+    return json;
+  }
+}
@@ -1,7 +1,5 @@
 package io.example.stock;
 
-import java.util.List;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,34 +21,32 @@ public class StockOrderRedLeafToStockOrderRedTreeAction extends Action {
     log.info("Event: {}", event);
     LogEvent.log("StockOrderRedLeaf", event.stockOrderRedLeafId().toEntityId(), "StockOrderRedTree", event.stockOrderRedLeafId().parentId().toEntityId(), "");
 
-    return callFor(event.stockOrderRedLeafId(), event.stockSkuItemsConsumed());
+    return callFor(event.stockOrderRedLeafId(), event.quantityConsumed());
   }
 
   public Effect<String> on(StockOrderRedLeafEntity.OrderItemReleasedStockSkuItemsEvent event) {
     log.info("Event: {}", event);
     LogEvent.log("StockOrderRedLeaf", event.stockOrderRedLeafId().toEntityId(), "StockOrderRedTree", event.stockOrderRedLeafId().parentId().toEntityId(), "");
 
-    return callFor(event.stockOrderRedLeafId(), event.stockSkuItemsConsumed());
+    return callFor(event.stockOrderRedLeafId(), event.quantityConsumed());
   }
 
   public Effect<String> on(StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsEvent event) {
     log.info("Event: {}", event);
     LogEvent.log("StockOrderRedLeaf", event.stockOrderRedLeafId().toEntityId(), "StockOrderRedTree", event.stockOrderRedLeafId().parentId().toEntityId(), "");
 
-    return callFor(event.stockOrderRedLeafId(), event.stockSkuItemsConsumed());
+    return callFor(event.stockOrderRedLeafId(), event.quantityConsumed());
   }
 
   Effect<String> callFor(StockOrderRedLeafEntity.OrderItemConsumedStockSkuItemsEvent event) {
-    return callFor(event.stockOrderRedLeafId(), event.stockSkuItemsConsumed());
+    return callFor(event.stockOrderRedLeafId(), event.quantityConsumed());
   }
 
   Effect<String> callFor(StockOrderRedLeafEntity.OrderItemReleasedStockSkuItemsEvent event) {
-    return callFor(event.stockOrderRedLeafId(), event.stockSkuItemsConsumed());
+    return callFor(event.stockOrderRedLeafId(), event.quantityConsumed());
   }
 
-  Effect<String> callFor(StockOrderRedLeafEntity.StockOrderRedLeafId stockOrderRedLeafId, List<StockOrderRedLeafEntity.Consumed> consumed) {
-    var quantityConsumed = StockOrderRedLeafEntity.Consumed.quantityConsumed(consumed);
-
+  Effect<String> callFor(StockOrderRedLeafEntity.StockOrderRedLeafId stockOrderRedLeafId, int quantityConsumed) {
     log.debug("===== {}, tree quantity consumed {}", stockOrderRedLeafId, quantityConsumed); // TODO: remove after testing
 
     var subBranchId = StockOrderRedTreeEntity.StockOrderRedTreeId.of(stockOrderRedLeafId);
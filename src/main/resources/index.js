@@ -1,6 +1,9 @@
 const geoOrdersQueryIntervalMs = 1000;
 const generatorQueryIntervalMs = 1000;
 const regionQueryIntervalMs = 1000;
+const geoOrderClustersZoomMax = 13; // below this map zoom geo orders are drawn as clusters
+const regionPersistedZoomMin = 3; // regions above this zoom are summed on query, see earth-ship.region.persisted-zoom-min
+const packedMediaType = 'application/vnd.earth-ship.packed'; // see PackedMapFormat.java
 
 const labelColor = [200, 0, 0, 255];
 const labelColorRadius = labelColor;
@@ -32,6 +35,7 @@ const quadrantTopLeft = 4;
 
 const urlPrefix = assignUrlPrefix();
 let queryResponseGeoOrders = [];
+let queryResponseGeoOrderClusters = [];
 let queryResponseGenerators = [];
 let queryResponseRegions = [];
 
@@ -752,8 +756,8 @@ function setup() {
 
   scheduleNextGeoOrderQuery(0);
   scheduleNextGeneratorQuery(0);
-  scheduleNextRegionQuery(0);
-  scheduleNextRegionGet();
+  streamRegions();
+  getWorldWideGeoOrderCounts();
 
   stopwatch.setup();
 }
@@ -772,6 +776,7 @@ function drawMapOverlay() {
   drawLatLngGrid();
   drawRegions();
   drawGeoOrders();
+  drawGeoOrderClusters();
   drawCrossHairs();
   drawGenerators();
   drawMouseLocation();
@@ -869,17 +874,26 @@ function drawGeoOrders() {
   strokeWeight(weight);
   queryResponseGeoOrders.forEach((geoOrder) => {
     const geoOrderXY = worldMap.latLngToPixel(geoOrder.position.lat, geoOrder.position.lng);
-    stroke(
-      geoOrder.readyToShipAt && geoOrder.readyToShipAt.length > 0 //
-        ? [35, 65, 235]
-        : geoOrder.backOrderedAt && geoOrder.backOrderedAt.length > 0
-        ? [230, 0, 0]
-        : [65, 75, 125]
-    );
+    const status = geoOrderStatus(geoOrder);
+    stroke(status === geoOrderStatusReadyToShip ? [35, 65, 235] : status === geoOrderStatusBackOrdered ? [230, 0, 0] : [65, 75, 125]);
     point(geoOrderXY.x, geoOrderXY.y);
   });
 }
 
+// Cluster area grows with the geo order count, the colour is the mix of created, ready to ship and back ordered
+function drawGeoOrderClusters() {
+  noStroke();
+  queryResponseGeoOrderClusters.forEach((cluster) => {
+    const count = cluster.geoOrderCount || 0;
+    const created = (cluster.geoOrderCreatedCount || 0) / count;
+    const ready = (cluster.geoOrderReadyToShipCount || 0) / count;
+    const backOrdered = (cluster.geoOrderBackOrderedCount || 0) / count;
+    const xy = worldMap.latLngToPixel(cluster.position.lat || 0.0, cluster.position.lng || 0.0);
+    fill(65 * created + 35 * ready + 230 * backOrdered, 75 * created + 65 * ready, 125 * created + 235 * ready, 160);
+    circle(xy.x, xy.y, constrain(4 * sqrt(count), 4, 60));
+  });
+}
+
 function drawZoomAndMouseLocation() {
   const zoom = worldMap.zoom();
   const latLng = worldMap.pixelToLatLng(mouseX, mouseY);
@@ -1225,21 +1239,26 @@ function scheduleNextGeoOrderQuery(lastQueryDurationMs) {
 
 function queryGeoOrders() {
   const zoom = worldMap.getZoom();
-  if (zoom < 10) {
+  if (zoom <= geoOrderClustersZoomMax) {
     queryResponseGeoOrders = [];
-    scheduleNextGeoOrderQuery(0);
+    queryGeoOrderClusters(zoom);
     return;
   }
+  queryResponseGeoOrderClusters = [];
   const startTimeMs = performance.now();
   const topLeft = worldMap.pixelToLatLng(0, 0);
   const botRight = worldMap.pixelToLatLng(windowWidth - 1, windowHeight - 1);
+  if (geoOrderStreamSupported) {
+    streamGeoOrders(startTimeMs, topLeft, botRight);
+    return;
+  }
   let nextPageToken = '';
   let hasMore = false;
   let path = '';
   let geoOrders = [];
 
-  path = `${urlPrefix}/geo-orders/by-location/${topLeft.lat}/${topLeft.lng}/${botRight.lat}/${botRight.lng}?nextPageToken=${nextPageToken}`;
-  httpGet(path, 'json', responseGeoOrders, errorGeoOrders);
+  path = `${urlPrefix}/geo-orders/by-tiles/${topLeft.lat}/${topLeft.lng}/${botRight.lat}/${botRight.lng}?nextPageToken=${nextPageToken}`;
+  httpGetPacked(path, responseGeoOrders, errorGeoOrders);
 
   function isNotEmpty(json) {
     return json && json.geoOrders && json.geoOrders.length > 0;
@@ -1252,8 +1271,8 @@ function queryGeoOrders() {
       geoOrders = geoOrders.concat(json.geoOrders);
 
       if (hasMore) {
-        path = `${urlPrefix}/geo-orders/by-location/${topLeft.lat}/${topLeft.lng}/${botRight.lat}/${botRight.lng}?nextPageToken=${nextPageToken}`;
-        httpGet(path, 'json', responseGeoOrders, errorGeoOrders);
+        path = `${urlPrefix}/geo-orders/by-tiles/${topLeft.lat}/${topLeft.lng}/${botRight.lat}/${botRight.lng}?nextPageToken=${encodeURIComponent(nextPageToken)}`;
+        httpGetPacked(path, responseGeoOrders, errorGeoOrders);
       } else {
         queryResponseGeoOrders = geoOrders;
         logQueryResponse(startTimeMs, queryResponseGeoOrders, 'geoOrders');
@@ -1272,6 +1291,63 @@ function queryGeoOrders() {
   }
 }
 
+let geoOrderStreamSupported = true;
+
+// All the geo orders in the viewport in one streamed response, one JSON row per server sent event. The geo orders of
+// the previous query are drawn until the streamed geo orders replace them, so the map fills in without flicker.
+function streamGeoOrders(startTimeMs, topLeft, botRight) {
+  const path = `${urlPrefix}/geo-orders/by-tiles-stream/${topLeft.lat}/${topLeft.lng}/${botRight.lat}/${botRight.lng}`;
+  const previous = queryResponseGeoOrders;
+  const geoOrders = [];
+  const decoder = new TextDecoder();
+  let pending = '';
+
+  fetch(path, { headers: { Accept: 'text/event-stream' } })
+    .then((response) => {
+      if (!response.ok || !response.body) {
+        throw new Error(`${response.status} ${response.statusText}`);
+      }
+      const reader = response.body.getReader();
+      return reader.read().then(function readChunk({ done, value }) {
+        if (done) {
+          queryResponseGeoOrders = geoOrders;
+          logQueryResponse(startTimeMs, geoOrders, 'geoOrders streamed');
+          scheduleNextGeoOrderQuery(performance.now() - startTimeMs);
+          return;
+        }
+        const lines = (pending + decoder.decode(value, { stream: true })).split('\n');
+        pending = lines.pop();
+        lines.filter((line) => line.startsWith('data:')).forEach((line) => geoOrders.push(JSON.parse(line.substring(5))));
+        queryResponseGeoOrders = geoOrders.length >= previous.length ? geoOrders : geoOrders.concat(previous.slice(geoOrders.length));
+        return reader.read().then(readChunk);
+      });
+    })
+    .catch((error) => {
+      console.log('Geo order stream failed, querying geo order pages instead:', error);
+      geoOrderStreamSupported = geoOrders.length > 0;
+      scheduleNextGeoOrderQuery(0);
+    });
+}
+
+function queryGeoOrderClusters(zoom) {
+  const startTimeMs = performance.now();
+  const topLeft = worldMap.pixelToLatLng(0, 0);
+  const botRight = worldMap.pixelToLatLng(windowWidth - 1, windowHeight - 1);
+  const path = `${urlPrefix}/geo-orders/clusters/${zoom}/${topLeft.lat}/${topLeft.lng}/${botRight.lat}/${botRight.lng}`;
+  httpGet(path, 'json', responseGeoOrderClusters, errorGeoOrderClusters);
+
+  function responseGeoOrderClusters(json) {
+    queryResponseGeoOrderClusters = json && json.clusters ? json.clusters : [];
+    logQueryResponse(startTimeMs, queryResponseGeoOrderClusters, 'geoOrder clusters');
+    scheduleNextGeoOrderQuery(performance.now() - startTimeMs);
+  }
+
+  function errorGeoOrderClusters(error) {
+    console.log('HTTP error, query geoOrder clusters:', error);
+    scheduleNextGeoOrderQuery(0);
+  }
+}
+
 function scheduleNextGeneratorQuery(lastQueryDurationMs) {
   const timeout = max(1, generatorQueryIntervalMs - lastQueryDurationMs);
   setTimeout(queryGenerators, timeout);
@@ -1281,7 +1357,7 @@ function queryGenerators() {
   const startTimeMs = performance.now();
   const topLeft = worldMap.pixelToLatLng(0, 0);
   const botRight = worldMap.pixelToLatLng(windowWidth - 1, windowHeight - 1);
-  const path = `${urlPrefix}/generators/by-location/${topLeft.lat}/${topLeft.lng}/${botRight.lat}/${botRight.lng}`;
+  const path = `${urlPrefix}/generators/by-tiles/${topLeft.lat}/${topLeft.lng}/${botRight.lat}/${botRight.lng}`;
   httpGet(path, 'json', responseGenerators, errorGenerators);
 
   function isNotEmpty(json) {
@@ -1341,26 +1417,147 @@ function queryGenerators() {
   }
 }
 
+// Regions are streamed from the server as they are released, for the viewport plus a margin of half the viewport on
+// each side. The stream is only reopened when the zoom changes or the viewport leaves the streamed bounds. When the
+// stream cannot be opened the regions are polled instead.
+const regionStream = { source: null, zoom: -1, topLeft: null, botRight: null, regionsById: new Map(), changed: false };
+
+function streamRegions() {
+  const zoom = worldMap.getZoom();
+  const topLeft = worldMap.pixelToLatLng(0, 0);
+  const botRight = worldMap.pixelToLatLng(windowWidth - 1, windowHeight - 1);
+
+  if (zoom < regionPersistedZoomMin) { // the top regions are not in the view, they are polled from the region changes
+    if (regionStream.source !== null) {
+      regionStream.source.close();
+      regionStream.source = null;
+    }
+    queryTopRegions(zoom, topLeft, botRight);
+    setTimeout(streamRegions, regionQueryIntervalMs);
+    return;
+  }
+  if (regionStream.source === null || zoom !== regionStream.zoom || !isInStreamBounds(topLeft, botRight)) {
+    openRegionStream(zoom, topLeft, botRight);
+  }
+  if (regionStream.changed) {
+    regionStream.changed = false;
+    queryResponseRegions = [...regionStream.regionsById.values()];
+  }
+  if (regionStream.source !== null) {
+    setTimeout(streamRegions, 100);
+  }
+
+  function isInStreamBounds(topLeft, botRight) {
+    return regionStream.topLeft.lat >= topLeft.lat
+      && regionStream.topLeft.lng <= topLeft.lng
+      && regionStream.botRight.lat <= botRight.lat
+      && regionStream.botRight.lng >= botRight.lng;
+  }
+}
+
+function queryTopRegions(zoom, topLeft, botRight) {
+  const startTimeMs = performance.now();
+  const path = `${urlPrefix}/regions/changes/${zoom}/${topLeft.lat}/${topLeft.lng}/${botRight.lat}/${botRight.lng}?since=0`;
+  httpGetPacked(
+    path,
+    (json) => {
+      queryResponseRegions = json && json.regions ? json.regions.filter((region) => region.geoOrderCount > 0) : [];
+      logQueryResponse(startTimeMs, queryResponseRegions, 'top regions');
+    },
+    (error) => console.log('HTTP error, query top regions:', error)
+  );
+}
+
+function openRegionStream(zoom, topLeft, botRight) {
+  if (regionStream.source !== null) {
+    regionStream.source.close();
+  }
+  const latMargin = (topLeft.lat - botRight.lat) / 2;
+  const lngMargin = (botRight.lng - topLeft.lng) / 2;
+  regionStream.zoom = zoom;
+  regionStream.topLeft = { lat: min(90, topLeft.lat + latMargin), lng: max(-180, topLeft.lng - lngMargin) };
+  regionStream.botRight = { lat: max(-90, botRight.lat - latMargin), lng: min(180, botRight.lng + lngMargin) };
+  regionStream.regionsById = new Map();
+  regionStream.changed = true;
+
+  const { lat: topLeftLat, lng: topLeftLng } = regionStream.topLeft;
+  const { lat: botRightLat, lng: botRightLng } = regionStream.botRight;
+  const path = `${urlPrefix}/regions/by-location-stream/${zoom}/${topLeftLat}/${topLeftLng}/${botRightLat}/${botRightLng}`;
+  const source = new EventSource(path);
+  let received = false;
+  regionStream.source = source;
+
+  source.onmessage = (event) => {
+    received = true;
+    const region = JSON.parse(event.data);
+    if (region.geoOrderCount > 0) {
+      regionStream.regionsById.set(region.regionId, region);
+    } else {
+      regionStream.regionsById.delete(region.regionId);
+    }
+    regionStream.changed = true;
+  };
+
+  source.onerror = (error) => {
+    if (!received && regionStream.source === source) {
+      console.log('Region stream failed, polling regions instead:', error);
+      source.close();
+      regionStream.source = null;
+      scheduleNextRegionQuery(0);
+    }
+  };
+}
+
 function scheduleNextRegionQuery(lastQueryDurationMs) {
   const timeout = max(1, regionQueryIntervalMs - lastQueryDurationMs);
   setTimeout(queryRegions, timeout);
 }
 
+const regionChanges = { zoom: -1, path: '', watermark: 0, regionsById: new Map() };
+
 function queryRegions() {
   const startTimeMs = performance.now();
   const zoom = worldMap.getZoom();
   const topLeft = worldMap.pixelToLatLng(0, 0);
   const botRight = worldMap.pixelToLatLng(windowWidth - 1, windowHeight - 1);
-  const path = `${urlPrefix}/regions/by-location/${zoom}/${topLeft.lat}/${topLeft.lng}/${botRight.lat}/${botRight.lng}`;
-  httpGet(path, 'json', responseRegions, errorRegions);
+  const path = `${urlPrefix}/regions/changes/${zoom}/${topLeft.lat}/${topLeft.lng}/${botRight.lat}/${botRight.lng}`;
+  if (path !== regionChanges.path) { // the viewport moved, start again with all the regions in view
+    regionChanges.path = path;
+    regionChanges.watermark = 0;
+    regionChanges.regionsById = new Map();
+  }
+  const since = regionChanges.watermark;
+  let watermark = -1;
+  queryPage(null);
 
-  function isNotEmpty(json) {
-    return json && json.regions && json.regions.length > 0;
+  function queryPage(nextPageToken) {
+    const pageParam = nextPageToken ? `&nextPageToken=${encodeURIComponent(nextPageToken)}` : '';
+    httpGetPacked(`${path}?since=${since}${pageParam}`, responseRegions, errorRegions);
   }
 
   function responseRegions(json) {
-    queryResponseRegions = isNotEmpty(json) ? json.regions : [];
-    logQueryResponse(startTimeMs, queryResponseRegions, 'regions');
+    if (path !== regionChanges.path) {
+      scheduleNextRegionQuery(performance.now() - startTimeMs);
+      return;
+    }
+    const regions = json && json.regions ? json.regions : [];
+    regions.forEach((region) => {
+      if (region.geoOrderCount > 0) {
+        regionChanges.regionsById.set(region.regionId, region);
+      } else {
+        regionChanges.regionsById.delete(region.regionId);
+      }
+    });
+    if (watermark < 0) { // later pages use the watermark of the first page
+      watermark = json && json.watermark ? json.watermark : since;
+    }
+    if (json && json.hasMore && json.nextPageToken) {
+      queryPage(json.nextPageToken);
+      return;
+    }
+    regionChanges.watermark = watermark;
+    queryResponseRegions = [...regionChanges.regionsById.values()];
+    logQueryResponse(startTimeMs, regions, 'region changes');
     scheduleNextRegionQuery(performance.now() - startTimeMs);
   }
 
@@ -1370,6 +1567,81 @@ function queryRegions() {
   }
 }
 
+// Map queries ask for the packed map format and also accept JSON, the decoded replies have the JSON shape
+function httpGetPacked(path, onResponse, onError) {
+  fetch(path, { headers: { Accept: `${packedMediaType}, application/json;q=0.9` } })
+    .then((response) => {
+      if (!response.ok) {
+        throw new Error(`${response.status} ${response.statusText}`);
+      }
+      const contentType = response.headers.get('Content-Type') || '';
+      return contentType.startsWith(packedMediaType) ? response.arrayBuffer().then(decodePacked) : response.json();
+    })
+    .then(onResponse, onError);
+}
+
+const geoOrderStatusCreated = 0;
+const geoOrderStatusReadyToShip = 1;
+const geoOrderStatusBackOrdered = 2;
+
+function geoOrderStatus(geoOrder) {
+  if (geoOrder.status !== undefined) {
+    return geoOrder.status;
+  }
+  return geoOrder.backOrderedAt && geoOrder.backOrderedAt.length > 0
+    ? geoOrderStatusBackOrdered
+    : geoOrder.readyToShipAt && geoOrder.readyToShipAt.length > 0
+    ? geoOrderStatusReadyToShip
+    : geoOrderStatusCreated;
+}
+
+function decodePacked(buffer) {
+  const view = new DataView(buffer);
+  const magic = String.fromCharCode(view.getUint8(0), view.getUint8(1), view.getUint8(2), view.getUint8(3));
+  if (magic !== 'ESPK' || view.getUint8(4) !== 1) {
+    throw new Error(`Unsupported packed reply ${magic} version ${view.getUint8(4)}`);
+  }
+  const kind = view.getUint8(5);
+  const hasMore = (view.getUint8(6) & 1) === 1;
+  const zoom = view.getUint8(7);
+  const count = view.getUint32(8, true);
+  const tokenLength = view.getUint16(12, true);
+  const geoOrderIdsLength = view.getUint32(16, true);
+  const watermark = view.getFloat64(24, true);
+  const decoder = new TextDecoder();
+  const nextPageToken = decoder.decode(new Uint8Array(buffer, 32, tokenLength));
+  const columnsOffset = 32 + ((tokenLength + 3) & ~3);
+  const column = (i) => new Int32Array(buffer, columnsOffset + 4 * count * i, count);
+  const scale = 1e-7;
+
+  if (kind === 1) {
+    const [rows, cols, topLeftLats, topLeftLngs, botRightLats, botRightLngs, counts, alarmCounts, readyCounts] = [0, 1, 2, 3, 4, 5, 6, 7, 8].map(column);
+    const regions = new Array(count);
+    for (let i = 0; i < count; i++) {
+      const region = {
+        zoom,
+        topLeft: { lat: topLeftLats[i] * scale, lng: topLeftLngs[i] * scale },
+        botRight: { lat: botRightLats[i] * scale, lng: botRightLngs[i] * scale },
+        geoOrderCount: counts[i],
+        geoOrderAlarmCount: alarmCounts[i],
+        geoOrderReadyCount: readyCounts[i],
+      };
+      regions[i] = { regionId: `${zoom}-${rows[i]}-${cols[i]}`, region, geoOrderCount: counts[i], geoOrderAlarmCount: alarmCounts[i] };
+    }
+    return { regions, watermark, nextPageToken, hasMore };
+  }
+
+  const lats = column(0);
+  const lngs = column(1);
+  const statuses = new Uint8Array(buffer, columnsOffset + 8 * count, count);
+  const geoOrderIds = count > 0 ? decoder.decode(new Uint8Array(buffer, columnsOffset + 9 * count, geoOrderIdsLength)).split('\n') : [];
+  const geoOrders = new Array(count);
+  for (let i = 0; i < count; i++) {
+    geoOrders[i] = { geoOrderId: geoOrderIds[i], position: { lat: lats[i] * scale, lng: lngs[i] * scale }, status: statuses[i] };
+  }
+  return { geoOrders, nextPageToken, hasMore };
+}
+
 function logQueryResponse(startTimeMs, response, label) {
   const endTimeMs = performance.now();
   const elapsedMs = endTimeMs - startTimeMs;
@@ -1382,17 +1654,16 @@ function scheduleNextRegionGet() {
 
 function getWorldWideGeoOrderCounts() {
   const startTimeMs = performance.now();
-  const regionId = '0_90.0000000000000_-180.0000000000000_-90.0000000000000_180.0000000000000';
-  const path = `${urlPrefix}/region/${regionId}`;
+  const path = `${urlPrefix}/regions/changes/0/90/-180/-90/180?since=0`;
   httpGet(path, 'json', responseWorldWideGeoOrderCount, errorWorldWideGeoOrderCount);
 
   function isNotEmpty(json) {
-    return json && json.region && json.region.geoOrderCount;
+    return json && json.regions && json.regions.length > 0 && json.regions[0].geoOrderCount;
   }
 
   function responseWorldWideGeoOrderCount(json) {
     worldWideGeoOrderCounts = isNotEmpty(json) //
-      ? { geoOrders: json.region.geoOrderCount, alarms: json.region.geoOrderAlarmCount }
+      ? { geoOrders: json.regions[0].geoOrderCount, alarms: json.regions[0].geoOrderAlarmCount }
       : { geoOrders: 0, alarms: 0 };
     scheduleNextRegionGet();
     logGet(startTimeMs);
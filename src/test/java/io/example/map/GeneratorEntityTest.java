@@ -0,0 +1,165 @@
+package io.example.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.example.map.GeneratorEntity.GeoOrdersToGenerateEvent;
+import io.example.map.WorldMap.LatLng;
+import kalix.javasdk.JsonSupport;
+
+public class GeneratorEntityTest {
+  @Test
+  void geoOrdersToGenerateEventIsDeterministicTest() throws Exception {
+    var seed = GeneratorEntity.State.seedFor("generator-1", 1_700_000_000_000L);
+    var event = GeoOrdersToGenerateEvent.with("generator-1", new LatLng(51.5, -0.12), 10, null, seed, 64, 32);
+
+    var geoOrders = event.geoOrders();
+    assertEquals(32, geoOrders.size());
+    assertEquals(geoOrders, event.geoOrders());
+
+    var json = JsonSupport.getObjectMapper().writeValueAsBytes(event);
+    var replayed = JsonSupport.getObjectMapper().readValue(json, GeoOrdersToGenerateEvent.class);
+    assertEquals(event, replayed);
+    assertEquals(geoOrders, replayed.geoOrders());
+
+    var nextBatch = GeoOrdersToGenerateEvent.with("generator-1", new LatLng(51.5, -0.12), 10, null, seed, 96, 32);
+    assertNotEquals(geoOrders.get(0), nextBatch.geoOrders().get(0));
+
+    for (var geoOrder : geoOrders) {
+      assertEquals(GeoOrderEntity.geoOrderIdFor(geoOrder.position()), geoOrder.geoOrderId());
+      assertTrue(distanceKm(new LatLng(51.5, -0.12), geoOrder.position()) <= 10.001);
+    }
+  }
+
+  @Test
+  void geoOrdersToGenerateEventMigrationTest() throws Exception {
+    var objectMapper = JsonSupport.getObjectMapper();
+    var geoOrders = GeoOrdersToGenerateEvent.generateGeoOrders("generator-1", new LatLng(51.5, -0.12), 10, null, false, new SplittableRandom(7), 32);
+    var legacyJson = (ObjectNode) objectMapper.createObjectNode()
+        .put("generatorId", "generator-1")
+        .put("geoOrdersToBeGenerated", 32)
+        .set("geoOrders", objectMapper.valueToTree(geoOrders));
+
+    var json = new GeoOrdersToGenerateEventMigration().transform(0, legacyJson);
+    var event = objectMapper.treeToValue(json, GeoOrdersToGenerateEvent.class);
+    assertEquals(32, event.geoOrdersToBeGenerated());
+    assertEquals(geoOrders, event.geoOrders());
+  }
+
+  @Test
+  void geoOrdersToGenerateEventLegacyGeoOrderIdsTest() throws Exception {
+    var objectMapper = JsonSupport.getObjectMapper();
+    var seed = GeneratorEntity.State.seedFor("generator-1", 1_700_000_000_000L);
+    var event = GeoOrdersToGenerateEvent.with("generator-1", new LatLng(51.5, -0.12), 10, null, seed, 0, 32);
+    var json = (ObjectNode) objectMapper.valueToTree(event);
+    assertTrue(!json.has("legacyGeoOrderIds"));
+
+    var migrated = objectMapper.treeToValue(new GeoOrdersToGenerateEventMigration().transform(1, json), GeoOrdersToGenerateEvent.class);
+    var geoOrders = event.geoOrders();
+    var legacyGeoOrders = migrated.geoOrders();
+    for (int i = 0; i < geoOrders.size(); i++) {
+      assertEquals(geoOrders.get(i).position(), legacyGeoOrders.get(i).position());
+      assertTrue(GeoOrderIds.isCompactId(geoOrders.get(i).geoOrderId()));
+      assertEquals(GeoOrderIds.legacyIdFor(geoOrders.get(i).position()), legacyGeoOrders.get(i).geoOrderId());
+    }
+  }
+
+  @Test
+  void geoOrdersToGenerateEventSizeTest() throws Exception {
+    var objectMapper = JsonSupport.getObjectMapper();
+    var seed = GeneratorEntity.State.seedFor("generator-1", 1_700_000_000_000L);
+    var event = GeoOrdersToGenerateEvent.with("generator-1", new LatLng(51.5, -0.12), 10, null, seed, 0, 32);
+    var legacyEvent = new GeoOrdersToGenerateEvent("generator-1", 32, null, 0, 0, 0, false, null, event.geoOrders(), false);
+
+    var size = objectMapper.writeValueAsBytes(event).length;
+    var legacySize = objectMapper.writeValueAsBytes(legacyEvent).length;
+    assertTrue("compact %d bytes, legacy %d bytes".formatted(size, legacySize), size * 20 < legacySize);
+  }
+
+  @Test
+  void backpressureTest() {
+    var ceiling = GeneratorEntity.geoOrdersInFlightCeiling;
+    var startTimeMs = 1_700_000_000_000L;
+    var state = GeneratorEntity.State.empty().on(new GeneratorEntity.GeneratorCreatedEvent(
+        "generator-1", new LatLng(51.5, -0.12), 10, 1000, startTimeMs, Integer.MAX_VALUE, null));
+    assertEquals(1000, state.effectiveRatePerSecond(), 0);
+
+    var nowMs = startTimeMs;
+    while (state.geoOrdersInFlight() < ceiling * 3 / 2) {
+      nowMs += 100;
+      for (var event : state.eventsFor(new GeneratorEntity.GenerateCommand("generator-1"), nowMs)) {
+        if (event instanceof GeneratorEntity.GeneratedEvent generatedEvent) {
+          state = state.on(generatedEvent);
+        }
+      }
+    }
+    assertEquals(500, state.effectiveRatePerSecond(), 1000.0 * 100 / ceiling);
+
+    { // no geo orders are resolved, the generator stops at twice the ceiling
+      for (int i = 0; i < 1000; i++) {
+        nowMs += 100;
+        for (var event : state.eventsFor(new GeneratorEntity.GenerateCommand("generator-1"), nowMs)) {
+          if (event instanceof GeneratorEntity.GeneratedEvent generatedEvent) {
+            state = state.on(generatedEvent);
+          }
+        }
+      }
+      assertTrue(state.geoOrdersInFlight() <= 2 * ceiling);
+      assertEquals(0, state.effectiveRatePerSecond(), 0);
+      assertEquals(0, state.eventsFor(new GeneratorEntity.GenerateCommand("generator-1"), nowMs + 100).size());
+      assertEquals(Long.MAX_VALUE, state.nextGeoOrderAtMs());
+    }
+
+    { // the geo orders are resolved, the generator goes on at the target rate without a burst to catch up
+      state = state.on(new GeneratorEntity.GeoOrdersResolvedEvent("generator-1", state.geoOrdersInFlight()));
+      assertEquals(0, state.geoOrdersInFlight());
+      assertEquals(1000, state.effectiveRatePerSecond(), 0);
+
+      var events = state.eventsFor(new GeneratorEntity.GenerateCommand("generator-1"), nowMs + 100);
+      var generatedEvent = (GeneratorEntity.GeneratedEvent) events.get(0);
+      assertTrue(generatedEvent.geoOrdersGenerated() <= 1000);
+    }
+  }
+
+  @Test
+  void staggeredStartAndRateChangeTest() {
+    var startTimeMs = 1_700_000_000_000L;
+    var state = GeneratorEntity.State.empty().on(new GeneratorEntity.GeneratorCreatedEvent(
+        "fleet-1_0", new LatLng(51.5, -0.12), 10, 10, startTimeMs, 1000, null, "fleet-1"));
+    assertEquals("fleet-1", state.fleetId());
+
+    { // nothing is due before the start time
+      assertEquals(0, state.eventsFor(new GeneratorEntity.GenerateCommand("fleet-1_0"), startTimeMs - 5_000).size());
+      assertEquals(startTimeMs + 100, state.nextGeoOrderAtMs());
+    }
+
+    var generatedEvent = (GeneratorEntity.GeneratedEvent) state.eventsFor(new GeneratorEntity.GenerateCommand("fleet-1_0"), startTimeMs + 1_000).get(0);
+    state = state.on(generatedEvent);
+    assertEquals(10, state.geoOrderCountCurrent());
+
+    { // the new rate applies from the last generate on
+      var rateChangedEvent = (GeneratorEntity.RateChangedEvent) state.eventsFor(new GeneratorEntity.ChangeRateCommand("fleet-1_0", 40)).get(0);
+      state = state.on(rateChangedEvent);
+      assertEquals(40, state.ratePerSecond());
+      assertEquals(startTimeMs + 1_000, state.scheduledToMs());
+
+      generatedEvent = (GeneratorEntity.GeneratedEvent) state.eventsFor(new GeneratorEntity.GenerateCommand("fleet-1_0"), startTimeMs + 1_500).get(0);
+      assertEquals(20, generatedEvent.geoOrdersGenerated());
+      assertEquals(0, state.eventsFor(new GeneratorEntity.ChangeRateCommand("fleet-1_0", 40)).size());
+    }
+  }
+
+  private static double distanceKm(LatLng a, LatLng b) {
+    var dLat = Math.toRadians(b.lat() - a.lat());
+    var dLng = Math.toRadians(b.lng() - a.lng());
+    var h = Math.pow(Math.sin(dLat / 2), 2) + Math.cos(Math.toRadians(a.lat())) * Math.cos(Math.toRadians(b.lat())) * Math.pow(Math.sin(dLng / 2), 2);
+    return 2 * WorldMap.earthRadiusKm * Math.asin(Math.sqrt(h));
+  }
+}
@@ -0,0 +1,61 @@
+package io.example.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.example.map.WorldMap.LatLng;
+
+public class GeneratorFleetEntityTest {
+  private static final LatLng topLeft = new LatLng(52.0, -1.0);
+  private static final LatLng botRight = new LatLng(51.0, 0.5);
+
+  @Test
+  void membersInBoundingBoxTest() {
+    var command = new GeneratorFleetEntity.CreateFleetCommand("fleet-1", 300, topLeft, botRight, null, 5, 10_000, 1000, null, 60_000);
+    var event = (GeneratorFleetEntity.FleetCreatedEvent) GeneratorFleetEntity.State.empty().eventsFor(command).get(0);
+
+    var members = event.members();
+    assertEquals(300, members.size());
+    assertEquals("fleet-1_0", members.get(0).generatorId());
+    assertTrue(members.stream().allMatch(member -> member.position().lat() < topLeft.lat() && member.position().lat() >= botRight.lat()
+        && member.position().lng() >= topLeft.lng() && member.position().lng() < botRight.lng()));
+    assertEquals(members.stream().map(GeneratorFleetEntity.Member::position).toList(),
+        GeneratorFleetEntity.State.membersFor(command, 0).stream().map(GeneratorFleetEntity.Member::position).toList());
+
+    assertEquals(event.createdAtMs(), members.get(0).startTimeMs());
+    assertEquals(event.createdAtMs() + 30_000, members.get(150).startTimeMs());
+    assertTrue(members.get(299).startTimeMs() < event.createdAtMs() + 60_000);
+  }
+
+  @Test
+  void budgetIsRebalancedAsMembersFinishTest() {
+    var positions = List.of(new LatLng(51.5, -0.12), new LatLng(48.86, 2.35), new LatLng(40.71, -74.0));
+    var command = new GeneratorFleetEntity.CreateFleetCommand("fleet-2", 0, null, null, positions, 5, 1000, 100, null, 0);
+    var state = GeneratorFleetEntity.State.empty();
+    state = state.on((GeneratorFleetEntity.FleetCreatedEvent) state.eventsFor(command).get(0));
+
+    assertEquals(List.of(34, 33, 33), state.memberRates().stream().map(GeneratorFleetEntity.MemberRate::ratePerSecond).toList());
+
+    var finished = new GeneratorFleetEntity.MemberFinishedCommand("fleet-2", "fleet-2_1");
+    state = state.on((GeneratorFleetEntity.MemberFinishedEvent) state.eventsFor(finished).get(0));
+    assertEquals(List.of(new GeneratorFleetEntity.MemberRate("fleet-2_0", 50), new GeneratorFleetEntity.MemberRate("fleet-2_2", 50)), state.memberRates());
+
+    assertEquals(0, state.eventsFor(finished).size());
+    assertEquals(0, state.eventsFor(new GeneratorFleetEntity.MemberFinishedCommand("fleet-2", "generator-9")).size());
+  }
+
+  @Test
+  void specErrorTest() {
+    assertNull(GeneratorFleetEntity.specError(new GeneratorFleetEntity.CreateFleetCommand("fleet-3", 10, topLeft, botRight, null, 5, 100, 10, null, 0)));
+    assertNotNull(GeneratorFleetEntity.specError(new GeneratorFleetEntity.CreateFleetCommand("fleet-3", 10, topLeft, botRight, null, 5, 100, 9, null, 0)));
+    assertNotNull(GeneratorFleetEntity.specError(new GeneratorFleetEntity.CreateFleetCommand("fleet-3", 10, botRight, topLeft, null, 5, 100, 10, null, 0)));
+    assertNotNull(GeneratorFleetEntity.specError(new GeneratorFleetEntity.CreateFleetCommand("fleet-3", GeneratorFleetEntity.generatorsMax + 1, topLeft, botRight, null, 5, 100, 100_000, null, 0)));
+    assertNotNull(GeneratorFleetEntity.specError(new GeneratorFleetEntity.CreateFleetCommand("fleet-3", 0, null, null, List.of(), 5, 100, 10, null, 0)));
+  }
+}
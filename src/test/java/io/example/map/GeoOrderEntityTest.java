@@ -1,6 +1,7 @@
 package io.example.map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -120,4 +121,31 @@ public class GeoOrderEntityTest {
       assertEquals(backOrderedAt, state.backOrderedAt());
     }
   }
+
+  @Test
+  public void wasInFlightTest() {
+    var testKit = EventSourcedTestKit.of(GeoOrderEntity::new);
+
+    var position = new LatLng(0, 0);
+    testKit.call(e -> e.create(new GeoOrderEntity.CreateGeoOrderCommand("geoOrderId", position, "generatorId")));
+    assertEquals("generatorId", testKit.getState().generatorId());
+
+    {
+      var command = new GeoOrderEntity.GeoOrderBackOrderedCommand("geoOrderId", Instant.now());
+      var result = testKit.call(e -> e.backOrdered(command));
+
+      var event = result.getNextEventOfType(GeoOrderEntity.GeoOrderBackOrderedEvent.class);
+      assertEquals("generatorId", event.generatorId());
+      assertTrue(event.wasInFlight());
+    }
+
+    {
+      var command = new GeoOrderEntity.GeoOrderReadyToShipCommand("geoOrderId", Instant.now());
+      var result = testKit.call(e -> e.readyToShip(command));
+
+      var event = result.getNextEventOfType(GeoOrderEntity.GeoOrderReadyToShipEvent.class);
+      assertEquals("generatorId", event.generatorId());
+      assertFalse(event.wasInFlight());
+    }
+  }
 }
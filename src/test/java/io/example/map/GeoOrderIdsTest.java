@@ -0,0 +1,82 @@
+package io.example.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import io.example.map.WorldMap.LatLng;
+
+public class GeoOrderIdsTest {
+  @Test
+  void idRoundTripTest() {
+    var random = new Random(42);
+
+    for (int i = 0; i < 10_000; i++) {
+      var position = new LatLng(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+      var geoOrderId = GeoOrderIds.idFor(position);
+
+      assertEquals(GeoOrderIds.idLength, geoOrderId.length());
+      assertTrue(GeoOrderIds.isCompactId(geoOrderId));
+      assertEquals(GeoOrderIds.mortonCodeFor(position.lat(), position.lng()), GeoOrderIds.mortonCodeOf(geoOrderId));
+
+      var cellCentre = GeoOrderIds.positionOf(geoOrderId);
+      assertEquals(position.lat(), cellCentre.lat(), 180.0 / (1 << GeoOrderIds.coordinateBits));
+      assertEquals(position.lng(), cellCentre.lng(), 360.0 / (1 << GeoOrderIds.coordinateBits));
+    }
+
+    assertEquals(GeoOrderIds.idLength, GeoOrderIds.idFor(new LatLng(90, 180)).length());
+    assertEquals(GeoOrderIds.idLength, GeoOrderIds.idFor(new LatLng(-90, -180)).length());
+    assertFalse(GeoOrderIds.isCompactId("geoOrder-id_51.5924834973659_-0.3731747457475"));
+    assertFalse(GeoOrderIds.isCompactId("g5n7v1qm0h2c4kd9u"));
+    assertEquals(-1, GeoOrderIds.mortonCodeOf("geoOrderId"));
+  }
+
+  @Test
+  void idsSortByMortonCodeTest() {
+    var random = new Random(7);
+    var positions = new ArrayList<LatLng>();
+    for (int i = 0; i < 10_000; i++) {
+      positions.add(new LatLng(51.5 + random.nextGaussian(), -0.12 + random.nextGaussian()));
+    }
+
+    var byId = positions.stream().sorted(Comparator.comparing(GeoOrderIds::idFor)).toList();
+    for (int i = 1; i < byId.size(); i++) {
+      var a = byId.get(i - 1);
+      var b = byId.get(i);
+      assertTrue(GeoOrderIds.mortonCodeFor(a.lat(), a.lng()) <= GeoOrderIds.mortonCodeFor(b.lat(), b.lng()));
+    }
+
+    { // positions in the same region share an ID prefix
+      var a = GeoOrderIds.idFor(new LatLng(51.50001, -0.12001));
+      var b = GeoOrderIds.idFor(new LatLng(51.50002, -0.12002));
+      assertEquals(a.substring(0, 8), b.substring(0, 8));
+    }
+  }
+
+  @Test
+  void idsAreUniqueTest() {
+    { // positions that round to the same 13 decimals
+      var a = new LatLng(51.5, -0.12);
+      var b = new LatLng(Math.nextUp(51.5), -0.12);
+      assertEquals(GeoOrderIds.legacyIdFor(a), GeoOrderIds.legacyIdFor(b));
+      assertNotEquals(GeoOrderIds.idFor(a), GeoOrderIds.idFor(b));
+    }
+
+    { // 100k geo orders in a 1 km radius
+      var random = new Random(11);
+      var geoOrderIds = new HashSet<String>();
+      for (int i = 0; i < 100_000; i++) {
+        geoOrderIds.add(GeoOrderIds.idFor(new LatLng(51.5 + random.nextDouble() * 0.01, -0.12 + random.nextDouble() * 0.01)));
+      }
+      assertEquals(100_000, geoOrderIds.size());
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package io.example.map;
+
+import static io.example.map.WorldMap.earthRadiusKm;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import io.example.map.GeneratorEntity.Cluster;
+import io.example.map.GeneratorEntity.Distribution;
+import io.example.map.WorldMap.LatLng;
+
+public class GeoOrderSamplerTest {
+  @Test
+  void sphericalMatchesPerPointSamplerTest() {
+    var count = 10_000;
+    for (var centre : new LatLng[] { new LatLng(51.5, -0.12), new LatLng(-33.9, 151.2), new LatLng(89.9, 0) }) {
+      var lats = new double[count];
+      var lngs = new double[count];
+      GeoOrderSampler.sampleSpherical(centre, 100, new SplittableRandom(42), lats, lngs, count);
+
+      var random = new SplittableRandom(42);
+      for (int i = 0; i < count; i++) {
+        var expected = perPointSample(centre, 100, random);
+        assertEquals(expected.lat(), lats[i], 0);
+        assertEquals(expected.lng(), lngs[i], 0);
+      }
+    }
+  }
+
+  @Test
+  void planarErrorBoundTest() {
+    var count = 10_000;
+    for (var radiusKm : new double[] { 1, 5, GeoOrderSampler.planarRadiusKmMax }) {
+      for (var lat : new double[] { 0, 45, 60, GeoOrderSampler.planarLatMax }) {
+        var centre = new LatLng(lat, 10);
+        assertTrue(GeoOrderSampler.isPlanar(centre, radiusKm));
+
+        var lats = new double[count];
+        var lngs = new double[count];
+        var planarLats = new double[count];
+        var planarLngs = new double[count];
+        GeoOrderSampler.sampleSpherical(centre, radiusKm, new SplittableRandom(7), lats, lngs, count);
+        GeoOrderSampler.samplePlanar(centre, radiusKm, new SplittableRandom(7), planarLats, planarLngs, count);
+
+        var errorBoundKm = radiusKm * radiusKm / (2 * earthRadiusKm) * (1 + Math.tan(Math.toRadians(lat)));
+        for (int i = 0; i < count; i++) {
+          var errorKm = Math.hypot(
+              Math.toRadians(lats[i] - planarLats[i]),
+              Math.toRadians(lngs[i] - planarLngs[i]) * Math.cos(Math.toRadians(lats[i]))) * earthRadiusKm;
+          assertTrue("radius %f lat %f error %f km".formatted(radiusKm, lat, errorKm), errorKm <= errorBoundKm);
+        }
+      }
+    }
+  }
+
+  @Test
+  void gaussianTest() {
+    var count = 100_000;
+    var centre = new LatLng(51.5, -0.12);
+    var lats = new double[count];
+    var lngs = new double[count];
+    var distribution = new Distribution(Distribution.Type.gaussian, 5, null, null);
+    GeoOrderSampler.sample(distribution, centre, 100, false, new SplittableRandom(3), lats, lngs, count);
+
+    var withinSigma = 0;
+    for (int i = 0; i < count; i++) {
+      withinSigma += distanceKm(centre, lats[i], lngs[i]) <= 5 ? 1 : 0;
+    }
+    assertEquals(1 - Math.exp(-0.5), withinSigma / (double) count, 0.01); // 39% of a 2D gaussian is within 1 sigma
+  }
+
+  @Test
+  void clustersTest() {
+    var count = 100_000;
+    var london = new LatLng(51.5, -0.12);
+    var paris = new LatLng(48.86, 2.35);
+    var lats = new double[count];
+    var lngs = new double[count];
+    var distribution = new Distribution(Distribution.Type.clusters, 0, List.of(new Cluster(london, 2, 3), new Cluster(paris, 2, 1)), null);
+    assertNull(GeoOrderSampler.distributionError(distribution));
+    GeoOrderSampler.sample(distribution, london, 10, false, new SplittableRandom(5), lats, lngs, count);
+
+    var nearLondon = 0;
+    for (int i = 0; i < count; i++) {
+      var toLondon = distanceKm(london, lats[i], lngs[i]);
+      assertTrue(toLondon < 30 || distanceKm(paris, lats[i], lngs[i]) < 30);
+      nearLondon += toLondon < 30 ? 1 : 0;
+    }
+    assertEquals(0.75, nearLondon / (double) count, 0.01);
+  }
+
+  @Test
+  void gridTest() throws Exception {
+    var csv = """
+        # test grid
+        topLeftLat,topLeftLng,botRightLat,botRightLng,weight
+        10,10,9,11,1
+        20,20,19,21,0
+        30,30,29,31,9
+        """;
+    var grid = GeoOrderGrid.parse(new StringReader(csv), "test");
+    assertEquals(3, grid.cellCount());
+
+    var count = 100_000;
+    var lats = new double[count];
+    var lngs = new double[count];
+    grid.sample(new SplittableRandom(9), lats, lngs, count);
+
+    var inFirstCell = 0;
+    for (int i = 0; i < count; i++) {
+      assertTrue(lats[i] > 29 && lats[i] <= 30 && lngs[i] >= 30 && lngs[i] < 31 || lats[i] > 9 && lats[i] <= 10 && lngs[i] >= 10 && lngs[i] < 11);
+      inFirstCell += lats[i] <= 10 ? 1 : 0;
+    }
+    assertEquals(0.1, inFirstCell / (double) count, 0.01);
+
+    assertEquals(10, GeoOrderGrid.load("uk-cities.csv").cellCount());
+    assertEquals(10, GeoOrderGrid.load("distributions/uk-cities.csv").cellCount());
+    assertNotNull(GeoOrderSampler.distributionError(new Distribution(Distribution.Type.grid, 0, null, "no-such-grid.csv")));
+    assertNotNull(GeoOrderSampler.distributionError(new Distribution(Distribution.Type.clusters, 0, List.of(), null)));
+  }
+
+  @Test
+  void gridNameAndContentsAreCheckedTest() throws Exception {
+    for (var name : List.of("/etc/passwd", "../application.conf", "distributions/../application.conf", "a/b.csv", "a\\b.csv", "..", "x..csv")) {
+      var error = GeoOrderSampler.distributionError(new Distribution(Distribution.Type.grid, 0, null, name));
+      assertNotNull(name, error);
+      assertFalse(error, error.contains(name));
+    }
+
+    assertEquals("grid 'test' has an invalid cell on line 2", gridError("10,10,9,11,1\n10,10,9,11,secret"));
+    assertEquals("grid 'test' has no cells with a weight > 0", gridError("10,10,9,11,0\n20,20,19,21,0"));
+    assertNotNull(gridError("10,10,9,11,Infinity"));
+  }
+
+  private static String gridError(String csv) throws Exception {
+    try {
+      GeoOrderGrid.parse(new StringReader(csv), "test");
+      return null;
+    } catch (IllegalArgumentException e) {
+      return e.getMessage();
+    }
+  }
+
+  private static double distanceKm(LatLng a, double lat, double lng) {
+    var dLat = Math.toRadians(lat - a.lat());
+    var dLng = Math.toRadians(lng - a.lng());
+    var h = Math.pow(Math.sin(dLat / 2), 2) + Math.cos(Math.toRadians(a.lat())) * Math.cos(Math.toRadians(lat)) * Math.pow(Math.sin(dLng / 2), 2);
+    return 2 * earthRadiusKm * Math.asin(Math.sqrt(h));
+  }
+
+  // The per point sampler that was used before the bulk sampler
+  private static LatLng perPointSample(LatLng position, double radiusKm, SplittableRandom random) {
+    final var angle = random.nextDouble() * 2 * Math.PI;
+    final var distance = random.nextDouble() * radiusKm;
+    final var lat = Math.toRadians(position.lat());
+    final var lng = Math.toRadians(position.lng());
+    final var lat2 = StrictMath.asin(StrictMath.sin(lat) * StrictMath.cos(distance / earthRadiusKm) +
+        StrictMath.cos(lat) * StrictMath.sin(distance / earthRadiusKm) * StrictMath.cos(angle));
+    final var lng2 = lng + StrictMath.atan2(StrictMath.sin(angle) * StrictMath.sin(distance / earthRadiusKm) * StrictMath.cos(lat),
+        StrictMath.cos(distance / earthRadiusKm) - StrictMath.sin(lat) * StrictMath.sin(lat2));
+    return LatLng.fromRadians(lat2, lng2);
+  }
+}
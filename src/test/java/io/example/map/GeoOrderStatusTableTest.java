@@ -0,0 +1,87 @@
+package io.example.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class GeoOrderStatusTableTest {
+
+  @Test
+  void putDoesNotChangeEarlierTablesTest() {
+    var table = new GeoOrderStatusTable();
+    for (long key = 1; key <= 1000; key++) {
+      table = table.put(key, GeoOrderStatusTable.statusOk);
+    }
+    var before = table;
+    var after = table.put(7, GeoOrderStatusTable.statusAlarm).put(5000, GeoOrderStatusTable.statusReady);
+
+    assertEquals(GeoOrderStatusTable.statusOk, before.statusOf(7));
+    assertEquals(GeoOrderStatusTable.statusEmpty, before.statusOf(5000));
+    assertEquals(1000, before.geoOrderCount());
+    assertEquals(0, before.geoOrderAlarmCount());
+
+    assertEquals(GeoOrderStatusTable.statusAlarm, after.statusOf(7));
+    assertEquals(GeoOrderStatusTable.statusReady, after.statusOf(5000));
+    assertEquals(1001, after.geoOrderCount());
+    assertEquals(1, after.geoOrderAlarmCount());
+    assertEquals(1, after.geoOrderReadyCount());
+    assertSame(after, after.put(7, GeoOrderStatusTable.statusAlarm));
+  }
+
+  @Test
+  void overwriteDoesNotResizeTest() {
+    var table = new GeoOrderStatusTable();
+    for (long key = 1; key <= 12; key++) { // 12 of 16 slots, the next new key resizes
+      table = table.put(key, GeoOrderStatusTable.statusOk);
+    }
+    assertEquals(16, table.capacity());
+
+    table = table.put(12, GeoOrderStatusTable.statusAlarm);
+    assertEquals(16, table.capacity());
+    assertEquals(12, table.geoOrderCount());
+
+    table = table.put(13, GeoOrderStatusTable.statusOk);
+    assertEquals(32, table.capacity());
+    assertEquals(13, table.geoOrderCount());
+    assertEquals(1, table.geoOrderAlarmCount());
+    assertEquals(GeoOrderStatusTable.statusAlarm, table.statusOf(12));
+  }
+
+  @Test
+  void bytesRoundTripTest() {
+    var table = new GeoOrderStatusTable();
+    for (long key = 1; key <= 5000; key++) {
+      table = table.put(key * 0x9E3779B97F4A7C15L, key % 10 == 0 ? GeoOrderStatusTable.statusAlarm : GeoOrderStatusTable.statusOk);
+    }
+    var restored = GeoOrderStatusTable.fromBytes(table.toBytes());
+    assertEquals(5000, restored.geoOrderCount());
+    assertEquals(500, restored.geoOrderAlarmCount());
+    assertEquals(table.capacity(), restored.capacity());
+    assertEquals(GeoOrderStatusTable.statusAlarm, restored.statusOf(10 * 0x9E3779B97F4A7C15L));
+  }
+
+  @Test
+  void putMigratedTest() {
+    var table = new GeoOrderStatusTable()
+        .putMigrated(1, GeoOrderStatusTable.statusOk)
+        .putMigrated(1, GeoOrderStatusTable.statusAlarm)
+        .put(2, GeoOrderStatusTable.statusReady);
+    assertSame(table, table.putMigrated(2, GeoOrderStatusTable.statusAlarm));
+    assertEquals(2, table.geoOrderCount());
+    assertEquals(1, table.geoOrderAlarmCount());
+    assertTrue(table.isMigrated(1));
+
+    var restored = GeoOrderStatusTable.fromBytes(table.toBytes());
+    assertEquals(GeoOrderStatusTable.statusAlarm, restored.statusOf(1));
+    assertTrue(restored.isMigrated(1));
+    assertEquals(1, restored.geoOrderAlarmCount());
+
+    var updated = restored.put(1, GeoOrderStatusTable.statusAlarm);
+    assertFalse(updated.isMigrated(1));
+    assertEquals(1, updated.geoOrderAlarmCount());
+    assertSame(updated, updated.putMigrated(1, GeoOrderStatusTable.statusOk));
+  }
+}
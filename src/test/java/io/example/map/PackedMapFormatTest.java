@@ -0,0 +1,84 @@
+package io.example.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import io.example.map.WorldMap.LatLng;
+
+public class PackedMapFormatTest {
+  @Test
+  void packGeoOrdersTest() {
+    var created = geoOrder(new LatLng(51.5000001, -0.1200001), null, null);
+    var readyToShip = geoOrder(new LatLng(-33.8688, 151.2093), Instant.now(), null);
+    var backOrdered = geoOrder(new LatLng(40.7128, -74.006), null, Instant.now());
+    var packed = PackedMapFormat.packGeoOrders(List.of(created, readyToShip, backOrdered), "token-1", true);
+
+    var buffer = ByteBuffer.wrap(packed).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals("ESPK", new String(packed, 0, 4, StandardCharsets.US_ASCII));
+    assertEquals(PackedMapFormat.version, buffer.get(4));
+    assertEquals(PackedMapFormat.kindGeoOrders, buffer.get(5));
+    assertEquals(1, buffer.get(6));
+    assertEquals(3, buffer.getInt(8));
+    assertEquals(7, buffer.getShort(12));
+    assertEquals("token-1", new String(packed, 32, 7, StandardCharsets.UTF_8));
+
+    var columns = 40;
+    assertEquals(PackedMapFormat.quantize(51.5000001), buffer.getInt(columns));
+    assertEquals(-1_200_001, buffer.getInt(columns + 12));
+    assertEquals(PackedMapFormat.quantize(151.2093), buffer.getInt(columns + 12 + 4));
+    assertEquals(PackedMapFormat.statusCreated, buffer.get(columns + 24));
+    assertEquals(PackedMapFormat.statusReadyToShip, buffer.get(columns + 25));
+    assertEquals(PackedMapFormat.statusBackOrdered, buffer.get(columns + 26));
+
+    var geoOrderIds = new String(packed, columns + 27, buffer.getInt(16), StandardCharsets.UTF_8).split("\n");
+    assertEquals(List.of(created.geoOrderId(), readyToShip.geoOrderId(), backOrdered.geoOrderId()), List.of(geoOrderIds));
+    assertEquals(packed.length, columns + 27 + buffer.getInt(16));
+  }
+
+  @Test
+  void packRegionsTest() {
+    var region = WorldMap.regionAtLatLng(12, new LatLng(51.5, -0.12)).updateCounts(100, 7, 20);
+    var regionId = WorldMap.regionIdFor(region);
+    var row = new RegionByLocationView.RegionViewRow(regionId, region, 100, 7, 1234);
+    var packed = PackedMapFormat.packRegions(12, List.of(row), null, false, 1_700_000_000_000L);
+
+    var buffer = ByteBuffer.wrap(packed).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(PackedMapFormat.kindRegions, buffer.get(5));
+    assertEquals(0, buffer.get(6));
+    assertEquals(12, buffer.get(7));
+    assertEquals(1, buffer.getInt(8));
+    assertEquals(1_700_000_000_000.0, buffer.getDouble(24), 0);
+    assertEquals(32 + 9 * 4, packed.length);
+
+    var regionKey = WorldMapTiles.regionKeyFor(regionId);
+    assertEquals(regionId, "12-%d-%d".formatted(buffer.getInt(32), buffer.getInt(36)));
+    assertEquals(WorldMapTiles.rowOf(regionKey), buffer.getInt(32));
+    assertEquals(region.topLeft().lat(), buffer.getInt(40) / PackedMapFormat.coordinateScale, 1e-7);
+    assertEquals(region.botRight().lng(), buffer.getInt(52) / PackedMapFormat.coordinateScale, 1e-7);
+    assertEquals(100, buffer.getInt(56));
+    assertEquals(7, buffer.getInt(60));
+    assertEquals(20, buffer.getInt(64));
+  }
+
+  @Test
+  void isAcceptedTest() {
+    assertTrue(PackedMapFormat.isAccepted(Optional.of("application/vnd.earth-ship.packed, application/json;q=0.9")));
+    assertFalse(PackedMapFormat.isAccepted(Optional.of("application/json")));
+    assertFalse(PackedMapFormat.isAccepted(Optional.empty()));
+  }
+
+  private static GeoOrdersByLocationView.GeoOrderViewRow geoOrder(LatLng position, Instant readyToShipAt, Instant backOrderedAt) {
+    var state = new GeoOrderEntity.State(GeoOrderIds.idFor(position), position, readyToShipAt, backOrderedAt, "generator-1");
+    return GeoOrdersByLocationView.GeoOrderViewRow.of(state);
+  }
+}
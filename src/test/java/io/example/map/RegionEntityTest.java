@@ -0,0 +1,357 @@
+package io.example.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import io.example.map.WorldMap.LatLng;
+import io.example.map.WorldMap.Region;
+import kalix.javasdk.JsonSupport;
+import kalix.javasdk.testkit.EventSourcedTestKit;
+
+public class RegionEntityTest {
+  @Test
+  void updateSubRegionTest() {
+    var testKit = EventSourcedTestKit.of(RegionEntity::new);
+
+    var position = new LatLng(51.5, -0.12);
+    var subRegion = geoOrderSubRegion(position, false);
+
+    {
+      var command = new RegionEntity.UpdateSubRegionCommand(subRegion);
+      var result = testKit.call(e -> e.updateSubRegion(command));
+      assertTrue(result.isReply());
+      assertEquals("OK", result.getReply());
+
+      assertEquals(1, result.getAllEvents().size());
+      var event = result.getNextEventOfType(RegionEntity.UpdatedSubRegionEvent.class);
+      assertEquals(subRegion, event.subRegion());
+      assertEquals(WorldMap.zoomMax, event.region().zoom());
+      assertEquals(1, event.region().geoOrderCount());
+      assertEquals(0, event.region().geoOrderAlarmCount());
+    }
+
+    {
+      var state = testKit.getState();
+      assertEquals(WorldMap.regionAtLatLng(WorldMap.zoomMax, position).topLeft(), state.region().topLeft());
+      assertEquals(1, state.region().geoOrderCount());
+      assertEquals(0, state.subRegions().size());
+      assertTrue(state.hasChanged());
+    }
+
+    { // same geo order is back ordered
+      var command = new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(position, true));
+      var result = testKit.call(e -> e.updateSubRegion(command));
+      assertTrue(result.isReply());
+
+      var state = testKit.getState();
+      assertEquals(1, state.region().geoOrderCount());
+      assertEquals(1, state.region().geoOrderAlarmCount());
+    }
+
+    {
+      var region = testKit.getState().region();
+      var command = new RegionEntity.ReleaseCurrentStateCommand(region);
+      var result = testKit.call(e -> e.releaseCurrentState(command));
+      assertTrue(result.isReply());
+
+      var event = result.getNextEventOfType(RegionEntity.ReleasedCurrentStateEvent.class);
+      assertEquals(1, event.region().geoOrderCount());
+      assertEquals(1, event.region().geoOrderAlarmCount());
+      assertTrue(event.releasedAtMs() > 0);
+      assertTrue(!testKit.getState().hasChanged());
+    }
+  }
+
+  @Test
+  void updateSubRegionWith100kGeoOrdersTest() {
+    var testKit = EventSourcedTestKit.of(RegionEntity::new);
+
+    var region = WorldMap.regionAtLatLng(WorldMap.zoomMax, new LatLng(51.5, -0.12));
+    var latLength = region.topLeft().lat() - region.botRight().lat();
+    var lngLength = region.botRight().lng() - region.topLeft().lng();
+    var geoOrderCount = 100_000;
+
+    for (int i = 0; i < geoOrderCount; i++) {
+      var position = new LatLng(
+          region.topLeft().lat() - latLength * (i / 1000 + 0.5) / 1000,
+          region.topLeft().lng() + lngLength * (i % 1000 + 0.5) / 1000);
+      var command = new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(position, i % 10 == 0));
+      testKit.call(e -> e.updateSubRegion(command));
+    }
+
+    { // every 20th geo order changes from alarm to no alarm
+      for (int i = 0; i < geoOrderCount; i += 20) {
+        var position = new LatLng(
+            region.topLeft().lat() - latLength * (i / 1000 + 0.5) / 1000,
+            region.topLeft().lng() + lngLength * (i % 1000 + 0.5) / 1000);
+        var command = new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(position, false));
+        testKit.call(e -> e.updateSubRegion(command));
+      }
+    }
+
+    var state = testKit.getState();
+    assertEquals(region.topLeft(), state.region().topLeft());
+    assertEquals(geoOrderCount, state.region().geoOrderCount());
+    assertEquals(geoOrderCount / 20, state.region().geoOrderAlarmCount());
+    assertEquals(0, state.subRegions().size());
+
+    var geoOrders = state.geoOrders();
+    assertEquals(geoOrderCount, geoOrders.geoOrderCount());
+    assertTrue(geoOrders.capacity() <= 4 * geoOrderCount);
+    assertEquals(9 * geoOrderCount, geoOrders.toBytes().length);
+
+    var restored = GeoOrderStatusTable.fromBytes(geoOrders.toBytes());
+    assertEquals(geoOrderCount, restored.geoOrderCount());
+    assertEquals(geoOrderCount / 20, restored.geoOrderAlarmCount());
+  }
+
+  @Test
+  void updateSubRegionsTest() {
+    var testKit = EventSourcedTestKit.of(RegionEntity::new);
+
+    var region = WorldMap.regionAtLatLng(WorldMap.zoomMax, new LatLng(51.5, -0.12));
+    var latLength = region.topLeft().lat() - region.botRight().lat();
+    var subRegions = IntStream.range(0, 32)
+        .mapToObj(i -> new LatLng(region.topLeft().lat() - latLength * (i + 0.5) / 32, region.topLeft().lng() + latLength / 2))
+        .map(position -> geoOrderSubRegion(position, false))
+        .toList();
+
+    {
+      var command = new RegionEntity.UpdateSubRegionsCommand(subRegions);
+      var result = testKit.call(e -> e.updateSubRegions(command));
+      assertTrue(result.isReply());
+      assertEquals("OK", result.getReply());
+      assertEquals(1, result.getAllEvents().size());
+
+      var event = result.getNextEventOfType(RegionEntity.UpdatedSubRegionsEvent.class);
+      assertEquals(32, event.subRegions().size());
+      assertEquals(32, event.region().geoOrderCount());
+      assertEquals(0, event.region().geoOrderAlarmCount());
+    }
+
+    { // the same geo orders again, the first is back ordered and then ready to ship, the second is back ordered
+      var command = new RegionEntity.UpdateSubRegionsCommand(List.of(
+          geoOrderSubRegion(subRegions.get(0).topLeft(), true),
+          geoOrderSubRegion(subRegions.get(1).topLeft(), true),
+          geoOrderSubRegion(subRegions.get(0).topLeft(), false)));
+      var result = testKit.call(e -> e.updateSubRegions(command));
+      assertTrue(result.isReply());
+      assertEquals(1, result.getAllEvents().size());
+      assertNull(result.getNextEventOfType(RegionEntity.UpdatedSubRegionsEvent.class).region()); // not released yet
+
+      var state = testKit.getState();
+      assertEquals(32, state.region().geoOrderCount());
+      assertEquals(1, state.region().geoOrderAlarmCount());
+    }
+  }
+
+  @Test
+  void unchangedSubRegionTest() {
+    var testKit = EventSourcedTestKit.of(RegionEntity::new);
+
+    var position = new LatLng(51.5, -0.12);
+    var command = new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(position, false));
+    testKit.call(e -> e.updateSubRegion(command));
+
+    {
+      var region = testKit.getState().region();
+      var result = testKit.call(e -> e.releaseCurrentState(new RegionEntity.ReleaseCurrentStateCommand(region)));
+      assertEquals(1, result.getAllEvents().size());
+    }
+
+    { // redelivered geo order event
+      var result = testKit.call(e -> e.updateSubRegion(command));
+      assertEquals("OK", result.getReply());
+      assertEquals(0, result.getAllEvents().size());
+      assertFalse(testKit.getState().hasChanged());
+    }
+
+    { // a geo order and its duplicate in a batch
+      var result = testKit.call(e -> e.updateSubRegions(new RegionEntity.UpdateSubRegionsCommand(List.of(command.subRegion(), command.subRegion()))));
+      assertEquals(0, result.getAllEvents().size());
+    }
+
+    { // nothing changed since the last release
+      var region = testKit.getState().region();
+      var result = testKit.call(e -> e.releaseCurrentState(new RegionEntity.ReleaseCurrentStateCommand(region)));
+      assertEquals("OK", result.getReply());
+      assertEquals(0, result.getAllEvents().size());
+    }
+
+    { // a geo order goes into alarm and another leaves it, the region counts do not change
+      var other = new LatLng(51.5, -0.1199);
+      testKit.call(e -> e.updateSubRegion(new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(other, true))));
+      var region = testKit.getState().region();
+      testKit.call(e -> e.releaseCurrentState(new RegionEntity.ReleaseCurrentStateCommand(region)));
+
+      var result = testKit.call(e -> e.updateSubRegions(new RegionEntity.UpdateSubRegionsCommand(List.of(
+          geoOrderSubRegion(position, true),
+          geoOrderSubRegion(other, false)))));
+      assertEquals(1, result.getAllEvents().size());
+      result.getNextEventOfType(RegionEntity.UpdatedSubRegionsEvent.class);
+      assertEquals(1, testKit.getState().region().geoOrderAlarmCount());
+      assertFalse(testKit.getState().hasChanged());
+    }
+  }
+
+  @Test
+  void readyCountAndCentroidTest() {
+    var testKit = EventSourcedTestKit.of(RegionEntity::new);
+
+    var positions = List.of(new LatLng(51.5, -0.12), new LatLng(51.5002, -0.1202), new LatLng(51.5004, -0.1201));
+    positions.forEach(position -> testKit.call(e -> e.updateSubRegion(new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(position, false, false)))));
+
+    {
+      var region = testKit.getState().region();
+      assertEquals(3, region.geoOrderCount());
+      assertEquals(0, region.geoOrderReadyCount());
+      assertEquals((51.5 + 51.5002 + 51.5004) / 3, region.geoOrderCentroid().lat(), 1e-9);
+      assertEquals((-0.12 - 0.1202 - 0.1201) / 3, region.geoOrderCentroid().lng(), 1e-9);
+    }
+
+    { // the first geo order is ready to ship, the second is back ordered
+      var result = testKit.call(e -> e.updateSubRegions(new RegionEntity.UpdateSubRegionsCommand(List.of(
+          geoOrderSubRegion(positions.get(0), false, true),
+          geoOrderSubRegion(positions.get(1), true, false)))));
+      assertEquals(1, result.getAllEvents().size());
+
+      var region = testKit.getState().region();
+      assertEquals(3, region.geoOrderCount());
+      assertEquals(1, region.geoOrderReadyCount());
+      assertEquals(1, region.geoOrderAlarmCount());
+      assertEquals((51.5 + 51.5002 + 51.5004) / 3, region.geoOrderCentroid().lat(), 1e-9);
+    }
+
+    { // the ready to ship geo order again
+      var result = testKit.call(e -> e.updateSubRegion(new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(positions.get(0), false, true))));
+      assertEquals(0, result.getAllEvents().size());
+    }
+
+    { // the region above sums the counts and the position sums of its sub-regions
+      var subRegion = testKit.getState().region();
+      var regionAbove = WorldMap.regionAbove(subRegion).updateCounts(List.of(subRegion));
+      assertEquals(1, regionAbove.geoOrderReadyCount());
+      assertEquals(subRegion.geoOrderCentroid(), regionAbove.geoOrderCentroid());
+    }
+  }
+
+  @Test
+  void stateSnapshotTest() throws Exception {
+    var region = WorldMap.regionAtLatLng(WorldMap.zoomMax, new LatLng(51.5, -0.12));
+    var state = RegionEntity.State.empty();
+    for (int i = 0; i < 100; i++) {
+      var position = new LatLng(region.topLeft().lat() - 1e-5 * (i + 0.5), region.topLeft().lng() + 1e-5);
+      var command = new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(position, i % 10 == 0));
+      state = state.on((RegionEntity.UpdatedSubRegionEvent) state.eventsFor(command).get(0));
+    }
+
+    var objectMapper = JsonSupport.getObjectMapper();
+    var restored = objectMapper.readValue(objectMapper.writeValueAsBytes(state), RegionEntity.State.class);
+    assertEquals(state.region(), restored.region());
+    assertEquals(100, restored.geoOrders().geoOrderCount());
+    assertEquals(10, restored.geoOrders().geoOrderAlarmCount());
+  }
+
+  @Test
+  void getTopRegionTest() {
+    var regionId = WorldMapTiles.regionIdFor(WorldMapTiles.regionKeyAt(TopRegions.persistedZoomMin - 1, 51.5, -0.12));
+    var testKit = EventSourcedTestKit.of(regionId, RegionEntity::new);
+
+    var result = testKit.call(e -> e.get(regionId));
+    assertTrue(result.isError());
+    assertTrue(result.getError().contains("/regions/throughput/" + regionId));
+  }
+
+  @Test
+  void legacyRegionMigrationTest() {
+    var region = WorldMap.regionAtLatLng(WorldMap.zoomMax, new LatLng(51.5, -0.12));
+    var a = new LatLng(region.topLeft().lat() - 1e-5, region.topLeft().lng() + 1e-5);
+    var b = new LatLng(region.topLeft().lat() - 2e-5, region.topLeft().lng() + 1e-5);
+    var c = new LatLng(region.topLeft().lat() - 3e-5, region.topLeft().lng() + 1e-5);
+    var legacyRegionId = WorldMap.legacyRegionIdFor(region);
+    var legacyJournal = List.of(geoOrderSubRegion(a, false), geoOrderSubRegion(b, false), geoOrderSubRegion(c, false), geoOrderSubRegion(b, true));
+
+    assertTrue(LegacyRegionToRegionAction.isLegacyGeoOrderRegion(legacyRegionId, legacyJournal));
+    var byRegionId = LegacyRegionToRegionAction.subRegionsByRegionId(legacyJournal);
+    assertEquals(1, byRegionId.size());
+    var regionId = byRegionId.keySet().iterator().next();
+    assertFalse(LegacyRegionToRegionAction.isLegacyGeoOrderRegion(regionId, legacyJournal));
+
+    // b is updated in the packed key region before the legacy journal is migrated
+    var state = RegionEntity.State.empty();
+    state = state.on((RegionEntity.UpdatedSubRegionEvent) state.eventsFor(new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(b, false, true))).get(0));
+
+    for (var subRegion : byRegionId.get(regionId)) {
+      var events = state.eventsFor(new RegionEntity.MigrateLegacySubRegionsCommand(legacyRegionId, List.of(subRegion)));
+      if (!events.isEmpty()) {
+        state = state.on((RegionEntity.MigratedLegacySubRegionsEvent) events.get(0));
+      }
+    }
+    assertEquals(3, state.region().geoOrderCount());
+    assertEquals(0, state.region().geoOrderAlarmCount());
+    assertEquals(1, state.region().geoOrderReadyCount());
+
+    // a migrated geo order that changes status is not counted as a new geo order
+    state = state.on((RegionEntity.UpdatedSubRegionEvent) state.eventsFor(new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(a, true))).get(0));
+    assertEquals(3, state.region().geoOrderCount());
+    assertEquals(1, state.region().geoOrderAlarmCount());
+
+    // an update that keeps the status of a migrated geo order is persisted, so a redelivered legacy event is not applied
+    var events = state.eventsFor(new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(c, false)));
+    assertEquals(1, events.size());
+    assertNull(((RegionEntity.UpdatedSubRegionEvent) events.get(0)).region());
+    state = state.on((RegionEntity.UpdatedSubRegionEvent) events.get(0));
+    assertTrue(state.eventsFor(new RegionEntity.MigrateLegacySubRegionsCommand(legacyRegionId, List.of(geoOrderSubRegion(c, true)))).isEmpty());
+    assertTrue(state.eventsFor(new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(c, false))).isEmpty());
+  }
+
+  // The migrated region is carried by the event, which starts the release of the region, see RegionToRegionAction
+  @Test
+  void legacyRegionMigrationReleaseTest() {
+    var region = WorldMap.regionAtLatLng(WorldMap.zoomMax, new LatLng(51.5, -0.12));
+    var a = new LatLng(region.topLeft().lat() - 1e-5, region.topLeft().lng() + 1e-5);
+    var b = new LatLng(region.topLeft().lat() - 2e-5, region.topLeft().lng() + 1e-5);
+    var legacyRegionId = WorldMap.legacyRegionIdFor(region);
+
+    var state = RegionEntity.State.empty();
+    state = state.on((RegionEntity.UpdatedSubRegionEvent) state.eventsFor(new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(a, false))).get(0));
+    state = state.on((RegionEntity.ReleasedCurrentStateEvent) state.eventsFor(new RegionEntity.ReleaseCurrentStateCommand(state.region())).get(0));
+
+    var migrated = (RegionEntity.MigratedLegacySubRegionsEvent) state.eventsFor(
+        new RegionEntity.MigrateLegacySubRegionsCommand(legacyRegionId, List.of(geoOrderSubRegion(b, true)))).get(0);
+    assertEquals(2, migrated.region().geoOrderCount());
+    assertEquals(1, migrated.region().geoOrderAlarmCount());
+    state = state.on(migrated);
+    assertTrue(state.hasChanged());
+
+    var released = (RegionEntity.ReleasedCurrentStateEvent) state.eventsFor(new RegionEntity.ReleaseCurrentStateCommand(migrated.region())).get(0);
+    assertEquals(2, released.region().geoOrderCount());
+    assertEquals(1, released.region().geoOrderAlarmCount());
+    state = state.on(released);
+    assertFalse(state.hasChanged());
+
+    // a later update after the release carries the region again, so the region keeps releasing
+    var updated = (RegionEntity.UpdatedSubRegionEvent) state.eventsFor(new RegionEntity.UpdateSubRegionCommand(geoOrderSubRegion(b, false, true))).get(0);
+    assertEquals(0, updated.region().geoOrderAlarmCount());
+    assertEquals(1, updated.region().geoOrderReadyCount());
+    state = state.on(updated);
+    var releasedAgain = (RegionEntity.ReleasedCurrentStateEvent) state.eventsFor(new RegionEntity.ReleaseCurrentStateCommand(updated.region())).get(0);
+    assertEquals(2, releasedAgain.region().geoOrderCount());
+    assertEquals(1, releasedAgain.region().geoOrderReadyCount());
+  }
+
+  private static Region geoOrderSubRegion(LatLng position, boolean alarmOn) {
+    return geoOrderSubRegion(position, alarmOn, false);
+  }
+
+  private static Region geoOrderSubRegion(LatLng position, boolean alarmOn, boolean readyToShip) {
+    return new Region(WorldMap.zoomMax + 1, position, position, 1, alarmOn ? 1 : 0, readyToShip ? 1 : 0, position.lat(), position.lng());
+  }
+}
@@ -0,0 +1,95 @@
+package io.example.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import io.example.map.WorldMap.LatLng;
+import io.example.map.WorldMap.Region;
+
+public class RegionRangeCountsTest {
+  private static final List<LatLng> positions = new ArrayList<>();
+  private static final Map<Integer, List<Region>> regionsByZoom = new HashMap<>();
+
+  static {
+    var random = new Random(42);
+    var regionsByKey = new HashMap<Long, Region>();
+    for (int i = 0; i < 20_000; i++) {
+      var position = new LatLng(51.5 + random.nextGaussian() * 0.5, -0.12 + random.nextGaussian() * 0.5);
+      positions.add(position);
+      var alarm = i % 10 == 0 ? 1 : 0;
+      for (var region : WorldMapTiles.regionsAtLatLng(WorldMap.zoomMax, position.lat(), position.lng())) {
+        regionsByKey.merge(WorldMapTiles.regionKeyFor(region), region.updateCounts(1, alarm),
+            (a, b) -> a.updateCounts(a.geoOrderCount() + 1, a.geoOrderAlarmCount() + alarm));
+      }
+    }
+    regionsByKey.values().forEach(region -> regionsByZoom.computeIfAbsent(region.zoom(), __ -> new ArrayList<>()).add(region));
+  }
+
+  @Test
+  void regionAlignedBoxIsExactTest() {
+    var box = WorldMap.regionAtLatLng(10, new LatLng(51.5, -0.12));
+    var counts = countsIn(box, WorldMap.zoomMax, 100_000);
+
+    assertTrue(counts.isExact());
+    assertEquals(bruteForceCount(box), counts.geoOrderCount());
+    assertEquals(1, counts.tilesWhole());
+    assertEquals(10, counts.maxZoomWalked());
+  }
+
+  @Test
+  void arbitraryBoxTest() {
+    var random = new Random(7);
+
+    for (int i = 0; i < 10; i++) {
+      var topLeftLat = 51.5 + random.nextDouble();
+      var topLeftLng = -0.12 - random.nextDouble();
+      var box = Region.from(0, topLeftLat, topLeftLng, topLeftLat - random.nextDouble() * 1.5, topLeftLng + random.nextDouble() * 1.5);
+      var counts = countsIn(box, WorldMap.zoomMax, 100_000);
+      var expected = bruteForceCount(box);
+
+      assertEquals(expected, counts.geoOrderCount(), 3);
+      assertTrue(counts.tilesWhole() > 0);
+      assertTrue(counts.tilesTouched() * 4 < bruteForceRegionCount(box)); // only the edge regions are walked
+    }
+  }
+
+  @Test
+  void maxTilesEstimatesEdgeRegionsTest() {
+    var box = Region.from(0, 52.1, -0.9, 50.9, 0.7);
+    var exact = countsIn(box, WorldMap.zoomMax, 100_000);
+    var limited = countsIn(box, WorldMap.zoomMax, 200);
+
+    assertTrue(limited.tilesEstimated() > 0);
+    assertTrue(limited.tilesTouched() <= 200);
+    assertTrue(limited.maxZoomWalked() < exact.maxZoomWalked());
+    assertEquals(bruteForceCount(box), limited.geoOrderCount(), bruteForceCount(box) * 0.05);
+  }
+
+  private static RegionRangeCounts.RangeCounts countsIn(Region box, int maxZoom, int maxTiles) {
+    RegionRangeCounts.RegionLoader loader = (zoom, bounds) -> CompletableFuture.completedFuture(
+        regionsByZoom.getOrDefault(zoom, List.of()).stream()
+            .filter(region -> region.topLeft().lat() >= bounds.botRight().lat()
+                && region.topLeft().lng() <= bounds.botRight().lng()
+                && region.botRight().lat() <= bounds.topLeft().lat()
+                && region.botRight().lng() >= bounds.topLeft().lng())
+            .toList());
+    return RegionRangeCounts.countsIn(box, maxZoom, maxTiles, loader).toCompletableFuture().join();
+  }
+
+  private static int bruteForceCount(Region box) {
+    return (int) positions.stream().filter(box::contains).count();
+  }
+
+  private static long bruteForceRegionCount(Region box) {
+    return regionsByZoom.values().stream().flatMap(List::stream).filter(region -> RegionRangeCounts.overlapArea(box, region) > 0).count();
+  }
+}
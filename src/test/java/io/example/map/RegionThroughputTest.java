@@ -0,0 +1,90 @@
+package io.example.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.example.map.WorldMap.LatLng;
+import io.example.map.WorldMap.Region;
+
+public class RegionThroughputTest {
+  private static final Region region = WorldMap.regionAtLatLng(12, new LatLng(51.5, -0.12));
+  private static final long minute = RegionThroughput.intervalMs;
+  private static final long start = 29_000_000 * minute;
+
+  @Test
+  void releasesAddToTheirIntervalTest() {
+    var throughput = RegionThroughput.empty()
+        .on(region.updateCounts(10, 2), start + 1_000)
+        .on(region.updateCounts(15, 1), start + 30_000)
+        .on(region.updateCounts(18, 4), start + minute + 5_000);
+
+    var series = throughput.seriesAt(start + 2 * minute);
+    assertEquals(start + 2 * minute - (RegionThroughput.intervals - 1) * minute, series.startMs());
+    assertEquals(RegionThroughput.intervals, series.geoOrders().length);
+    assertEquals(15, series.geoOrders()[RegionThroughput.intervals - 3]);
+    assertEquals(2, series.alarms()[RegionThroughput.intervals - 3]); // the alarm that stopped is not subtracted
+    assertEquals(3, series.geoOrders()[RegionThroughput.intervals - 2]);
+    assertEquals(3, series.alarms()[RegionThroughput.intervals - 2]);
+    assertEquals(0, series.geoOrders()[RegionThroughput.intervals - 1]);
+    assertEquals(18, series.geoOrdersInLast(3));
+    assertEquals(3, series.geoOrdersInLast(2));
+  }
+
+  @Test
+  void bufferWrapsAroundTest() {
+    var throughput = RegionThroughput.empty();
+    var count = 0;
+    for (int i = 0; i < 3 * RegionThroughput.intervals; i++) {
+      count += i;
+      throughput = throughput.on(region.updateCounts(count, 0), start + i * minute);
+    }
+
+    var last = 3 * RegionThroughput.intervals - 1;
+    var series = throughput.seriesAt(start + last * minute);
+    assertEquals(RegionThroughput.intervals, throughput.geoOrders().length);
+    assertEquals(last, series.geoOrders()[RegionThroughput.intervals - 1]);
+    assertEquals(last - RegionThroughput.intervals + 1, series.geoOrders()[0]);
+
+    var later = throughput.seriesAt(start + (last + 10) * minute);
+    assertEquals(last, later.geoOrders()[RegionThroughput.intervals - 11]);
+    assertEquals(0, later.geoOrdersInLast(10));
+
+    var stale = throughput.on(region.updateCounts(count + 5, 0), start);
+    assertEquals(count + 5, stale.releasedGeoOrderCount());
+    assertEquals(series.geoOrdersInLast(RegionThroughput.intervals), stale.seriesAt(start + last * minute).geoOrdersInLast(RegionThroughput.intervals));
+  }
+
+  @Test
+  void startingAtAndSumTest() {
+    var legacy = RegionThroughput.startingAt(region.updateCounts(100, 10))
+        .on(region.updateCounts(100, 10), 0)
+        .on(region.updateCounts(103, 10), start);
+    assertEquals(3, legacy.seriesAt(start).geoOrdersInLast(1));
+
+    var other = RegionThroughput.empty().on(region.updateCounts(7, 1), start - minute);
+    var sum = RegionThroughput.sum(List.of(legacy, other));
+    var series = sum.seriesAt(start);
+    assertEquals(start / minute, sum.headInterval());
+    assertEquals(3, series.geoOrdersInLast(1));
+    assertEquals(10, series.geoOrdersInLast(2));
+    assertEquals(1, series.alarmsInLast(2));
+  }
+
+  @Test
+  void equalByBucketContentsTest() {
+    var throughput = RegionThroughput.empty().on(region.updateCounts(10, 2), start);
+    var same = RegionThroughput.empty().on(region.updateCounts(10, 2), start);
+    assertEquals(throughput, same);
+    assertEquals(throughput.hashCode(), same.hashCode());
+    assertEquals(throughput.toString(), same.toString());
+    assertEquals(throughput.seriesAt(start), same.seriesAt(start));
+    assertEquals(throughput.seriesAt(start).hashCode(), same.seriesAt(start).hashCode());
+
+    assertNotEquals(throughput, same.on(region.updateCounts(11, 2), start));
+    assertNotEquals(throughput.seriesAt(start), throughput.seriesAt(start + minute));
+  }
+}
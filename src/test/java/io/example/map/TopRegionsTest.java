@@ -0,0 +1,49 @@
+package io.example.map;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import io.example.map.WorldMap.LatLng;
+import io.example.map.WorldMap.Region;
+
+public class TopRegionsTest {
+  @Test
+  void rowsForTest() {
+    var random = new Random(42);
+    var regionsByKey = new HashMap<Long, Region>();
+    var positions = 10_000;
+    for (int i = 0; i < positions; i++) {
+      var position = new LatLng(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+      var alarm = i % 4 == 0 ? 1 : 0;
+      var region = WorldMap.regionAtLatLng(3, position);
+      regionsByKey.merge(WorldMapTiles.regionKeyFor(region), region.updateCounts(1, alarm),
+          (a, b) -> a.updateCounts(a.geoOrderCount() + 1, a.geoOrderAlarmCount() + alarm));
+    }
+
+    var rows = TopRegions.rowsFor(3, regionsByKey.values().stream().toList(), 1234);
+    assertEquals(1 + 2 + 18, rows.size());
+    assertEquals(1234, rows.get(0).releasedAtMs());
+
+    for (int zoom = 0; zoom < 3; zoom++) {
+      var z = zoom;
+      var zoomRows = rows.stream().filter(row -> row.region().zoom() == z).toList();
+      assertEquals(positions, zoomRows.stream().mapToInt(RegionByLocationView.RegionViewRow::geoOrderCount).sum());
+      assertEquals(positions / 4, zoomRows.stream().mapToInt(RegionByLocationView.RegionViewRow::geoOrderAlarmCount).sum());
+      zoomRows.forEach(row -> assertEquals(WorldMap.regionIdFor(row.region()), row.regionId()));
+    }
+
+    { // a zoom 2 region is the sum of the zoom 3 regions in it
+      var zoom2 = WorldMap.regionAtLatLng(2, new LatLng(51.5, -0.12));
+      var expected = regionsByKey.values().stream()
+          .filter(region -> zoom2.contains(WorldMap.atCenter(region)))
+          .mapToInt(Region::geoOrderCount)
+          .sum();
+      var row = rows.stream().filter(r -> r.regionId().equals(WorldMap.regionIdFor(zoom2))).findFirst().orElseThrow();
+      assertEquals(expected, row.geoOrderCount());
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package io.example.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class UpdateBatcherTest {
+
+  @Test
+  void flushOnWindowTest() throws Exception {
+    var batcher = new UpdateBatcher<String>(Duration.ofMillis(50), 10);
+    var sent = new CopyOnWriteArrayList<List<String>>();
+
+    var first = batcher.add("region-1", "a", updates -> send(sent, updates)).toCompletableFuture();
+    var second = batcher.add("region-1", "b", updates -> send(sent, updates)).toCompletableFuture();
+    var other = batcher.add("region-2", "c", updates -> send(sent, updates)).toCompletableFuture();
+    assertFalse(first.isDone());
+
+    assertEquals("OK", first.get(1, TimeUnit.SECONDS));
+    assertEquals("OK", second.get(1, TimeUnit.SECONDS));
+    assertEquals("OK", other.get(1, TimeUnit.SECONDS));
+    assertTrue(sent.contains(List.of("a", "b")));
+    assertTrue(sent.contains(List.of("c")));
+    assertEquals(2, sent.size());
+  }
+
+  @Test
+  void fullBatchIsSentBeforeTheWindowTest() throws Exception {
+    var batcher = new UpdateBatcher<String>(Duration.ofHours(1), 2);
+    var sent = new CopyOnWriteArrayList<List<String>>();
+
+    var first = batcher.add("region-1", "a", updates -> send(sent, updates)).toCompletableFuture();
+    var second = batcher.add("region-1", "b", updates -> send(sent, updates)).toCompletableFuture();
+
+    assertEquals("OK", first.get(1, TimeUnit.SECONDS));
+    assertEquals("OK", second.get(1, TimeUnit.SECONDS));
+    assertEquals(List.of(List.of("a", "b")), sent);
+  }
+
+  // Nothing in a batch is acknowledged until the entity replies, so a failed batch leaves every event to be redelivered
+  @Test
+  void noUpdateIsAcknowledgedBeforeTheBatchIsWrittenTest() throws Exception {
+    var batcher = new UpdateBatcher<String>(Duration.ofMillis(10), 10);
+    var reply = new CompletableFuture<String>();
+
+    var first = batcher.add("region-1", "a", updates -> reply).toCompletableFuture();
+    var second = batcher.add("region-1", "b", updates -> reply).toCompletableFuture();
+    Thread.sleep(100);
+    assertFalse(first.isDone());
+    assertFalse(second.isDone());
+
+    reply.completeExceptionally(new IllegalStateException("region unavailable"));
+    assertTrue(failed(first));
+    assertTrue(failed(second));
+  }
+
+  private static CompletableFuture<String> send(List<List<String>> sent, List<String> updates) {
+    sent.add(updates);
+    return CompletableFuture.completedFuture("OK");
+  }
+
+  private static boolean failed(CompletableFuture<String> result) throws Exception {
+    try {
+      result.get(1, TimeUnit.SECONDS);
+      return false;
+    } catch (ExecutionException e) {
+      return true;
+    }
+  }
+}
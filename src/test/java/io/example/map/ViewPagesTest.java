@@ -0,0 +1,42 @@
+package io.example.map;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+public class ViewPagesTest {
+
+  @Test
+  void allPagesAreReadTest() {
+    var tokens = new ArrayList<String>();
+    var rows = ViewPages.all(nextPageToken -> {
+      tokens.add(nextPageToken);
+      return CompletableFuture.completedFuture(pageAfter(nextPageToken));
+    }).toCompletableFuture().join();
+
+    assertEquals(List.of(1, 2, 3, 4, 5, 6), rows);
+    assertEquals(Arrays.asList(null, "2", "4"), tokens);
+  }
+
+  @Test
+  void noPagesAreReadAfterTheLimitTest() {
+    var rows = ViewPages.all(nextPageToken -> CompletableFuture.completedFuture(pageAfter(nextPageToken)), 3)
+        .toCompletableFuture().join();
+
+    assertEquals(List.of(1, 2, 3, 4), rows);
+  }
+
+  // Three pages of two rows
+  private static TestPage pageAfter(String nextPageToken) {
+    var offset = nextPageToken == null ? 0 : Integer.parseInt(nextPageToken);
+    return new TestPage(List.of(offset + 1, offset + 2), String.valueOf(offset + 2), offset + 2 < 6);
+  }
+
+  record TestPage(Collection<Integer> regions, String nextPageToken, boolean hasMore) implements ViewPages.Page<Integer> {}
+}
@@ -0,0 +1,158 @@
+package io.example.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import io.example.map.WorldMap.LatLng;
+
+public class WorldMapTilesTest {
+  @Test
+  void regionAtLatLngMatchesSubRegionsTest() {
+    var random = new Random(42);
+
+    for (int i = 0; i < 10_000; i++) {
+      var latLng = new LatLng(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+      for (int zoom = 0; zoom <= WorldMap.zoomMax; zoom++) {
+        var expected = WorldMap.regionAtLatLngBySubRegions(zoom, latLng);
+        assertEquals(expected, WorldMap.regionAtLatLng(zoom, latLng));
+        assertEquals(expected, WorldMapTiles.regionsAtLatLng(zoom, latLng.lat(), latLng.lng())[zoom]);
+      }
+    }
+  }
+
+  @Test
+  void regionAtLatLngOnRegionEdgesTest() {
+    var random = new Random(7);
+
+    for (int i = 0; i < 1_000; i++) {
+      var latLng = new LatLng(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+      for (int zoom = 0; zoom <= WorldMap.zoomMax; zoom++) {
+        var region = WorldMap.regionAtLatLngBySubRegions(zoom, latLng);
+        var corners = new LatLng[] {
+            region.topLeft(),
+            region.botRight(),
+            new LatLng(region.topLeft().lat(), region.botRight().lng()),
+            new LatLng(region.botRight().lat(), region.topLeft().lng())
+        };
+        for (var corner : corners) {
+          for (int z = 0; z <= WorldMap.zoomMax; z++) {
+            assertEquals(WorldMap.regionAtLatLngBySubRegions(z, corner), WorldMap.regionAtLatLng(z, corner));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void regionAtLatLngOutOfRangeTest() {
+    assertNull(WorldMap.regionAtLatLng(WorldMap.zoomMax + 1, new LatLng(0, 0)));
+    assertNull(WorldMap.regionAtLatLng(-1, new LatLng(0, 0)));
+    assertNull(WorldMap.regionAtLatLng(5, new LatLng(90.5, 0)));
+    assertNull(WorldMap.regionAtLatLng(5, new LatLng(0, 180.5)));
+    assertEquals(WorldMap.regionForZoom0(), WorldMap.regionAtLatLng(0, new LatLng(0, 0)));
+  }
+
+  @Test
+  void regionAboveTest() {
+    var latLng = new LatLng(51.5, -0.12);
+    var region = WorldMap.regionAtLatLng(WorldMap.zoomMax, latLng);
+
+    for (int zoom = WorldMap.zoomMax - 1; zoom >= 0; zoom--) {
+      region = WorldMap.regionAbove(region);
+      assertEquals(WorldMap.regionAtLatLngBySubRegions(zoom, latLng), region);
+    }
+    assertNull(WorldMap.regionAbove(region));
+  }
+
+  @Test
+  void regionKeyRoundTripTest() {
+    var random = new Random(11);
+
+    for (int i = 0; i < 10_000; i++) {
+      var lat = random.nextDouble() * 180 - 90;
+      var lng = random.nextDouble() * 360 - 180;
+      for (int zoom = 0; zoom <= WorldMap.zoomMax; zoom++) {
+        var region = WorldMap.regionAtLatLng(zoom, new LatLng(lat, lng));
+        var regionKey = WorldMapTiles.regionKeyAt(zoom, lat, lng);
+
+        assertEquals(zoom, WorldMapTiles.zoomOf(regionKey));
+        assertEquals(regionKey, WorldMapTiles.regionKeyFor(region));
+        assertEquals(region, WorldMapTiles.regionFor(regionKey));
+        assertEquals(regionKey, WorldMapTiles.regionKeyFor(WorldMapTiles.regionIdFor(regionKey)));
+        assertEquals(regionKey, WorldMapTiles.regionKeyFor(WorldMap.legacyRegionIdFor(region)));
+        if (zoom > 0) {
+          assertEquals(WorldMapTiles.regionKeyFor(WorldMap.regionAbove(region)), WorldMapTiles.parentKeyOf(regionKey));
+        }
+      }
+    }
+  }
+
+  @Test
+  void regionIdsAtTest() {
+    var random = new Random(13);
+    var zooms = new int[] { 4, 10, 13, 16 };
+
+    for (int i = 0; i < 1_000; i++) {
+      var lat = random.nextDouble() * 180 - 90;
+      var lng = random.nextDouble() * 360 - 180;
+      var regionIds = WorldMapTiles.regionIdsAt(zooms, lat, lng);
+      for (int z = 0; z < zooms.length; z++) {
+        assertEquals(WorldMapTiles.regionIdFor(WorldMapTiles.regionKeyAt(zooms[z], lat, lng)), regionIds[z]);
+      }
+    }
+  }
+
+  @Test
+  void coveringRegionIdsTest() {
+    var random = new Random(17);
+    var zooms = new int[] { 10, 13, 16 };
+
+    for (int i = 0; i < 100; i++) {
+      var topLeftLat = 51.5 + random.nextDouble();
+      var topLeftLng = -0.12 + random.nextDouble();
+      var botRightLat = topLeftLat - random.nextDouble() * 0.2;
+      var botRightLng = topLeftLng + random.nextDouble() * 0.4;
+      var zoom = WorldMapTiles.coveringZoom(zooms, topLeftLat, topLeftLng, botRightLat, botRightLng, 256);
+      var regionIds = WorldMapTiles.coveringRegionIds(zoom, topLeftLat, topLeftLng, botRightLat, botRightLng, 256);
+      assertTrue(zoom >= 10);
+      assertTrue(regionIds.size() <= 256);
+      if (zoom < 16) { // the next zoom needs too many regions
+        var nextZoom = zoom == 10 ? 13 : 16;
+        assertTrue(WorldMapTiles.coveringRegionIds(nextZoom, topLeftLat, topLeftLng, botRightLat, botRightLng, 256).isEmpty());
+      }
+
+      for (int j = 0; j < 1_000; j++) { // every position in the viewport is in a covering region
+        var lat = botRightLat + random.nextDouble() * (topLeftLat - botRightLat);
+        var lng = topLeftLng + random.nextDouble() * (botRightLng - topLeftLng);
+        assertTrue(regionIds.contains(WorldMapTiles.regionIdFor(WorldMapTiles.regionKeyAt(zoom, lat, lng))));
+      }
+      assertTrue(regionIds.contains(WorldMapTiles.regionIdFor(WorldMapTiles.regionKeyAt(zoom, topLeftLat, topLeftLng))));
+      assertTrue(regionIds.contains(WorldMapTiles.regionIdFor(WorldMapTiles.regionKeyAt(zoom, botRightLat, botRightLng))));
+    }
+
+    { // the whole world does not fit in 256 regions at zoom 4
+      assertEquals(-1, WorldMapTiles.coveringZoom(new int[] { 4, 8, 12 }, 90, -180, -90, 180, 256));
+      assertEquals(648, WorldMapTiles.coveringRegionIds(4, 90, -180, -90, 180, 1000).size());
+    }
+  }
+
+  @Test
+  void regionIdTest() {
+    assertEquals("0-0-0", WorldMap.regionIdFor(WorldMap.regionForZoom0()));
+    assertEquals("1-0-1", WorldMap.regionIdFor(WorldMap.regionAtLatLng(1, new LatLng(10, 10))));
+    assertEquals(WorldMapTiles.noRegionKey, WorldMapTiles.parentKeyOf(WorldMapTiles.regionKeyFor("0-0-0")));
+
+    assertTrue(WorldMapTiles.isCanonicalRegionId("18-63078-294715"));
+    assertFalse(WorldMapTiles.isCanonicalRegionId("0_90.0000000000000_-180.0000000000000_-90.0000000000000_180.0000000000000"));
+    assertEquals(WorldMapTiles.noRegionKey, WorldMapTiles.regionKeyFor("2-3-0"));
+    assertEquals(WorldMapTiles.noRegionKey, WorldMapTiles.regionKeyFor("19-0-0"));
+    assertEquals(WorldMapTiles.noRegionKey, WorldMapTiles.regionKeyFor("not-a-region"));
+    assertEquals(WorldMapTiles.noRegionKey, WorldMapTiles.regionKeyFor(""));
+  }
+}
@@ -6,6 +6,8 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.Test;
@@ -637,6 +639,58 @@ class OrderItemRedLeafEntityTest {
     }
   }
 
+  // Leaves below and above the size where the available items are looked up in a hash set allocate the same way
+  @Test
+  void smallAndLargeLeafAllocationTest() {
+    for (var quantity : new int[] { 4, 200 }) {
+      var orderItemRedLeafId = OrderItemRedLeafEntity.OrderItemRedLeafId.genId("orderItemId", "skuId");
+      var parentId = OrderItemRedTreeEntity.OrderItemRedTreeId.genId("orderItemId", "skuId");
+      var state = State.emptyState();
+      state = applyEvents(state, state.eventsFor(new OrderItemRedLeafEntity.OrderItemCreateCommand(orderItemRedLeafId, parentId, quantity)));
+      state = applyEvents(state, state.eventsFor(new OrderItemRedLeafEntity.OrderItemSetBackOrderedCommand(orderItemRedLeafId)));
+
+      var stockOrderRedLeafId1 = stockOrderRedLeafIdOf("stockOrderId-1", "skuId");
+      state = applyEvents(state, state.eventsFor(new OrderItemRedLeafEntity.StockOrderRequestsOrderSkuItemsCommand(orderItemRedLeafId, stockOrderRedLeafId1,
+          IntStream.range(0, quantity / 2).mapToObj(i -> StockOrderRedLeafEntity.StockSkuItemId.of(stockOrderRedLeafId1)).toList())));
+      assertEquals(quantity / 2, state.orderSkuItemsAvailable().size());
+
+      var stockOrderRedLeafId2 = stockOrderRedLeafIdOf("stockOrderId-2", "skuId");
+      var orderSkuItemsConsumed = state.orderSkuItemsAvailable().stream()
+          .map(orderSkuItemId -> new OrderItemRedLeafEntity.OrderSkuItemToStockSkuItem(orderSkuItemId, StockOrderRedLeafEntity.StockSkuItemId.of(stockOrderRedLeafId2)))
+          .toList();
+      var alreadyConsumed = new ArrayList<>(orderSkuItemsConsumed);
+      alreadyConsumed.set(0, new OrderItemRedLeafEntity.OrderSkuItemToStockSkuItem(
+          state.orderSkuItemsConsumed().get(0).orderSkuItemsToStockSkuItems().get(0).orderSkuItemId(), orderSkuItemsConsumed.get(0).stockSkuItemId()));
+
+      var rejected = state.eventsFor(new OrderItemRedLeafEntity.OrderItemConsumedStockSkuItemsCommand(orderItemRedLeafId, stockOrderRedLeafId2, alreadyConsumed));
+      assertTrue(rejected.get(0) instanceof OrderItemRedLeafEntity.OrderItemReleasedStockSkuItemsEvent);
+
+      var command = new OrderItemRedLeafEntity.OrderItemConsumedStockSkuItemsCommand(orderItemRedLeafId, stockOrderRedLeafId2, orderSkuItemsConsumed);
+      state = applyEvents(state, state.eventsFor(command));
+      assertEquals(0, state.orderSkuItemsAvailable().size());
+      assertNotNull(state.readyToShipAt());
+      assertEquals(quantity, OrderItemRedLeafEntity.Consumed.quantityConsumed(state.orderSkuItemsConsumed()));
+      assertTrue(state.eventsFor(command).isEmpty());
+    }
+  }
+
+  private static State applyEvents(State state, List<Event> events) {
+    for (var event : events) {
+      if (event instanceof OrderItemRedLeafEntity.OrderItemCreatedEvent e) {
+        state = state.on(e);
+      } else if (event instanceof OrderItemRedLeafEntity.OrderItemSetBackOrderedOnEvent e) {
+        state = state.on(e);
+      } else if (event instanceof OrderItemRedLeafEntity.OrderItemSetBackOrderedOffEvent e) {
+        state = state.on(e);
+      } else if (event instanceof OrderItemRedLeafEntity.StockOrderConsumedOrderSkuItemsEvent e) {
+        state = state.on(e);
+      } else if (event instanceof OrderItemRedLeafEntity.OrderItemConsumedStockSkuItemsEvent e) {
+        state = state.on(e);
+      }
+    }
+    return state;
+  }
+
   private static StockOrderRedLeafEntity.StockOrderRedLeafId stockOrderRedLeafIdOf(String stockOrderId, String skuId) {
     return StockOrderRedLeafEntity.StockOrderRedLeafId.genId(stockOrderId, skuId, quantityLeavesPerTree, quantityLeavesPerBranch);
   }
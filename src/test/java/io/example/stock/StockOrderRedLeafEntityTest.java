@@ -4,11 +4,17 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.Test;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import io.example.shipping.OrderItemRedLeafEntity;
+import kalix.javasdk.JsonSupport;
 import kalix.javasdk.testkit.EventSourcedTestKit;
 
 class StockOrderRedLeafEntityTest {
@@ -112,7 +118,7 @@ class StockOrderRedLeafEntityTest {
       var event = result.getNextEventOfType(StockOrderRedLeafEntity.OrderItemConsumedStockSkuItemsEvent.class);
       assertEquals(stockOrderRedLeafId, event.stockOrderRedLeafId());
       assertEquals(orderItemRedLeafId, event.orderItemRedLeafId());
-      assertEquals(0, event.stockSkuItemsConsumed().size());
+      assertEquals(0, testKit.getState().stockSkuItemsConsumed().size());
     }
 
     { // set available to be consumed
@@ -135,8 +141,10 @@ class StockOrderRedLeafEntityTest {
       var event = result.getNextEventOfType(StockOrderRedLeafEntity.OrderItemConsumedStockSkuItemsEvent.class);
       assertEquals(stockOrderRedLeafId, event.stockOrderRedLeafId());
       assertEquals(orderItemRedLeafId, event.orderItemRedLeafId());
-      assertEquals(1, event.stockSkuItemsConsumed().size());
-      assertEquals(quantityRequested, event.stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(1, testKit.getState().stockSkuItemsConsumed().size());
+      assertEquals(quantityRequested, testKit.getState().stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(quantityRequested, event.consumed().stockSkuItemsToOrderSkuItems().size());
+      assertEquals(quantityRequested, event.quantityConsumed());
     }
 
     {
@@ -190,8 +198,8 @@ class StockOrderRedLeafEntityTest {
       var event = result.getNextEventOfType(StockOrderRedLeafEntity.OrderItemConsumedStockSkuItemsEvent.class);
       assertEquals(stockOrderRedLeafId, event.stockOrderRedLeafId());
       assertEquals(orderItemRedLeafId, event.orderItemRedLeafId());
-      assertEquals(1, event.stockSkuItemsConsumed().size());
-      assertEquals(quantityRequested, event.stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(1, testKit.getState().stockSkuItemsConsumed().size());
+      assertEquals(quantityRequested, testKit.getState().stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
     }
 
     { // second request
@@ -206,8 +214,8 @@ class StockOrderRedLeafEntityTest {
       var event = result.getNextEventOfType(StockOrderRedLeafEntity.OrderItemConsumedStockSkuItemsEvent.class);
       assertEquals(stockOrderRedLeafId, event.stockOrderRedLeafId());
       assertEquals(orderItemRedLeafId, event.orderItemRedLeafId());
-      assertEquals(1, event.stockSkuItemsConsumed().size());
-      assertEquals(quantityRequested, event.stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(1, testKit.getState().stockSkuItemsConsumed().size());
+      assertEquals(quantityRequested, testKit.getState().stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
     }
 
     {
@@ -241,8 +249,8 @@ class StockOrderRedLeafEntityTest {
       var event = result.getNextEventOfType(StockOrderRedLeafEntity.OrderItemConsumedStockSkuItemsEvent.class);
       assertEquals(stockOrderRedLeafId, event.stockOrderRedLeafId());
       assertEquals(orderItemRedLeafId, event.orderItemRedLeafId());
-      assertEquals(1, event.stockSkuItemsConsumed().size());
-      assertEquals(quantityRequested1, event.stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(1, testKit.getState().stockSkuItemsConsumed().size());
+      assertEquals(quantityRequested1, testKit.getState().stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
     }
 
     { // this order will be partially consumed
@@ -259,8 +267,9 @@ class StockOrderRedLeafEntityTest {
       assertEquals(stockOrderRedLeafId, event.stockOrderRedLeafId());
       assertEquals(orderItemRedLeafId, event.orderItemRedLeafId());
       var quantityExpected = Math.max(0, quantityStockOrder - quantityRequested1);
-      assertEquals(2, event.stockSkuItemsConsumed().size());
-      assertEquals(quantityExpected, event.stockSkuItemsConsumed().get(1).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(2, testKit.getState().stockSkuItemsConsumed().size());
+      assertEquals(quantityExpected, testKit.getState().stockSkuItemsConsumed().get(1).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(quantityRequested1 + quantityExpected, event.quantityConsumed());
     }
 
     { // this order will not be consumed
@@ -305,8 +314,8 @@ class StockOrderRedLeafEntityTest {
       var event = result.getNextEventOfType(StockOrderRedLeafEntity.OrderItemConsumedStockSkuItemsEvent.class);
       assertEquals(stockOrderRedLeafId, event.stockOrderRedLeafId());
       assertEquals(orderItemRedLeafId1, event.orderItemRedLeafId());
-      assertEquals(1, event.stockSkuItemsConsumed().size());
-      assertEquals(quantityRequested1, event.stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(1, testKit.getState().stockSkuItemsConsumed().size());
+      assertEquals(quantityRequested1, testKit.getState().stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
     }
 
     {
@@ -328,8 +337,8 @@ class StockOrderRedLeafEntityTest {
       assertEquals(stockOrderRedLeafId, event.stockOrderRedLeafId());
       assertEquals(orderItemRedLeafId2, event.orderItemRedLeafId());
       var quantityExpected = Math.max(0, quantityStockOrder - quantityRequested1);
-      assertEquals(2, event.stockSkuItemsConsumed().size());
-      assertEquals(quantityExpected, event.stockSkuItemsConsumed().get(1).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(2, testKit.getState().stockSkuItemsConsumed().size());
+      assertEquals(quantityExpected, testKit.getState().stockSkuItemsConsumed().get(1).stockSkuItemsToOrderSkuItems().size());
     }
 
     {
@@ -397,8 +406,8 @@ class StockOrderRedLeafEntityTest {
       var event = result.getNextEventOfType(StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsEvent.class);
       assertEquals(stockOrderRedLeafId, event.stockOrderRedLeafId());
       assertEquals(orderItemRedLeafId, event.orderItemRedLeafId());
-      assertEquals(1, event.stockSkuItemsConsumed().size());
-      assertEquals(quantityOrderSkuItems, event.stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(1, testKit.getState().stockSkuItemsConsumed().size());
+      assertEquals(quantityOrderSkuItems, testKit.getState().stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
 
       var eventRequest = result.getNextEventOfType(StockOrderRedLeafEntity.StockOrderRequestsOrderSkuItemsEvent.class);
       assertEquals(quantityStockOrder - quantityOrderSkuItems, eventRequest.stockSkuItemIds().size());
@@ -452,8 +461,8 @@ class StockOrderRedLeafEntityTest {
       var event = result.getNextEventOfType(StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsEvent.class);
       assertEquals(stockOrderRedLeafId, event.stockOrderRedLeafId());
       assertEquals(orderItemRedLeafId, event.orderItemRedLeafId());
-      assertEquals(1, event.stockSkuItemsConsumed().size());
-      assertEquals(quantityOrderSkuItems1, event.stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(1, testKit.getState().stockSkuItemsConsumed().size());
+      assertEquals(quantityOrderSkuItems1, testKit.getState().stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
 
       var eventRequest = result.getNextEventOfType(StockOrderRedLeafEntity.StockOrderRequestsOrderSkuItemsEvent.class);
       assertEquals(quantityStockOrder - quantityOrderSkuItems1, eventRequest.stockSkuItemIds().size());
@@ -483,8 +492,8 @@ class StockOrderRedLeafEntityTest {
       var event = result.getNextEventOfType(StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsEvent.class);
       assertEquals(stockOrderRedLeafId, event.stockOrderRedLeafId());
       assertEquals(orderItemRedLeafId, event.orderItemRedLeafId());
-      assertEquals(2, event.stockSkuItemsConsumed().size());
-      assertEquals(quantityOrderSkuItems2, event.stockSkuItemsConsumed().get(1).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(2, testKit.getState().stockSkuItemsConsumed().size());
+      assertEquals(quantityOrderSkuItems2, testKit.getState().stockSkuItemsConsumed().get(1).stockSkuItemsToOrderSkuItems().size());
 
       var stateAfter = testKit.getState();
       var quantityRemaining = stateAfter.stockSkuItemsAvailable().size();
@@ -536,8 +545,8 @@ class StockOrderRedLeafEntityTest {
       var event = result.getNextEventOfType(StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsEvent.class);
       assertEquals(stockOrderRedLeafId, event.stockOrderRedLeafId());
       assertEquals(orderItemRedLeafId1, event.orderItemRedLeafId());
-      assertEquals(1, event.stockSkuItemsConsumed().size());
-      assertEquals(quantityOrderSkuItems1, event.stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
+      assertEquals(1, testKit.getState().stockSkuItemsConsumed().size());
+      assertEquals(quantityOrderSkuItems1, testKit.getState().stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().size());
 
       var eventRequest = result.getNextEventOfType(StockOrderRedLeafEntity.StockOrderRequestsOrderSkuItemsEvent.class);
       assertEquals(quantityStockOrder - quantityOrderSkuItems1, eventRequest.stockSkuItemIds().size());
@@ -569,6 +578,157 @@ class StockOrderRedLeafEntityTest {
     }
   }
 
+  @Test
+  void allocationEventsReplayAndMigrationTest() throws Exception {
+    var objectMapper = JsonSupport.getObjectMapper();
+    var stockOrderRedLeafId = stockOrderRedLeafIdOf("stockOrderId", "skuId");
+    var state = StockOrderRedLeafEntity.State.emptyState();
+    state = applyEvents(state, state.eventsFor(stockOrderCreateCommand(stockOrderRedLeafId, 100)));
+    state = applyEvents(state, state.eventsFor(new StockOrderRedLeafEntity.StockOrderSetAvailableToBeConsumedOnCommand(stockOrderRedLeafId)));
+
+    var orderItemRedLeafIds = IntStream.range(0, 10)
+        .mapToObj(i -> OrderItemRedLeafEntity.OrderItemRedLeafId.genId("orderItemId-" + i, "skuId"))
+        .toList();
+    var commands = new ArrayList<Object>();
+    orderItemRedLeafIds.forEach(orderItemRedLeafId -> commands.add(new StockOrderRedLeafEntity.OrderItemRequestsStockSkuItemsCommand(stockOrderRedLeafId, orderItemRedLeafId,
+        IntStream.range(0, 10).mapToObj(i -> OrderItemRedLeafEntity.OrderSkuItemId.genId(orderItemRedLeafId)).toList())));
+    commands.add(new StockOrderRedLeafEntity.OrderItemReleaseStockSkuItemsCommand(stockOrderRedLeafId, orderItemRedLeafIds.get(3)));
+
+    var size = 0;
+    var legacySize = 0;
+    for (var command : commands) {
+      var events = command instanceof StockOrderRedLeafEntity.OrderItemRequestsStockSkuItemsCommand c
+          ? state.eventsFor(c)
+          : state.eventsFor((StockOrderRedLeafEntity.OrderItemReleaseStockSkuItemsCommand) command);
+      var stateBefore = state;
+      state = applyEvents(state, events);
+
+      var event = events.get(0);
+      var legacyJson = legacyJsonOf(objectMapper, event, state);
+      var migrated = objectMapper.treeToValue(new StockOrderRedLeafEventMigration().transform(0, legacyJson), event.getClass());
+      assertEquals(state, applyEvents(stateBefore, List.of(migrated)));
+      assertEquals(StockOrderRedLeafEntity.Consumed.quantityConsumed(state.stockSkuItemsConsumed()), legacyJson.get("quantityConsumed").asInt());
+
+      size += objectMapper.writeValueAsBytes(event).length;
+      legacySize += objectMapper.writeValueAsBytes(legacyJsonOf(objectMapper, event, state)).length;
+    }
+
+    assertEquals(9, state.stockSkuItemsConsumed().size());
+    assertEquals(10, state.stockSkuItemsAvailable().size());
+    assertTrue("delta %d bytes, legacy %d bytes".formatted(size, legacySize), size * 4 < legacySize);
+  }
+
+  @Test
+  void stockOrderConsumedEventMigrationTest() throws Exception {
+    var objectMapper = JsonSupport.getObjectMapper();
+    var stockOrderRedLeafId = stockOrderRedLeafIdOf("stockOrderId", "skuId");
+    var state = StockOrderRedLeafEntity.State.emptyState();
+    state = applyEvents(state, state.eventsFor(stockOrderCreateCommand(stockOrderRedLeafId, 20)));
+
+    var orderItemRedLeafId = OrderItemRedLeafEntity.OrderItemRedLeafId.genId("orderItemId", "skuId");
+    var stockSkuItemsConsumed = state.stockSkuItemsAvailable().stream()
+        .limit(5)
+        .map(stockSkuItemId -> new StockOrderRedLeafEntity.StockSkuItemToOrderSkuItem(stockSkuItemId, OrderItemRedLeafEntity.OrderSkuItemId.genId(orderItemRedLeafId)))
+        .toList();
+    var events = state.eventsFor(new StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsCommand(stockOrderRedLeafId, orderItemRedLeafId, stockSkuItemsConsumed));
+    var event = (StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsEvent) events.get(0);
+    var stateAfter = applyEvents(state, events);
+    assertEquals(15, stateAfter.stockSkuItemsAvailable().size());
+    assertEquals(5, event.quantityConsumed());
+
+    var migrated = objectMapper.treeToValue(new StockOrderRedLeafEventMigration().transform(0, legacyJsonOf(objectMapper, event, stateAfter)),
+        StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsEvent.class);
+    assertEquals(event.consumed(), migrated.consumed());
+    assertEquals(5, migrated.quantityConsumed());
+    assertEquals(stateAfter, state.on(migrated));
+  }
+
+  @Test
+  void idempotentResponseKeepsConsumedOrderTest() {
+    var stockOrderRedLeafId = stockOrderRedLeafIdOf("stockOrderId", "skuId");
+    var state = StockOrderRedLeafEntity.State.emptyState();
+    state = applyEvents(state, state.eventsFor(stockOrderCreateCommand(stockOrderRedLeafId, 100)));
+    state = applyEvents(state, state.eventsFor(new StockOrderRedLeafEntity.StockOrderSetAvailableToBeConsumedOnCommand(stockOrderRedLeafId)));
+
+    var commands = IntStream.range(0, 3)
+        .mapToObj(i -> OrderItemRedLeafEntity.OrderItemRedLeafId.genId("orderItemId-" + i, "skuId"))
+        .map(orderItemRedLeafId -> new StockOrderRedLeafEntity.OrderItemRequestsStockSkuItemsCommand(stockOrderRedLeafId, orderItemRedLeafId,
+            IntStream.range(0, 10).mapToObj(i -> OrderItemRedLeafEntity.OrderSkuItemId.genId(orderItemRedLeafId)).toList()))
+        .toList();
+    for (var command : commands) {
+      state = applyEvents(state, state.eventsFor(command));
+    }
+    var consumed = state.stockSkuItemsConsumed();
+
+    var stateAfter = applyEvents(state, state.eventsFor(commands.get(0)));
+    assertEquals(consumed, stateAfter.stockSkuItemsConsumed());
+    assertEquals(state, stateAfter);
+  }
+
+  // Leaves below and above the size where the available items are looked up in a hash set allocate the same way
+  @Test
+  void smallAndLargeLeafAllocationTest() {
+    for (var quantity : new int[] { 4, 200 }) {
+      var stockOrderRedLeafId = stockOrderRedLeafIdOf("stockOrderId", "skuId");
+      var state = StockOrderRedLeafEntity.State.emptyState();
+      state = applyEvents(state, state.eventsFor(stockOrderCreateCommand(stockOrderRedLeafId, quantity)));
+      state = applyEvents(state, state.eventsFor(new StockOrderRedLeafEntity.StockOrderSetAvailableToBeConsumedOnCommand(stockOrderRedLeafId)));
+
+      var orderItemRedLeafId1 = OrderItemRedLeafEntity.OrderItemRedLeafId.genId("orderItemId-1", "skuId");
+      state = applyEvents(state, state.eventsFor(new StockOrderRedLeafEntity.OrderItemRequestsStockSkuItemsCommand(stockOrderRedLeafId, orderItemRedLeafId1,
+          IntStream.range(0, quantity / 2).mapToObj(i -> OrderItemRedLeafEntity.OrderSkuItemId.genId(orderItemRedLeafId1)).toList())));
+      assertEquals(quantity / 2, state.stockSkuItemsAvailable().size());
+
+      var orderItemRedLeafId2 = OrderItemRedLeafEntity.OrderItemRedLeafId.genId("orderItemId-2", "skuId");
+      var stockSkuItemsConsumed = state.stockSkuItemsAvailable().stream()
+          .map(stockSkuItemId -> new StockOrderRedLeafEntity.StockSkuItemToOrderSkuItem(stockSkuItemId, OrderItemRedLeafEntity.OrderSkuItemId.genId(orderItemRedLeafId2)))
+          .toList();
+      var alreadyConsumed = new ArrayList<>(stockSkuItemsConsumed);
+      alreadyConsumed.set(0, new StockOrderRedLeafEntity.StockSkuItemToOrderSkuItem(
+          state.stockSkuItemsConsumed().get(0).stockSkuItemsToOrderSkuItems().get(0).stockSkuItemId(), stockSkuItemsConsumed.get(0).orderSkuItemId()));
+
+      var rejected = state.eventsFor(new StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsCommand(stockOrderRedLeafId, orderItemRedLeafId2, alreadyConsumed));
+      assertTrue(rejected.get(0) instanceof StockOrderRedLeafEntity.StockOrderReleasedOrderSkuItemsEvent);
+
+      var command = new StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsCommand(stockOrderRedLeafId, orderItemRedLeafId2, stockSkuItemsConsumed);
+      state = applyEvents(state, state.eventsFor(command));
+      assertEquals(0, state.stockSkuItemsAvailable().size());
+      assertFalse(state.availableToBeConsumed());
+      assertEquals(quantity, StockOrderRedLeafEntity.Consumed.quantityConsumed(state.stockSkuItemsConsumed()));
+      assertTrue(state.eventsFor(command).isEmpty());
+    }
+  }
+
+  private static StockOrderRedLeafEntity.State applyEvents(StockOrderRedLeafEntity.State state, List<StockOrderRedLeafEntity.Event> events) {
+    for (var event : events) {
+      if (event instanceof StockOrderRedLeafEntity.StockOrderCreatedEvent e) {
+        state = state.on(e);
+      } else if (event instanceof StockOrderRedLeafEntity.StockOrderSetAvailableToBeConsumedEvent e) {
+        state = state.on(e);
+      } else if (event instanceof StockOrderRedLeafEntity.OrderItemConsumedStockSkuItemsEvent e) {
+        state = state.on(e);
+      } else if (event instanceof StockOrderRedLeafEntity.OrderItemReleasedStockSkuItemsEvent e) {
+        state = state.on(e);
+      } else if (event instanceof StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsEvent e) {
+        state = state.on(e);
+      }
+    }
+    return state;
+  }
+
+  // The event as it was written before it carried only the delta, with the lists of the state after the event
+  private static ObjectNode legacyJsonOf(ObjectMapper objectMapper, StockOrderRedLeafEntity.Event event, StockOrderRedLeafEntity.State stateAfter) {
+    var json = (ObjectNode) objectMapper.valueToTree(event);
+    json.remove("quantityConsumed");
+    json.remove("released");
+    if (event instanceof StockOrderRedLeafEntity.StockOrderConsumedOrderSkuItemsEvent) {
+      json.remove("consumed");
+    }
+    json.set("stockSkuItemsAvailable", objectMapper.valueToTree(stateAfter.stockSkuItemsAvailable()));
+    json.set("stockSkuItemsConsumed", objectMapper.valueToTree(stateAfter.stockSkuItemsConsumed()));
+    return json;
+  }
+
   private static StockOrderRedLeafEntity.StockOrderRedLeafId stockOrderRedLeafIdOf(String stockOrderId, String skuId) {
     return StockOrderRedLeafEntity.StockOrderRedLeafId.genId(stockOrderId, skuId, quantityLeavesPerTree, quantityLeavesPerBranch);
   }